@@ -48,6 +48,7 @@ import com.badlogic.gdx.graphics.g3d.environment.PointLight;
 import com.badlogic.gdx.graphics.g3d.model.Animation;
 import com.badlogic.gdx.graphics.g3d.model.NodePart;
 import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
@@ -62,8 +63,11 @@ import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.Logger;
 import com.badlogic.gdx.utils.Sort;
 import com.badlogic.gdx.utils.UBJsonWriter;
+import com.hammergenics.ai.pfa.HGFlowFieldCache;
 import com.hammergenics.ai.pfa.HGGraph;
 import com.hammergenics.ai.pfa.HGGraphNodesGrid;
+import com.hammergenics.ai.pfa.HGPathScheduler;
+import com.hammergenics.ai.pfa.HGPathService;
 import com.hammergenics.core.HGAsset;
 import com.hammergenics.core.graphics.g3d.EditableModelInstance;
 import com.hammergenics.core.graphics.g3d.HGModel;
@@ -72,9 +76,15 @@ import com.hammergenics.core.graphics.g3d.PhysicalModelInstance.ShapesEnum;
 import com.hammergenics.core.graphics.g3d.SteerableModelInstance;
 import com.hammergenics.core.graphics.g3d.saver.G3dModelSaver;
 import com.hammergenics.core.utils.AttributesMap;
+import com.hammergenics.map.ChunkStore;
+import com.hammergenics.map.GridGenerationJob;
+import com.hammergenics.map.GridGenerationJob.GeneratorsEnum;
 import com.hammergenics.map.HGGrid;
 import com.hammergenics.map.HGGrid.NoiseStageInfo;
+import com.hammergenics.map.ParallelNoiseGenerator;
 import com.hammergenics.map.TerrainChunk;
+import com.hammergenics.map.TerrainChunkManager;
+import com.hammergenics.map.TerrainMeshBuilder;
 import com.hammergenics.map.TerrainPartsEnum;
 import com.hammergenics.physics.bullet.dynamics.btDynamicsWorldTypesEnum;
 import com.kotcrab.vis.ui.widget.file.FileTypeFilter;
@@ -84,6 +94,7 @@ import net.mgsx.gltf.loaders.gltf.GLTFAssetLoader;
 import net.mgsx.gltf.loaders.shared.SceneAssetLoaderParameters;
 import net.mgsx.gltf.scene3d.scene.SceneAsset;
 
+import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -254,16 +265,34 @@ public class HGEngine implements Disposable {
     // taking size + 1 to have the actual [SIZE x SIZE] cells grid
     // which will take [SIZE + 1 x SIZE + 1] vertex grid to define
     public final Array<TerrainChunk> chunks;
+    public final TerrainChunkManager chunkManager;
     public HGGrid gridCellular = new HGGrid(512);
     public HGGrid gridDungeon = new HGGrid(512); // This algorithm likes odd-sized maps, although it works either way.
+    // the cellular/dungeon variants being generated on the workers (see generateGridVariants)
+    public final Array<GridGenerationJob> gridJobs = new Array<>(true, 8, GridGenerationJob.class);
 
-    Array<NoiseStageInfo> noiseStages = new Array<>(true, 16, NoiseStageInfo.class);
+    public Array<NoiseStageInfo> noiseStages = new Array<>(true, 16, NoiseStageInfo.class);
     public float mid;
     public float yScale = 1f;
     public float step = -1f;
 
+    public final ParallelNoiseGenerator parallelNoise = new ParallelNoiseGenerator();
+    // the chunks' meshes are built on the workers and uploaded within the per frame budget (see resetChunkAsync)
+    public final TerrainMeshBuilder meshBuilder = new TerrainMeshBuilder(new TerrainMeshBuilder.Listener() {
+        @Override
+        public void uploaded(TerrainMeshBuilder.Job job) { finishResetChunk(job); }
+    });
+    // the saved map the chunks are read from (instead of being generated), see loadChunks
+    public ChunkStore chunkStore = null;
+
     // Graph for Pathfinding Algorithms
     public HGGraph pfaGraph = new HGGraph();
+    // the path requests served within the time budget per frame (see ModelEditScreen.render)
+    public HGPathScheduler pathScheduler = new HGPathScheduler(pfaGraph);
+    // the batches of path requests solved on the workers (e.g. the crowds replanning at once)
+    public HGPathService pathService = new HGPathService(pfaGraph);
+    // the flow fields shared by the agents heading to the same goal (see FOLLOW_FLOW_FIELD)
+    public HGFlowFieldCache flowFields = new HGFlowFieldCache(pfaGraph);
 
     public HGEngine(HGGame game) {
         this.game = game;
@@ -284,6 +313,7 @@ public class HGEngine implements Disposable {
         });
 
         for (TerrainChunk tc: chunks) { pfaGraph.addGraphNodesGrid(tc.gridNoise); }
+        chunkManager = new TerrainChunkManager(this);
 
         // Formation Related:
         // NOTE: stubAnchor should be initialized after Bullet init.
@@ -356,21 +386,52 @@ public class HGEngine implements Disposable {
     }
 
     public void generateNoise(float yScale, Array<NoiseStageInfo> stages) {
-        if (stages.size == 0) { return; }
+        if (stages.size == 0 || isNoiseGenerating()) { return; }
 
         this.yScale = yScale;
         this.step = -1f;
+        this.chunkStore = null; // the saved map is no longer relevant
 
         noiseStages.clear();
         noiseStages.addAll(stages);
 
-        for (TerrainChunk tc: chunks) { tc.generateNoise(yScale, stages); }
+        for (TerrainChunk tc: chunks) { tc.generateNoise(yScale, stages, false); }
+        stitchChunks(true);
 
         resetChunks(unitSize);
     }
 
+    public boolean generateNoiseParallel(float yScale, Array<NoiseStageInfo> stages, ParallelNoiseGenerator.Listener listener) {
+        if (stages.size == 0 || parallelNoise.isRunning()) { return false; }
+
+        this.yScale = yScale;
+        this.step = -1f;
+        this.chunkStore = null; // the saved map is no longer relevant
+
+        noiseStages.clear();
+        noiseStages.addAll(stages);
+
+        return parallelNoise.generate(chunks, yScale, stages, new ParallelNoiseGenerator.Listener() {
+            @Override
+            public void progress(int done, int total) {
+                if (listener != null) { listener.progress(done, total); }
+            }
+
+            @Override
+            public void finished(boolean success) {
+                // the physical, graph and terrain parts updates should happen on the render thread
+                if (success) { stitchChunks(true); resetChunks(unitSize); }
+                if (listener != null) { listener.finished(success); }
+            }
+        });
+    }
+
+    public boolean isNoiseGenerating() { return parallelNoise.isRunning(); }
+
     public void roundNoiseToStep(float step) {
+        if (isNoiseGenerating()) { return; }
         this.step = step;
+        this.chunkStore = null;
 
         for (TerrainChunk tc: chunks) { tc.roundNoiseToStep(step); }
 
@@ -378,7 +439,11 @@ public class HGEngine implements Disposable {
     }
 
     public void discardNoise() {
+        if (isNoiseGenerating()) { return; }
         this.step = -1f;
+        this.chunkStore = null;
+        // no stages: the chunks streamed in later are left flat as well
+        noiseStages.clear();
 
         for (TerrainChunk tc: chunks) { tc.discardNoise(); }
 
@@ -389,7 +454,48 @@ public class HGEngine implements Disposable {
 
     public void generateDungeon() { gridDungeon.generateDungeon(); }
 
+    /**
+     * Generates the variants of the cellular/dungeon grid on the workers (see GridGenerationJob), each with its own seed.
+     * The grid of the variant finished successfully becomes the current one (gridCellular/gridDungeon)
+     * before the listener is notified.
+     */
+    public Array<GridGenerationJob> generateGridVariants(GeneratorsEnum generator, int variants, GridGenerationJob.Listener listener) {
+        Array<GridGenerationJob> jobs = new Array<>(true, variants, GridGenerationJob.class);
+        for (int i = 0; i < variants; i++) {
+            // the jobs never touch noise4j's shared Random (see Generators.getRandom), the seeds come from the engine's one
+            GridGenerationJob variant = new GridGenerationJob(generator, 512, MathUtils.random.nextLong(), new GridGenerationJob.Listener() {
+                @Override
+                public void progress(GridGenerationJob job, int done, int total) {
+                    if (listener != null) { listener.progress(job, done, total); }
+                }
+
+                @Override
+                public void finished(GridGenerationJob job, boolean success) {
+                    gridJobs.removeValue(job, true);
+                    if (success) {
+                        if (job.generator == GeneratorsEnum.CELLULAR) { gridCellular = job.grid; } else { gridDungeon = job.grid; }
+                    }
+                    if (listener != null) { listener.finished(job, success); }
+                }
+            });
+            jobs.add(variant);
+            gridJobs.add(variant);
+            variant.submit();
+        }
+        return jobs;
+    }
+
+    public void cancelGridJobs(GeneratorsEnum generator) {
+        for (GridGenerationJob job: gridJobs) { if (generator == null || job.generator == generator) { job.cancel(); } }
+    }
+
+    public boolean isGridGenerating(GeneratorsEnum generator) {
+        for (GridGenerationJob job: gridJobs) { if (job.generator == generator) { return true; } }
+        return false;
+    }
+
     public void applyTerrainParts(final ArrayMap<TerrainPartsEnum, FileHandle> tp2fh) {
+        if (isNoiseGenerating()) { return; }
         TerrainPartsEnum.clearAll();
         for (TerrainPartsEnum tp: TerrainPartsEnum.values()) {
             tp.processFileHandle(assetManager, tp2fh.get(tp));
@@ -400,6 +506,45 @@ public class HGEngine implements Disposable {
 
     public void clearTerrain() { for (TerrainChunk tc: chunks) { tc.clearTerrain(); } }
 
+    /**
+     * Shared edges (see HGGrid.getOwnedWidth): the ghost samples are copied from their owners,
+     * the ones with no owner loaded are generated (generate = true) with the chunk's stages.
+     * Every sample is generated exactly once: N chunks cost N * MAP_SIZE^2 samples plus the edges of the map
+     * not owned by any loaded chunk (see HGGrid.generatedSamples).
+     */
+    public void stitchChunks(boolean generate) {
+        if (generate) { for (TerrainChunk tc: chunks) { generateMissingGhosts(tc); } }
+        for (TerrainChunk tc: chunks) { stitchChunk(tc); }
+    }
+
+    public void generateMissingGhosts(TerrainChunk tc) {
+        int cx = TerrainChunkManager.toChunkCoord(tc.gridNoise.getX0());
+        int cz = TerrainChunkManager.toChunkCoord(tc.gridNoise.getZ0());
+        tc.gridNoise.generateGhosts(
+                chunkManager.getChunk(cx + 1, cz) == null,
+                chunkManager.getChunk(cx, cz + 1) == null,
+                chunkManager.getChunk(cx + 1, cz + 1) == null);
+    }
+
+    // the chunk's ghosts are copied from the +x/+z owners and the chunk's edges are copied to the -x/-z neighbours
+    public void stitchChunk(TerrainChunk tc) {
+        int cx = TerrainChunkManager.toChunkCoord(tc.gridNoise.getX0());
+        int cz = TerrainChunkManager.toChunkCoord(tc.gridNoise.getZ0());
+        tc.gridNoise.copyGhosts(getChunkGrid(cx + 1, cz), getChunkGrid(cx, cz + 1), getChunkGrid(cx + 1, cz + 1));
+
+        HGGrid left = getChunkGrid(cx - 1, cz);
+        HGGrid top = getChunkGrid(cx, cz - 1);
+        HGGrid topLeft = getChunkGrid(cx - 1, cz - 1);
+        if (left != null) { left.copyGhosts(tc.gridNoise, null, null); }
+        if (top != null) { top.copyGhosts(null, tc.gridNoise, null); }
+        if (topLeft != null) { topLeft.copyGhosts(null, null, tc.gridNoise); }
+    }
+
+    private HGGrid getChunkGrid(int cx, int cz) {
+        TerrainChunk tc = chunkManager.getChunk(cx, cz);
+        return tc != null ? tc.gridNoise : null;
+    }
+
     public void resetChunks(float scale) {
         mid = (float) Arrays.stream(chunks.toArray())
                 .map(TerrainChunk::getGridNoise)
@@ -408,58 +553,221 @@ public class HGEngine implements Disposable {
 
         pfaGraph.globalScale = scale;
 
-        for (TerrainChunk tc: chunks) {
-            tc.resetNoiseModelInstances(scale);
+        for (TerrainChunk tc: chunks) { resetChunkAsync(tc, scale, true); }
+
+        // the heights are already in place (the meshes are not needed for that)
+        alignModelInstancesWithNoiseGrid(scale);
+    }
+
+    public void saveChunks(File file) {
+        if (isNoiseGenerating()) { return; }
+        ChunkStore.write(file, chunks, yScale, step, mid, noiseStages);
+    }
+
+    /**
+     * Replaces the current chunks with the ones saved to the file (see ChunkStore), the chunks are read
+     * as they were saved: no noise generation, rounding or cells classification is done.
+     * The chunks beyond the saved ones are generated with the saved stages while streaming (see TerrainChunkManager.load).
+     */
+    public void loadChunks(File file, float scale) {
+        if (isNoiseGenerating() || scale <= 0f) { return; }
+        ChunkStore store = ChunkStore.open(file);
+        if (store.chunkSize != MAP_SIZE) {
+            Gdx.app.error(getClass().getSimpleName(), "ERROR: chunk size mismatch: " + store.chunkSize + " " + file);
+            return;
+        }
+
+        chunkManager.unloadAll();
+
+        chunkStore = store;
+        yScale = store.yScale;
+        step = store.step;
+        mid = store.mid;
+        noiseStages.clear();
+        noiseStages.addAll(store.noiseStages);
+        pfaGraph.globalScale = scale;
+
+        for (int i = 0; i < store.size(); i++) { chunkManager.load(store.cxs[i], store.czs[i], scale); }
+
+        alignModelInstancesWithNoiseGrid(scale);
+    }
+
+    public void resetChunk(TerrainChunk tc, float scale) { resetChunk(tc, scale, true); }
+
+    // classify: false - the cells classification is already in place (see ChunkStore.read)
+    public void resetChunk(TerrainChunk tc, float scale, boolean classify) {
+        meshBuilder.cancel(tc); // the results of the earlier async reset (if any) are no longer relevant
+        tc.resetNoiseModelInstances(scale);
+        finishResetChunk(tc, scale, classify);
+    }
+
+    /**
+     * Same as resetChunk but the vertices and indices of the chunk's meshes, the terrain parts and the graph nodes'
+     * coordinates are prepared on the workers, only the upload and the rigid body are left for the render thread
+     * once they are ready (see updateChunkMeshes). Until then the chunk keeps its previous meshes (if any).
+     */
+    public void resetChunkAsync(TerrainChunk tc, float scale, boolean classify) {
+        meshBuilder.submit(tc, scale, mid, classify);
+    }
 
-            tc.trnNoiseLinesHgModelInstance(0f, -mid * tc.gridNoise.yScale * scale, 0f);
-            tc.trnNoiseTrianglesPhysModelInstance(0f, -mid * tc.gridNoise.yScale * scale, 0f);
+    // should be called each frame on the render thread: uploads the meshes built so far (see TerrainMeshBuilder.update)
+    public void updateChunkMeshes() {
+        // the grids are being written by the workers (the chunks are re-submitted once the generation is done)
+        if (isNoiseGenerating()) { return; }
+        meshBuilder.update();
+    }
+
+    // everything besides the meshes, expects the chunk's meshes to be just built (see TerrainChunk.resetNoiseModelInstances)
+    public void finishResetChunk(TerrainChunk tc, float scale, boolean classify) {
+        tc.trnNoiseLinesHgModelInstance(0f, -mid * tc.gridNoise.yScale * scale, 0f);
+        tc.trnNoiseTrianglesPhysModelInstance(0f, -mid * tc.gridNoise.yScale * scale, 0f);
+
+        tc.noiseTrianglesPhysModelInstance.addRigidBodyToDynamicsWorld(FLAG_GROUND, FLAG_ALL);
+
+        tc.applyTerrainParts(scale, classify);
+        tc.trnTerrain(0f, -mid * tc.gridNoise.yScale * scale, 0f);
+
+        tc.gridNoise.recalculate();
+        tc.gridNoise.graphNodes.forEach(node -> {
+            node.coordinates.y -= mid;
+            node.coordinates.scl(scale, tc.gridNoise.yScale * scale, scale);
+        });
+        // everything is rebuilt: nothing left for updateDirtyChunks
+        tc.gridNoise.clearDirty();
+    }
 
-            tc.noiseTrianglesPhysModelInstance.addRigidBodyToDynamicsWorld(FLAG_GROUND, FLAG_ALL);
+    // the same as finishResetChunk(tc, scale, classify) with the terrain parts and the graph nodes' coordinates
+    // prepared by the worker (see TerrainMeshBuilder.Job): only swapped in here
+    public void finishResetChunk(TerrainMeshBuilder.Job job) {
+        TerrainChunk tc = job.tc;
+        // mid has changed since the submit (see resetChunks): everything is redone here
+        if (job.mid != mid) { finishResetChunk(tc, job.scale, job.classify); return; }
 
-            tc.applyTerrainParts(scale);
-            tc.trnTerrain(0f, -mid * tc.gridNoise.yScale * scale, 0f);
+        float dy = -mid * tc.gridNoise.yScale * job.scale;
+        tc.trnNoiseLinesHgModelInstance(0f, dy, 0f);
+        tc.trnNoiseTrianglesPhysModelInstance(0f, dy, 0f);
 
+        tc.noiseTrianglesPhysModelInstance.addRigidBodyToDynamicsWorld(FLAG_GROUND, FLAG_ALL);
+
+        if (job.tiles != null) { tc.setTerrainParts(job.cells, job.tiles, dy); }
+        if (!tc.gridNoise.setCoordinates(job.nodeCoordinates)) {
             tc.gridNoise.recalculate();
             tc.gridNoise.graphNodes.forEach(node -> {
                 node.coordinates.y -= mid;
-                node.coordinates.scl(scale, tc.gridNoise.yScale * scale, scale);
+                node.coordinates.scl(job.scale, tc.gridNoise.yScale * job.scale, job.scale);
             });
         }
+        // everything is rebuilt: nothing left for updateDirtyChunks
+        tc.gridNoise.clearDirty();
+    }
 
-        alignModelInstancesWithNoiseGrid(scale);
+    /**
+     * Sets the height of the vertex (x, z) (the grid coordinates adjusted to the MAP_CENTER, see HGGrid.getX0)
+     * in all chunks sharing it (the edges are shared by the neighbouring chunks).
+     * The chunks are only marked dirty, see updateDirtyChunks.
+     * @return true if any chunk contains the vertex
+     */
+    public boolean setGridNoiseHeight(int x, int z, float value) {
+        if (isNoiseGenerating()) { return false; }
+        int cx = TerrainChunkManager.toChunkCoord(x);
+        int cz = TerrainChunkManager.toChunkCoord(z);
+        // the vertex on the chunk's left/top edge is the right/bottom one of the left/top (and the diagonal) neighbour
+        boolean leftEdge = x - cx * MAP_SIZE == 0;
+        boolean topEdge = z - cz * MAP_SIZE == 0;
+        boolean found = setChunkHeight(cx, cz, x, z, value);
+        if (leftEdge) { found |= setChunkHeight(cx - 1, cz, x, z, value); }
+        if (topEdge) { found |= setChunkHeight(cx, cz - 1, x, z, value); }
+        if (leftEdge && topEdge) { found |= setChunkHeight(cx - 1, cz - 1, x, z, value); }
+        return found;
+    }
+
+    private boolean setChunkHeight(int cx, int cz, int x, int z, float value) {
+        TerrainChunk tc = chunkManager.getChunk(cx, cz);
+        if (tc == null) { return false; }
+        tc.gridNoise.set(x - tc.gridNoise.getX0(), z - tc.gridNoise.getZ0(), value);
+        return true;
+    }
+
+    /**
+     * Rebuilds only the modified regions of the chunks (see TerrainChunk.updateDirtyRegion).
+     * NOTE: mid is kept as is (it's recalculated by resetChunks only), otherwise all chunks would have to move.
+     */
+    public void updateDirtyChunks(float scale) {
+        if (isNoiseGenerating() || scale <= 0f) { return; }
+        boolean updated = false;
+        for (TerrainChunk tc: chunks) {
+            // the whole chunk is going to be rebuilt anyway (the edits are picked up, see TerrainMeshBuilder.update)
+            if (meshBuilder.isPending(tc)) { continue; }
+            updated |= tc.updateDirtyRegion(scale, mid);
+        }
+        if (updated) { alignModelInstancesWithNoiseGrid(scale); }
     }
 
     public final Vector3 tmpV1 = new Vector3();
+    private float[] alignXs = new float[0];
+    private float[] alignZs = new float[0];
+    private float[] alignYs = new float[0];
     public void alignModelInstancesWithNoiseGrid(float scale) {
-        for (EditableModelInstance mi: editableMIs) {
+        int count = editableMIs.size;
+        if (alignXs.length < count) {
+            alignXs = new float[count]; alignZs = new float[count]; alignYs = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            editableMIs.get(i).transform.getTranslation(tmpV1);
+            alignXs[i] = tmpV1.x;
+            alignZs[i] = tmpV1.z;
+        }
+        getGridNoiseY(alignXs, alignZs, alignYs, 0, count, scale);
+        for (int i = 0; i < count; i++) {
+            EditableModelInstance mi = editableMIs.get(i);
             mi.transform.getTranslation(tmpV1);
-            tmpV1.y = getGridNoiseY(tmpV1.x, tmpV1.z, scale) + mi.getBB().getHeight()/2;
+            tmpV1.y = alignYs[i] + mi.getBB().getHeight()/2;
             mi.setTranslation(tmpV1);
         }
     }
 
+    // O(1): the chunks are registered by their chunk coordinates (see TerrainChunkManager.toKey)
+    public TerrainChunk getChunk(float x, float z, float scale) {
+        if (scale <= 0f) { return null; }
+        int cx = TerrainChunkManager.toChunkCoord(MathUtils.floor(x / scale));
+        int cz = TerrainChunkManager.toChunkCoord(MathUtils.floor(z / scale));
+        return chunkManager.getChunk(cx, cz);
+    }
+
+    /**
+     * @return the (bilinear) height of the noise grid at the world (x, z), 0 if there's no chunk there
+     */
     public float getGridNoiseY(float x, float z, float scale) {
-        for (TerrainChunk tc: chunks) {
-            //Gdx.app.debug("engine", ""
-            //        + " x: " + x + " z: " + z + " scale: " + scale
-            //        + " x0: " + tc.gridNoise.getX0()
-            //        + " z0: " + tc.gridNoise.getZ0()
-            //        + " width: " + tc.gridNoise.getWidth()
-            //        + " height: " + tc.gridNoise.getHeight()
-            //);
-            float x0 = tc.gridNoise.getX0();
-            float z0 = tc.gridNoise.getZ0();
-            // TODO: change below to HGGrid.isIndexValid
-            if ((x/scale >= x0 && x/scale < (x0 + tc.gridNoise.getWidth()))
-                && (z/scale >= z0 && z/scale < (z0 + tc.gridNoise.getHeight()))) {
-                float rawY = 0f;
-                try {
-                    rawY = (tc.gridNoise.get(Math.round(x/scale - x0), Math.round(z/scale - z0)) - mid);
-                } catch (ArrayIndexOutOfBoundsException ignored) { }
-                return rawY * tc.gridNoise.yScale * scale;
-            }
+        TerrainChunk tc = getChunk(x, z, scale);
+        if (tc == null) { return 0f; }
+        return getGridNoiseY(tc, x, z, scale);
+    }
+
+    public float getGridNoiseY(TerrainChunk tc, float x, float z, float scale) {
+        HGGrid grid = tc.gridNoise;
+        float rawY = grid.getBilinear(x / scale - grid.getX0(), z / scale - grid.getZ0()) - mid;
+        return rawY * grid.yScale * scale;
+    }
+
+    /**
+     * Batch version of getGridNoiseY: fills out[offset...offset + count) with the heights at (xs[i], zs[i]).
+     * The chunk is looked up only when a point leaves the previous point's chunk, so the coherent
+     * (close to each other) points cost no more than the interpolation itself.
+     *
+     * @return out
+     */
+    public float[] getGridNoiseY(float[] xs, float[] zs, float[] out, int offset, int count, float scale) {
+        TerrainChunk tc = null;
+        int cx = Integer.MIN_VALUE;
+        int cz = Integer.MIN_VALUE;
+        for (int i = offset; i < offset + count; i++) {
+            if (scale <= 0f) { out[i] = 0f; continue; }
+            int pcx = TerrainChunkManager.toChunkCoord(MathUtils.floor(xs[i] / scale));
+            int pcz = TerrainChunkManager.toChunkCoord(MathUtils.floor(zs[i] / scale));
+            if (pcx != cx || pcz != cz) { cx = pcx; cz = pcz; tc = chunkManager.getChunk(cx, cz); }
+            out[i] = tc != null ? getGridNoiseY(tc, xs[i], zs[i], scale) : 0f;
         }
-        return 0f;
+        return out;
     }
 
     public void resetDynamicsWorld(float scale) {
@@ -988,6 +1296,84 @@ public class HGEngine implements Disposable {
         return out;
     }
 
+    /**
+     * The first intersection of the ray with the noise grid surface (as it is triangulated for the rendering and physics).
+     * Each chunk is tested with its min/max pyramid (see HeightPyramid.intersect), no allocations.
+     *
+     * @param out the intersection point (world coordinates), untouched if there's none
+     * @return the distance along the ray (in the ray's direction units) or -1 if there's no intersection
+     */
+    public float rayTerrain(Ray ray, float scale, Vector3 out) {
+        float t = rayTerrain(ray.origin.x, ray.origin.y, ray.origin.z,
+                ray.direction.x, ray.direction.y, ray.direction.z, Float.MAX_VALUE, scale);
+        if (t >= 0f && out != null) { ray.getEndPoint(out, t); }
+        return t;
+    }
+
+    // true if the segment between the world points doesn't cross the noise grid surface
+    public boolean isTerrainLineOfSight(Vector3 from, Vector3 to, float scale) {
+        return rayTerrain(from.x, from.y, from.z, to.x - from.x, to.y - from.y, to.z - from.z, 1f, scale) < 0f;
+    }
+
+    // see: http://www.cse.yorku.ca/~amana/research/grid.pdf (A Fast Voxel Traversal Algorithm for Ray Tracing)
+    // The chunks are visited in the order the ray crosses them on XZ plane (the chunk coordinates are the cells,
+    // see TerrainChunkManager.toKey) and only those are tested: the cost depends on the amount of chunks crossed,
+    // not loaded. The hit within a chunk can't be closer than the chunk's entry, so the walk stops once past the hit.
+    public float rayTerrain(float ox, float oy, float oz, float dx, float dy, float dz, float maxT, float scale) {
+        if (scale <= 0f) { return -1f; }
+        TerrainChunkManager cm = chunkManager;
+        if (cm.coords2entry.size == 0) { return -1f; }
+        // the grid units (adjusted to the map center, see HGGrid.getX0()): the parameter t stays the same
+        float gx = ox / scale, gz = oz / scale;
+        float gdx = dx / scale, gdz = dz / scale;
+
+        // [0, maxT] clipped to the bounds of the chunks (the last sample column/row is shared with the next chunk)
+        float tMin = 0f, tMax = maxT;
+        float lo = cm.minCx * MAP_SIZE, hi = (cm.maxCx + 1) * MAP_SIZE;
+        if (gdx == 0f) { if (gx < lo || gx > hi) { return -1f; } }
+        else {
+            float t1 = (lo - gx) / gdx, t2 = (hi - gx) / gdx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        lo = cm.minCz * MAP_SIZE; hi = (cm.maxCz + 1) * MAP_SIZE;
+        if (gdz == 0f) { if (gz < lo || gz > hi) { return -1f; } }
+        else {
+            float t1 = (lo - gz) / gdz, t2 = (hi - gz) / gdz;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (tMin > tMax) { return -1f; }
+
+        int cx = MathUtils.clamp(TerrainChunkManager.toChunkCoord(MathUtils.floor(gx + gdx * tMin)), cm.minCx, cm.maxCx);
+        int cz = MathUtils.clamp(TerrainChunkManager.toChunkCoord(MathUtils.floor(gz + gdz * tMin)), cm.minCz, cm.maxCz);
+        int stepX = gdx > 0f ? 1 : -1, stepZ = gdz > 0f ? 1 : -1;
+        // the t of the next chunk border crossed along each axis and the t between the borders
+        float tNextX = gdx == 0f ? Float.POSITIVE_INFINITY : ((cx + (gdx > 0f ? 1 : 0)) * MAP_SIZE - gx) / gdx;
+        float tNextZ = gdz == 0f ? Float.POSITIVE_INFINITY : ((cz + (gdz > 0f ? 1 : 0)) * MAP_SIZE - gz) / gdz;
+        float tDeltaX = gdx == 0f ? Float.POSITIVE_INFINITY : MAP_SIZE / Math.abs(gdx);
+        float tDeltaZ = gdz == 0f ? Float.POSITIVE_INFINITY : MAP_SIZE / Math.abs(gdz);
+
+        float best = -1f;
+        float tEnter = tMin;
+        while (tEnter <= tMax && (best < 0f || tEnter <= best)) {
+            TerrainChunk tc = cm.getChunk(cx, cz);
+            if (tc != null) {
+                HGGrid grid = tc.gridNoise;
+                float yScl = grid.yScale * scale;
+                // to the grid's local space (see resetChunk)
+                float t = grid.getPyramid().intersect(
+                        gx - grid.getX0(), oy / yScl + mid, gz - grid.getZ0(),
+                        gdx, dy / yScl, gdz, best >= 0f ? best : maxT);
+                if (t >= 0f && (best < 0f || t < best)) { best = t; }
+            }
+            if (tNextX < tNextZ) { cx += stepX; tEnter = tNextX; tNextX += tDeltaX; }
+            else { cz += stepZ; tEnter = tNextZ; tNextZ += tDeltaZ; }
+            if (cx < cm.minCx || cx > cm.maxCx || cz < cm.minCz || cz > cm.maxCz) { break; }
+        }
+        return best;
+    }
+
     public Array<BoundingBox> rayBBCollision(Ray ray, Array<BoundingBox> bbs, Array<BoundingBox> out) {
         // TODO: revisit this later when the Bullet Collision Physics is added
 
@@ -24,7 +24,6 @@ import com.badlogic.gdx.assets.loaders.I18NBundleLoader.I18NBundleParameter;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g3d.ModelBatch;
-import com.badlogic.gdx.graphics.g3d.ModelCache;
 import com.badlogic.gdx.graphics.g3d.shaders.DefaultShader;
 import com.badlogic.gdx.graphics.g3d.utils.DefaultShaderProvider;
 import com.badlogic.gdx.utils.Array;
@@ -55,7 +54,6 @@ import static com.hammergenics.core.stages.ui.file.TypeFilterRulesEnum.MODEL_FIL
 public class HGGame extends Game {
     public HGEngine engine;
     public ModelBatch modelBatch;
-    public ModelCache modelCache;
     public SpriteBatch spriteBatch;
     public GroovyShell groovyShell;
     public Binding sharedData;
@@ -136,9 +134,6 @@ public class HGGame extends Game {
         // modelBatch = new ModelBatch(new PBRShaderProvider(configPBR));
 
 
-        // see: https://github.com/libgdx/libgdx/wiki/ModelCache#using-modelcache
-        modelCache = new ModelCache();
-
         spriteBatch = new SpriteBatch();
 
         // https://github.com/kotcrab/vis-ui#usage
@@ -148,7 +143,7 @@ public class HGGame extends Game {
 
         ENGLISH.apply(engine.assetManager);
 
-        ModelEditScreen screen = new ModelEditScreen(this, engine, modelBatch, modelCache);
+        ModelEditScreen screen = new ModelEditScreen(this, engine, modelBatch);
 
         sharedData = new Binding();
 
@@ -298,11 +293,6 @@ public class HGGame extends Game {
         // you'll need to call the dispose() method when no longer needed.
         modelBatch.dispose();
 
-        // https://github.com/libgdx/libgdx/wiki/ModelCache#using-modelcache
-        // ModelCache owns several native resources.
-        // Therefore you should dispose() the cache when no longer needed.
-        modelCache.dispose();
-
         spriteBatch.dispose();
 
         HGEngine.gridHgModel.dispose();
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.DefaultConnection;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.util.Arrays;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGClusterLevel {
+    // see: https://webdocs.cs.ualberta.ca/~mmueller/ps/hpastar.pdf (HPA*: Near-Optimal Hierarchical Path-Finding)
+    // The abstract level of HGGraph: every grid (chunk) is a cluster, the border between two adjacent clusters
+    // is split into the entrances (entranceWidth cells at most), each entrance is a pair of the abstract nodes
+    // (the middle cells on both sides) connected with the base edge between them. Within a cluster every pair of
+    // its abstract nodes is connected with the cost of the shortest path inside the cluster (precomputed with
+    // Dijkstra over the base level and kept until the cluster's nodes or entrances change).
+    // The start/end cells of a search (if not the entrances themselves) are inserted temporarily (see toAbstract).
+    public static final int TEMP_SLOTS = 2;
+
+    public final HGGraph graph;
+    public int entranceWidth = 16;
+
+    // the abstract nodes by index (the temporary ones are not included), see HGGraph.getNodeCount
+    public final Array<HGGraphNode> nodes = new Array<>(true, 256, HGGraphNode.class);
+    // the base nodes (cells) of the abstract nodes, by index
+    public final Array<HGGraphNode> bases = new Array<>(true, 256, HGGraphNode.class);
+    // the position of the abstract node among the entrances of its cluster, by index
+    public final IntArray locals = new IntArray(true, 256);
+    public final ObjectMap<HGGraphNodesGrid, Cluster> clusters = new ObjectMap<>();
+
+    private final Temp[] temps = new Temp[TEMP_SLOTS];
+    private int lastTemp = 0;
+    // the base nodes of the current query's start and end (see pin): neither takes the slot of the other
+    private HGGraphNode pinnedStart, pinnedEnd;
+    private long version = -1;
+    private final Array<Connection<HGGraphNode>> tmpConnections = new Array<>(true, 64, Connection.class);
+    private final HGGraphNodesGrid[] tmpAdjacent = new HGGraphNodesGrid[4];
+
+    // Dijkstra's state over the base level (global indices)
+    private float[] dist = new float[0];
+    private int[] stamps = new int[0];
+    private int stamp = 0;
+    private final HGIndexHeap heap = new HGIndexHeap();
+
+    public HGClusterLevel(HGGraph graph) {
+        this.graph = graph;
+        for (int i = 0; i < TEMP_SLOTS; i++) { temps[i] = new Temp(); }
+    }
+
+    public int getNodeCount() { return nodes.size + TEMP_SLOTS; }
+
+    // rebuilds the abstract level if the graph has changed since (see HGGraph.getCsr), the clusters with
+    // the same nodes and entrances as before keep their intra-cluster costs
+    public void update() {
+        HGCsrGraph csr = graph.getCsr();
+        if (csr.version == version) { return; }
+        version = csr.version;
+
+        nodes.clear();
+        bases.clear();
+        locals.clear();
+        for (Temp temp: temps) { temp.clear(); }
+        ObjectMap<HGGraphNodesGrid, Cluster> previous = new ObjectMap<>(clusters);
+        clusters.clear();
+        for (HGGraphNodesGrid grid: graph.grids) {
+            Cluster cluster = previous.get(grid);
+            if (cluster == null) { cluster = new Cluster(grid); }
+            cluster.entrances.clear();
+            clusters.put(grid, cluster);
+        }
+
+        // the entrances: across the right and the bottom sides of each grid (each border is visited once)
+        for (HGGraphNodesGrid grid: graph.grids) {
+            graph.getAdjacent(grid, tmpAdjacent);
+            if (tmpAdjacent[3] != null) { addEntrances(csr, grid, tmpAdjacent[3], false); }
+            if (tmpAdjacent[1] != null) { addEntrances(csr, grid, tmpAdjacent[1], true); }
+        }
+
+        for (Cluster cluster: clusters.values()) { connectWithin(csr, cluster); }
+    }
+
+    // row: the grids are stacked along Z - axis (the bottom side), otherwise along X - axis (the right side)
+    private void addEntrances(HGCsrGraph csr, HGGraphNodesGrid grid, HGGraphNodesGrid other, boolean row) {
+        int length = row ? Math.min(grid.getWidth(true), other.getWidth(true)) : Math.min(grid.getHeight(true), other.getHeight(true));
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = i < length && edge(csr, border(grid, other, i, row, true), border(grid, other, i, row, false)) >= 0;
+            // the segment [start, i) is complete: the transition in its middle
+            if (start >= 0 && (!open || i - start == entranceWidth)) {
+                addTransition(csr, grid, other, border(grid, other, (start + i - 1) / 2, row, true),
+                        border(grid, other, (start + i - 1) / 2, row, false));
+                start = -1;
+            }
+            if (open && start < 0) { start = i; }
+        }
+    }
+
+    private void addTransition(HGCsrGraph csr, HGGraphNodesGrid grid, HGGraphNodesGrid other, HGGraphNode base, HGGraphNode otherBase) {
+        float cost = csr.costs[edge(csr, base, otherBase)];
+        HGGraphNode a = addNode(clusters.get(grid), base);
+        HGGraphNode b = addNode(clusters.get(other), otherBase);
+        a.connections.add(new ClusterConnection(a, b, cost));
+        b.connections.add(new ClusterConnection(b, a, cost));
+    }
+
+    // the cell i along the border: on the grid's side (this) or on the other's side
+    private HGGraphNode border(HGGraphNodesGrid grid, HGGraphNodesGrid other, int i, boolean row, boolean self) {
+        if (row) { return self ? grid.getGraphNode(i, grid.getHeight(true) - 1) : other.getGraphNode(i, 0); }
+        return self ? grid.getGraphNode(grid.getWidth(true) - 1, i) : other.getGraphNode(0, i);
+    }
+
+    // the edge index in the snapshot, -1 if there's no edge
+    private int edge(HGCsrGraph csr, HGGraphNode from, HGGraphNode to) {
+        for (int e = csr.offsets[from.index]; e < csr.offsets[from.index + 1]; e++) {
+            if (csr.targets[e] == to.index) { return e; }
+        }
+        return -1;
+    }
+
+    private HGGraphNode addNode(Cluster cluster, HGGraphNode base) {
+        HGGraphNode node = new HGGraphNode(nodes.size);
+        node.coordinates = base.coordinates; // shared: the heuristic works the same on both levels
+        node.grid = base.grid;
+        locals.add(cluster.entrances.size);
+        cluster.entrances.add(node);
+        nodes.add(node);
+        bases.add(base);
+        return node;
+    }
+
+    private void connectWithin(HGCsrGraph csr, Cluster cluster) {
+        int count = cluster.entrances.size;
+        boolean same = cluster.costs != null && cluster.modCount == cluster.grid.nodesModCount && cluster.previousBases.size == count;
+        for (int i = 0; same && i < count; i++) {
+            same = cluster.previousBases.get(i) == bases.get(cluster.entrances.get(i).index);
+        }
+        if (!same) {
+            cluster.costs = new float[count * count];
+            for (int i = 0; i < count; i++) {
+                dijkstra(csr, bases.get(cluster.entrances.get(i).index), cluster.grid);
+                for (int j = 0; j < count; j++) { cluster.costs[i * count + j] = distance(bases.get(cluster.entrances.get(j).index)); }
+            }
+            cluster.modCount = cluster.grid.nodesModCount;
+        }
+        for (int i = 0; i < count; i++) {
+            HGGraphNode from = cluster.entrances.get(i);
+            for (int j = 0; j < count; j++) {
+                float cost = cluster.costs[i * count + j];
+                if (i != j && cost < Float.POSITIVE_INFINITY) { from.connections.add(new ClusterConnection(from, cluster.entrances.get(j), cost)); }
+            }
+        }
+        cluster.previousBases.clear();
+        for (HGGraphNode node: cluster.entrances) { cluster.previousBases.add(bases.get(node.index)); }
+    }
+
+    public HGGraphNode toAbstract(HGGraphNode base) {
+        if (base == null || base.index < 0) { return null; }
+        Cluster cluster = clusters.get(base.grid);
+        if (cluster == null) { return null; }
+        for (HGGraphNode node: cluster.entrances) { if (bases.get(node.index) == base) { return node; } }
+        for (Temp temp: temps) { if (temp.base == base) { return temp.node; } }
+
+        // the least recently inserted slot is replaced, unless it holds the other end of the query
+        int slot = (lastTemp + 1) % TEMP_SLOTS;
+        for (int i = 1; i < TEMP_SLOTS && pinned(temps[slot].base); i++) { slot = (lastTemp + 1 + i) % TEMP_SLOTS; }
+        lastTemp = slot;
+        Temp temp = temps[lastTemp];
+        temp.node.index = nodes.size + lastTemp;
+        insert(temp, base, cluster);
+        return temp.node;
+    }
+
+    // the start and the end of the query (the base level): converted in any order they keep their own slots
+    public void pin(HGGraphNode start, HGGraphNode end) {
+        pinnedStart = start;
+        pinnedEnd = end;
+    }
+
+    private boolean pinned(HGGraphNode base) { return base != null && (base == pinnedStart || base == pinnedEnd); }
+
+    public HGGraphNode toBase(HGGraphNode node) {
+        if (node == null) { return null; }
+        if (node.index < nodes.size) { return bases.get(node.index); }
+        return temps[node.index - nodes.size].base;
+    }
+
+    // the connections of the abstract node along with the ones leading to the temporary nodes of its cluster
+    public Array<Connection<HGGraphNode>> getConnections(HGGraphNode node) {
+        if (node.index >= nodes.size) { return node.connections; }
+        Array<Connection<HGGraphNode>> connections = node.connections;
+        for (Temp temp: temps) {
+            if (temp.base == null || temp.cluster.grid != node.grid || temp.in[locals.get(node.index)] == null) { continue; }
+            if (connections != tmpConnections) {
+                tmpConnections.clear();
+                tmpConnections.addAll(node.connections);
+                connections = tmpConnections;
+            }
+            connections.add(temp.in[locals.get(node.index)]);
+        }
+        return connections;
+    }
+
+    private void insert(Temp temp, HGGraphNode base, Cluster cluster) {
+        for (Temp other: temps) {
+            if (other == temp || other.direct == null) { continue; }
+            other.node.connections.removeValue(other.direct, true);
+            other.direct = null;
+        }
+        temp.clear();
+        temp.base = base;
+        temp.cluster = cluster;
+        temp.node.coordinates = base.coordinates;
+        temp.node.grid = base.grid;
+
+        HGCsrGraph csr = graph.getCsr();
+        dijkstra(csr, base, cluster.grid);
+        int count = cluster.entrances.size;
+        temp.in = new ClusterConnection[count];
+        for (int i = 0; i < count; i++) {
+            HGGraphNode entrance = cluster.entrances.get(i);
+            float cost = distance(bases.get(entrance.index));
+            if (cost == Float.POSITIVE_INFINITY) { continue; }
+            temp.node.connections.add(new ClusterConnection(temp.node, entrance, cost));
+            temp.in[i] = new ClusterConnection(entrance, temp.node, cost);
+        }
+        // the other temporary node of the same cluster: the direct connection both ways
+        for (Temp other: temps) {
+            if (other == temp || other.base == null || other.cluster != cluster) { continue; }
+            float cost = distance(other.base);
+            if (cost == Float.POSITIVE_INFINITY) { continue; }
+            temp.direct = new ClusterConnection(temp.node, other.node, cost);
+            temp.node.connections.add(temp.direct);
+            other.direct = new ClusterConnection(other.node, temp.node, cost);
+            other.node.connections.add(other.direct);
+        }
+    }
+
+    // the shortest paths from the base node to all nodes of the grid (within the grid only)
+    private void dijkstra(HGCsrGraph csr, HGGraphNode from, HGGraphNodesGrid grid) {
+        if (dist.length < csr.nodeCount) {
+            dist = new float[csr.nodeCount];
+            stamps = new int[csr.nodeCount];
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) { Arrays.fill(stamps, 0); stamp = 1; }
+
+        heap.clear();
+        set(from.index, 0f);
+        heap.push(from.index, 0f);
+        while (heap.size > 0) {
+            float key = heap.peekKey();
+            int node = heap.pop();
+            if (key > dist[node]) { continue; } // stale
+            graph.expandedNodes++;
+            for (int e = csr.offsets[node]; e < csr.offsets[node + 1]; e++) {
+                int target = csr.targets[e];
+                if (csr.nodes[target].grid != grid) { continue; }
+                float cost = key + csr.costs[e];
+                if (stamps[target] == stamp && dist[target] <= cost) { continue; }
+                set(target, cost);
+                heap.push(target, cost);
+            }
+        }
+    }
+
+    private float distance(HGGraphNode base) {
+        return stamps[base.index] == stamp ? dist[base.index] : Float.POSITIVE_INFINITY;
+    }
+
+    private void set(int node, float value) { stamps[node] = stamp; dist[node] = value; }
+
+    public static class Cluster {
+        public final HGGraphNodesGrid grid;
+        public final Array<HGGraphNode> entrances = new Array<>(true, 16, HGGraphNode.class);
+        // the intra-cluster costs: entrances x entrances (row-major), POSITIVE_INFINITY if not reachable
+        public float[] costs = null;
+        public int modCount = -1;
+        private final Array<HGGraphNode> previousBases = new Array<>(true, 16, HGGraphNode.class);
+
+        public Cluster(HGGraphNodesGrid grid) { this.grid = grid; }
+    }
+
+    private static class Temp {
+        final HGGraphNode node = new HGGraphNode();
+        HGGraphNode base;
+        Cluster cluster;
+        ClusterConnection[] in;
+        ClusterConnection direct;
+
+        void clear() {
+            node.connections.clear();
+            base = null;
+            cluster = null;
+            in = null;
+            direct = null;
+        }
+    }
+
+    public static class ClusterConnection extends DefaultConnection<HGGraphNode> {
+        public final float cost;
+
+        public ClusterConnection(HGGraphNode fromNode, HGGraphNode toNode, float cost) {
+            super(fromNode, toNode);
+            this.cost = cost;
+        }
+
+        @Override public float getCost() { return cost; }
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGCsrGraph {
+    // see: https://en.wikipedia.org/wiki/Sparse_matrix#Compressed_sparse_row_(CSR,_CRS_or_Yale_format)
+    // The immutable snapshot of HGGraph: the edges of the node i are [offsets[i], offsets[i + 1])
+    // in targets (the node indices) and costs (precomputed, same as HGGraphNodeConnection.getCost).
+    // The edges are the ones HGGraphNodesGrid.connectWithin/connectBottom/connectRight create, derived from
+    // the grids layout directly, so the Connection objects of the nodes are not needed (see HGGraphNodesGrid.objectConnections).
+    public final int nodeCount;
+    // the node by index: used as the node "handle" for gdx-ai only (the coordinates are in xs, ys, zs)
+    public final HGGraphNode[] nodes;
+    public final float[] xs;
+    public final float[] ys;
+    public final float[] zs;
+    public final int[] offsets;
+    public final int[] targets;
+    public final float[] costs;
+    // true: all the nodes are at the same height, so the costs are uniform (see HGGraph.jumpPointSearch)
+    public final boolean flat;
+    // see HGGraph.getCsr
+    public final long version;
+
+    // the search state for the render thread
+    public final Search search;
+
+    private HGCsrGraph(HGGraphNode[] nodes, int[] offsets, int[] targets, long version) {
+        this.nodeCount = nodes.length;
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.version = version;
+
+        xs = new float[nodeCount];
+        ys = new float[nodeCount];
+        zs = new float[nodeCount];
+        boolean flat = true;
+        float y = Float.NaN;
+        for (int i = 0; i < nodeCount; i++) {
+            if (nodes[i] == null) { continue; } // a free index (see HGGraph.freeIndices)
+            xs[i] = nodes[i].coordinates.x;
+            ys[i] = nodes[i].coordinates.y;
+            zs[i] = nodes[i].coordinates.z;
+            if (Float.isNaN(y)) { y = ys[i]; }
+            flat &= ys[i] == y;
+        }
+        this.flat = flat;
+
+        costs = new float[targets.length];
+        for (int i = 0; i < nodeCount; i++) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) { costs[e] = dst2(i, targets[e]); }
+        }
+
+        search = new Search(this);
+    }
+
+    public float dst2(int from, int to) {
+        float dx = xs[to] - xs[from], dy = ys[to] - ys[from], dz = zs[to] - zs[from];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public int getEdgeCount() { return targets.length; }
+
+    // the approximate amount of bytes held by the arrays (the nodes are shared with the grids)
+    public long estimateMemory() {
+        return (long) nodeCount * (4 * 4 + 8) + 4L + (long) targets.length * (4 + 4);
+    }
+
+    public static HGCsrGraph build(HGGraph graph, long version) {
+        HGGraphNode[] nodes = new HGGraphNode[graph.getNodeCount()];
+        for (HGGraphNodesGrid grid: graph.grids) {
+            for (HGGraphNode node: grid.graphNodes) { nodes[node.index] = node; }
+        }
+
+        int[] offsets = new int[nodes.length + 1];
+        int[] neighbours = new int[8];
+        HGGraphNodesGrid[] around = new HGGraphNodesGrid[4];
+
+        // the first pass counts the edges, the second one fills them in
+        for (int pass = 0; pass < 2; pass++) {
+            int[] targets = pass == 0 ? null : new int[offsets[nodes.length]];
+            for (HGGraphNodesGrid grid: graph.grids) {
+                graph.getAdjacent(grid, around);
+                int width = grid.getWidth(true);
+                int height = grid.getHeight(true);
+                for (int z = 0; z < height; z++) {
+                    for (int x = 0; x < width; x++) {
+                        int index = grid.graphNodes.items[grid.getGraphNodeIndex(x, z)].index;
+                        int count = neighbours(grid, around, x, z, neighbours);
+                        if (pass == 0) { offsets[index + 1] = count; continue; }
+                        System.arraycopy(neighbours, 0, targets, offsets[index], count);
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int i = 0; i < nodes.length; i++) { offsets[i + 1] += offsets[i]; }
+            } else {
+                return new HGCsrGraph(nodes, offsets, targets, version);
+            }
+        }
+        return null; // unreachable
+    }
+
+    // the indices of the nodes the cell (x, z) is connected to (8 at most), see HGGraphNodesGrid.connectWithin
+    private static int neighbours(HGGraphNodesGrid grid, HGGraphNodesGrid[] around, int x, int z, int[] out) {
+        int width = grid.getWidth(true);
+        int height = grid.getHeight(true);
+        int count = 0;
+        for (int dz = -1; dz <= 1; dz++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx == 0 && dz == 0) { continue; }
+                int nx = x + dx, nz = z + dz;
+                if (nx >= 0 && nx < width && nz >= 0 && nz < height) {
+                    out[count++] = grid.graphNodes.items[grid.getGraphNodeIndex(nx, nz)].index;
+                }
+            }
+        }
+        // across the sides: the 3 nearest cells of the adjacent row/column within the common width/height
+        HGGraphNodesGrid top = around[0], bottom = around[1], left = around[2], right = around[3];
+        if (z == 0 && top != null) { count = side(top, x, top.getHeight(true) - 1, Math.min(width, top.getWidth(true)), true, out, count); }
+        if (z == height - 1 && bottom != null) { count = side(bottom, x, 0, Math.min(width, bottom.getWidth(true)), true, out, count); }
+        if (x == 0 && left != null) { count = side(left, z, left.getWidth(true) - 1, Math.min(height, left.getHeight(true)), false, out, count); }
+        if (x == width - 1 && right != null) { count = side(right, z, 0, Math.min(height, right.getHeight(true)), false, out, count); }
+        return count;
+    }
+
+    // row: the cells along X - axis at the fixed z (= fixed), otherwise along Z - axis at the fixed x
+    private static int side(HGGraphNodesGrid other, int along, int fixed, int limit, boolean row, int[] out, int count) {
+        if (along >= limit) { return count; }
+        for (int d = -1; d <= 1; d++) {
+            int a = along + d;
+            if (a < 0 || a >= limit) { continue; }
+            int index = row ? other.getGraphNodeIndex(a, fixed) : other.getGraphNodeIndex(fixed, a);
+            out[count++] = other.graphNodes.items[index].index;
+        }
+        return count;
+    }
+
+    /**
+     * The search state over the snapshot: HGIndexedAStarPathFinder goes over the edges' indices (see
+     * HGIndexedAStarPathFinder.IndexedEdgeGraph), the Connection objects are created for the path found only.
+     * The other path finders (e.g. gdx-ai's IndexedAStarPathFinder) go through getConnections: the connections
+     * are created the first time their edge is expanded and kept per edge (the snapshot is immutable), so they stay
+     * valid for the path finder's node records and no allocations are made once warmed up.
+     * Not thread safe: one per thread. Could be re-pointed at the newer snapshot (see setGraph).
+     */
+    public static class Search implements HGIndexedAStarPathFinder.IndexedEdgeGraph<HGGraphNode> {
+        public HGCsrGraph graph;
+        public final HGIndexedAStarPathFinder<HGGraphNode> pathFinder;
+        // same as HGGraphNode.heuristic over the snapshot's coordinates
+        public final HGIndexedAStarPathFinder.IndexedHeuristic<HGGraphNode> heuristic =
+                new HGIndexedAStarPathFinder.IndexedHeuristic<HGGraphNode>() {
+            @Override public float estimate(int index, int endIndex) { return graph.dst2(index, endIndex); }
+            @Override public float estimate(HGGraphNode node, HGGraphNode endNode) { return graph.dst2(node.index, endNode.index); }
+        };
+
+        private final Array<Connection<HGGraphNode>> connections = new Array<>(true, 16, Connection.class);
+        // by the edge index (see targets), created on demand
+        private HGGraphNodeConnection[] edgeConnections = null;
+
+        public Search(HGCsrGraph graph) {
+            this.graph = graph;
+            this.pathFinder = new HGIndexedAStarPathFinder<>(this);
+        }
+
+        // the path finder is kept: its node records grow in place (see HGIndexedAStarPathFinder),
+        // the search in progress (if any) should be restarted
+        public Search setGraph(HGCsrGraph graph) {
+            if (this.graph == graph) { return this; }
+            this.graph = graph;
+            edgeConnections = null;
+            return this;
+        }
+
+        @Override public int getIndex(HGGraphNode node) { return node.index; }
+        @Override public int getNodeCount() { return graph.nodeCount; }
+
+        @Override public boolean hasEdges() { return true; }
+        @Override public int getEdgesFrom(int index) { return graph.offsets[index]; }
+        @Override public int getEdgesTo(int index) { return graph.offsets[index + 1]; }
+        @Override public int getEdgeTarget(int edge) { return graph.targets[edge]; }
+        @Override public float getEdgeCost(int edge) { return graph.costs[edge]; }
+        @Override public HGGraphNode getNode(int index) { return graph.nodes[index]; }
+        @Override
+        public Connection<HGGraphNode> createConnection(HGGraphNode fromNode, HGGraphNode toNode) {
+            return new HGGraphNodeConnection(fromNode, toNode);
+        }
+
+        @Override
+        public Array<Connection<HGGraphNode>> getConnections(HGGraphNode fromNode) {
+            if (edgeConnections == null) { edgeConnections = new HGGraphNodeConnection[graph.targets.length]; }
+            connections.clear();
+            int from = fromNode.index;
+            for (int e = graph.offsets[from]; e < graph.offsets[from + 1]; e++) {
+                HGGraphNodeConnection connection = edgeConnections[e];
+                if (connection == null) {
+                    connection = edgeConnections[e] = new HGGraphNodeConnection(fromNode, graph.nodes[graph.targets[e]]);
+                }
+                connections.add(connection);
+            }
+            return connections;
+        }
+
+        public boolean contains(HGGraphNode node) {
+            return node != null && node.index >= 0 && node.index < graph.nodeCount && graph.nodes[node.index] == node;
+        }
+
+        public boolean searchNodePath(HGGraphNode startNode, HGGraphNode endNode, GraphPath<HGGraphNode> outPath) {
+            if (!contains(startNode) || !contains(endNode)) { return false; }
+            return pathFinder.searchNodePath(startNode, endNode, heuristic, outPath);
+        }
+
+        public boolean searchConnectionPath(HGGraphNode startNode, HGGraphNode endNode, GraphPath<Connection<HGGraphNode>> outPath) {
+            if (!contains(startNode) || !contains(endNode)) { return false; }
+            return pathFinder.searchConnectionPath(startNode, endNode, heuristic, outPath);
+        }
+    }
+}
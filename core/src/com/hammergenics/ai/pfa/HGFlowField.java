@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.steer.behaviors.FollowFlowField;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.Arrays;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGFlowField implements FollowFlowField.FlowField<Vector3> {
+    // see: https://en.wikipedia.org/wiki/Dijkstra%27s_algorithm
+    // see: https://github.com/libgdx/gdx-ai/wiki/Steering-Behaviors#flow-field-following
+    // The single goal for any amount of agents: Dijkstra runs once from the goal over the graph's snapshot
+    // (see HGCsrGraph, the edges are symmetric so the costs from the goal are the costs to it), then every node
+    // knows its cost to the goal (the integration field) and the next node on the way there (the direction field).
+    // The costs are the same as the path finders' ones (see HGGraphNodeConnection), so the agents follow
+    // the same routes A* would give them. The fields are recomputed once the snapshot changes (see update).
+    public final HGGraph graph;
+    public final HGGraphNode goal;
+    // the snapshot the fields were computed over
+    public HGCsrGraph csr = null;
+    // by the snapshot's node index: the cost to the goal (POSITIVE_INFINITY if unreachable)
+    public float[] integration = new float[0];
+    // by the snapshot's node index: the next node towards the goal (-1 for the goal itself and the unreachable ones)
+    public int[] next = new int[0];
+    // the amount of times the fields were computed and the time the last one took
+    public int computeCount = 0;
+    public long computeNanos = 0;
+
+    private final HGIndexHeap open = new HGIndexHeap();
+    private final Vector3 direction = new Vector3();
+
+    public HGFlowField(HGGraph graph, HGGraphNode goal) {
+        this.graph = graph;
+        this.goal = goal;
+    }
+
+    // recomputes the fields if the graph has changed since, false if the goal is not in the graph anymore
+    public boolean update() {
+        HGCsrGraph current = graph.getCsr();
+        if (csr != current) { compute(current); }
+        return contains(goal);
+    }
+
+    public boolean contains(HGGraphNode node) {
+        return csr != null && node != null && node.index >= 0 && node.index < csr.nodeCount && csr.nodes[node.index] == node;
+    }
+
+    public void compute(HGCsrGraph csr) {
+        long start = TimeUtils.nanoTime();
+        this.csr = csr;
+        if (integration.length < csr.nodeCount) {
+            integration = new float[csr.nodeCount];
+            next = new int[csr.nodeCount];
+        }
+        Arrays.fill(integration, 0, csr.nodeCount, Float.POSITIVE_INFINITY);
+        Arrays.fill(next, 0, csr.nodeCount, -1);
+
+        if (contains(goal)) {
+            open.clear();
+            integration[goal.index] = 0f;
+            open.push(goal.index, 0f);
+            while (open.size > 0) {
+                float cost = open.peekKey();
+                int node = open.pop();
+                if (cost > integration[node]) { continue; } // stale (see HGIndexHeap)
+                for (int e = csr.offsets[node]; e < csr.offsets[node + 1]; e++) {
+                    int target = csr.targets[e];
+                    float targetCost = cost + csr.costs[e];
+                    if (targetCost >= integration[target]) { continue; }
+                    integration[target] = targetCost;
+                    next[target] = node;
+                    open.push(target, targetCost);
+                }
+            }
+        }
+        computeCount++;
+        computeNanos = TimeUtils.nanoTime() - start;
+    }
+
+    public float getCost(HGGraphNode node) { return contains(node) ? integration[node.index] : Float.POSITIVE_INFINITY; }
+
+    // null if the node is the goal or the goal is not reachable from it
+    public HGGraphNode getNext(HGGraphNode node) {
+        if (!contains(node) || next[node.index] < 0) { return null; }
+        return csr.nodes[next[node.index]];
+    }
+
+    /**
+     * The direction (normalized, on XZ plane) from the position to the next node of the cell the position is in.
+     * Zero if the position is off the graph, the goal is not reachable or the goal's cell is reached.
+     * NOTE: the vector returned is reused by the next lookup.
+     */
+    @Override
+    public Vector3 lookup(Vector3 position) {
+        direction.setZero();
+        if (!update()) { return direction; }
+        HGGraphNode node = graph.getGraphNode(position);
+        HGGraphNode target = getNext(node);
+        if (target == null) { return direction; }
+        direction.set(target.coordinates).sub(position);
+        direction.y = 0f;
+        return direction.nor();
+    }
+}
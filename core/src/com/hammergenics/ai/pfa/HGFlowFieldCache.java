@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGFlowFieldCache {
+    // The flow fields by the goal node: all the agents heading to the same goal share the one field
+    // (see HGFlowField), so moving a group costs a single Dijkstra instead of a search per agent.
+    // The least recently requested field is dropped once there are more than capacity (the agents still
+    // holding it keep it working, it's just not shared with the new ones anymore).
+    public int capacity = 16;
+
+    public final HGGraph graph;
+    public final ObjectMap<HGGraphNode, HGFlowField> goal2field = new ObjectMap<>();
+    // the goals from the least to the most recently requested
+    private final Array<HGGraphNode> order = new Array<>(true, 16, HGGraphNode.class);
+
+    public HGFlowFieldCache(HGGraph graph) { this.graph = graph; }
+
+    // the field to the cell the (world) position is in, null if it's off the graph
+    public HGFlowField get(Vector3 position) { return get(graph.getGraphNode(position)); }
+
+    public HGFlowField get(HGGraphNode goal) {
+        if (goal == null) { return null; }
+        HGFlowField field = goal2field.get(goal);
+        if (field == null) {
+            field = new HGFlowField(graph, goal);
+            goal2field.put(goal, field);
+        } else {
+            order.removeValue(goal, true);
+        }
+        order.add(goal);
+        while (order.size > capacity) { goal2field.remove(order.removeIndex(0)); }
+        return field;
+    }
+
+    public void clear() {
+        goal2field.clear();
+        order.clear();
+    }
+
+    public int size() { return goal2field.size; }
+}
@@ -17,30 +17,71 @@
 package com.hammergenics.ai.pfa;
 
 import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.DefaultGraphPath;
 import com.badlogic.gdx.ai.pfa.GraphPath;
-import com.badlogic.gdx.ai.pfa.indexed.IndexedAStarPathFinder;
+import com.badlogic.gdx.ai.pfa.HierarchicalPathFinder;
 import com.badlogic.gdx.ai.pfa.indexed.IndexedHierarchicalGraph;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.hammergenics.map.TerrainChunkManager;
 
 /**
  * Add description here
  *
  * @author nrsharip
  */
-public class HGGraph extends IndexedHierarchicalGraph<HGGraphNode> {
+public class HGGraph extends IndexedHierarchicalGraph<HGGraphNode> implements HGIndexedAStarPathFinder.IndexedEdgeGraph<HGGraphNode> {
     public final Array<HGGraphNodesGrid> grids = new Array<>(true, 16, HGGraphNodesGrid.class);
-    public IndexedAStarPathFinder<HGGraphNode> indexedAstar;
+    public HGIndexedAStarPathFinder<HGGraphNode> indexedAstar;
     public float globalScale = 1f;
     public int lastIndex = 0;
+    public final IntArray freeIndices = new IntArray();
+    // see toKey
+    public final LongMap<HGGraphNodesGrid> key2grid = new LongMap<>();
+    private final HGGraphNodesGrid[] tmpAdjacent = new HGGraphNodesGrid[4];
+    // true: the searches go through the compact snapshot (see HGCsrGraph) rebuilt on demand after any change,
+    // false: through the nodes' connections (requires HGGraphNodesGrid.objectConnections)
+    public boolean csrBackend = true;
+    private HGCsrGraph csr = null;
+    private long structureModCount = 0;
 
-    public HGGraph() { this(1); }
-    public HGGraph(int levelCount) { super(levelCount); }
+    public static final int LEVEL_CELLS = 0;
+    public static final int LEVEL_CLUSTERS = 1;
+    // true: the searches between the grids go through the cluster level (see HGClusterLevel)
+    public boolean hierarchical = true;
+    public final HGClusterLevel clusterLevel = new HGClusterLevel(this);
+    public final HierarchicalPathFinder<HGGraphNode> hierarchicalPathFinder;
+    // true: the searches go through Jump Point Search (see HGJumpPointSearch) while the snapshot is flat (see
+    // HGCsrGraph.flat). JPS costs the moves by the octile distance over the cells (1 straight, sqrt(2) diagonal)
+    // with no heights, the other searches by the squared 3D distance (see HGGraphNodeConnection.getCost),
+    // so on the uneven terrain the searches fall back to the ones below.
+    public boolean jumpPointSearch = false;
+    public final HGJumpPointSearch jumpPointSearcher = new HGJumpPointSearch(this);
+    // the cells level connections during the hierarchical search (null: the nodes' connections)
+    private HGCsrGraph.Search levelSearch = null;
+    // the nodes expanded by the last hierarchical search: both levels, the temporary nodes' insertion included
+    public int expandedNodes = 0;
+    private final DefaultGraphPath<HGGraphNode> tmpNodePath = new DefaultGraphPath<>();
+
+    public HGGraph() { this(2); }
+    public HGGraph(int levelCount) {
+        super(levelCount);
+        indexedAstar = new HGIndexedAStarPathFinder<>(this);
+        // the node records grow in place, so a single finder serves both levels (see getNodeCount)
+        hierarchicalPathFinder = new HierarchicalPathFinder<>(this, new HGIndexedAStarPathFinder<>(this));
+    }
 
     // Interface HierarchicalGraph (IndexedHierarchicalGraph)
     @Override public int getLevelCount() { return super.getLevelCount(); }
     @Override public void setLevel(int level) { super.setLevel(level); }
-    @Override public HGGraphNode convertNodeBetweenLevels(int inputLevel, HGGraphNode node, int outputLevel) { return null; }
+    @Override
+    public HGGraphNode convertNodeBetweenLevels(int inputLevel, HGGraphNode node, int outputLevel) {
+        if (inputLevel == outputLevel) { return node; }
+        if (outputLevel == LEVEL_CLUSTERS) { return clusterLevel.toAbstract(node); }
+        return clusterLevel.toBase(node);
+    }
 
     // Interface IndexedGraph
     @Override public int getIndex(HGGraphNode node) { return node.index; }
@@ -54,92 +95,193 @@ public class HGGraph extends IndexedHierarchicalGraph<HGGraphNode> {
         //     int index = graph.getIndex(node);
         //     NodeRecord<N> nr = nodeRecords[index];
         
-        return lastIndex;
+        return level == LEVEL_CLUSTERS ? clusterLevel.getNodeCount() : lastIndex;
     }
 
     // Interface Graph
     @Override
-    public Array<Connection<HGGraphNode>> getConnections(HGGraphNode fromNode) { return fromNode.connections; }
+    public Array<Connection<HGGraphNode>> getConnections(HGGraphNode fromNode) {
+        expandedNodes++;
+        if (level == LEVEL_CLUSTERS) { return clusterLevel.getConnections(fromNode); }
+        return levelSearch != null ? levelSearch.getConnections(fromNode) : fromNode.connections;
+    }
+
+    // Interface HGIndexedAStarPathFinder.IndexedEdgeGraph: the cells level over the snapshot (see searchHierarchical)
+    @Override public boolean hasEdges() { return level == LEVEL_CELLS && levelSearch != null; }
+    @Override public int getEdgesFrom(int index) { expandedNodes++; return levelSearch.getEdgesFrom(index); }
+    @Override public int getEdgesTo(int index) { return levelSearch.getEdgesTo(index); }
+    @Override public int getEdgeTarget(int edge) { return levelSearch.getEdgeTarget(edge); }
+    @Override public float getEdgeCost(int edge) { return levelSearch.getEdgeCost(edge); }
+    @Override public HGGraphNode getNode(int index) { return levelSearch.getNode(index); }
+    @Override
+    public Connection<HGGraphNode> createConnection(HGGraphNode fromNode, HGGraphNode toNode) {
+        return new HGGraphNodeConnection(fromNode, toNode);
+    }
 
     public void addGraphNodesGrid(HGGraphNodesGrid newGrid) {
         if (newGrid == null) { return; }
 
-        for (HGGraphNodesGrid grid: grids) {
-            if (newGrid.x0 == grid.x0 && newGrid.z0 == grid.z0) {
-                // grids added cannot have the same origin
-                return;
-            }
-        }
+        long key = toKey(newGrid);
+        // grids added cannot have the same origin
+        if (key2grid.containsKey(key)) { return; }
         //Gdx.app.debug("graph", " add: " + " newGrid.x0: " + newGrid.x0 + " newGrid.z0: " + newGrid.z0);
-        for (HGGraphNodesGrid grid: grids) {
-            //Gdx.app.debug("graph", " connect: " + " grid.x0: " + grid.x0 + " grid.z0: " + grid.z0);
-
-            // simply go through all 4 sides and if the grids are adjacent - they get connected
-            grid.connectBottom(newGrid);
-            grid.connectRight(newGrid);
-            newGrid.connectBottom(grid);
-            newGrid.connectRight(grid);
+
+        if (HGGraphNodesGrid.objectConnections) {
+            // only 4 adjacent grids could get connected (connectBottom/connectRight check the adjacency themselves)
+            for (HGGraphNodesGrid grid: getAdjacent(newGrid, tmpAdjacent)) {
+                if (grid == null) { continue; }
+                grid.connectBottom(newGrid);
+                grid.connectRight(newGrid);
+                newGrid.connectBottom(grid);
+                newGrid.connectRight(grid);
+            }
         }
 
         applyIndices(newGrid.graphNodes);
 
         grids.add(newGrid);
+        key2grid.put(key, newGrid);
+        structureModCount++;
+        // NOTE: indexedAstar is kept as is: its node records grow in place (see HGIndexedAStarPathFinder)
+    }
+
+    public void removeGraphNodesGrid(HGGraphNodesGrid oldGrid) {
+        if (oldGrid == null || key2grid.get(toKey(oldGrid)) != oldGrid) { return; }
+
+        grids.removeValue(oldGrid, true);
+        key2grid.remove(toKey(oldGrid));
+
+        for (HGGraphNodesGrid grid: getAdjacent(oldGrid, tmpAdjacent)) {
+            if (grid != null) { grid.disconnect(oldGrid); }
+        }
+
+        // the indices are recycled by the grids added later
+        for (HGGraphNode node: oldGrid.graphNodes) {
+            if (node.index < 0) { continue; }
+            freeIndices.add(node.index);
+            node.index = -1;
+        }
+
+        // keeping the version (see getCsr) increasing
+        structureModCount += oldGrid.nodesModCount + 1;
+    }
+
+    // the grids are expected to be of the same size: the grid's position in "chunks" of its own size
+    public static long toKey(HGGraphNodesGrid grid) {
+        return toKey(Math.floorDiv(grid.x0, grid.getWidth(true)), Math.floorDiv(grid.z0, grid.getHeight(true)));
+    }
+
+    public static long toKey(int cx, int cz) { return TerrainChunkManager.toKey(cx, cz); }
+
+    // top (-z), bottom (+z), left (-x), right (+x) neighbours of the grid (null if none)
+    public HGGraphNodesGrid[] getAdjacent(HGGraphNodesGrid grid, HGGraphNodesGrid[] out) {
+        int cx = Math.floorDiv(grid.x0, grid.getWidth(true));
+        int cz = Math.floorDiv(grid.z0, grid.getHeight(true));
+        out[0] = key2grid.get(toKey(cx, cz - 1));
+        out[1] = key2grid.get(toKey(cx, cz + 1));
+        out[2] = key2grid.get(toKey(cx - 1, cz));
+        out[3] = key2grid.get(toKey(cx + 1, cz));
+        return out;
+    }
+
+    // the snapshot of the current state: rebuilt if any grid was added/removed or any node's coordinates changed since
+    public HGCsrGraph getCsr() {
+        long version = structureModCount;
+        for (HGGraphNodesGrid grid: grids) { version += grid.nodesModCount; }
+        if (csr == null || csr.version != version) { csr = HGCsrGraph.build(this, version); }
+        return csr;
+    }
 
-        // indexedAstar should be initialized each time the graph structure is changed, since
-        // it has a fixed array of node records (see IndexedAStarPathFinder.NodeRecord<N>[] nodeRecords)
-        // which is set only in the constructor
-        indexedAstar = new IndexedAStarPathFinder<>(this);
+    public HGGraphNodesGrid getGraphNodesGrid(int x0, int z0) {
+        if (grids.size == 0) { return null; }
+        HGGraphNodesGrid any = grids.first();
+        HGGraphNodesGrid grid = key2grid.get(toKey(Math.floorDiv(x0, any.getWidth(true)), Math.floorDiv(z0, any.getHeight(true))));
+        return grid != null && grid.x0 == x0 && grid.z0 == z0 ? grid : null;
     }
 
+    // the node of the cell (x, z) in the grids' space (see HGGraphNodesGrid.getCellX/getCellZ), null if there's none
+    public HGGraphNode getGraphNodeAt(int x, int z) {
+        if (grids.size == 0) { return null; }
+        HGGraphNodesGrid any = grids.first();
+        int width = any.getWidth(true);
+        int height = any.getHeight(true);
+        // the grids' origins are not necessarily aligned to their size, but all are shifted the same (see toKey)
+        int cx = Math.floorDiv(x - Math.floorMod(any.x0, width), width);
+        int cz = Math.floorDiv(z - Math.floorMod(any.z0, height), height);
+        HGGraphNodesGrid grid = key2grid.get(toKey(cx, cz));
+        if (grid == null) { return null; }
+        int lx = x - grid.x0, lz = z - grid.z0;
+        if (lx < 0 || lz < 0 || lx >= grid.getWidth(true) || lz >= grid.getHeight(true)) { return null; }
+        return grid.graphNodes.items[grid.getGraphNodeIndex(lx, lz)];
+    }
+
+    // the free indices (of the grids removed) first, so the node count (and the node records) stays bounded
     public void applyIndices(Array<HGGraphNode> graphNodes) {
         if (graphNodes == null) { return; }
 
-        for(HGGraphNode graphNode: graphNodes) { graphNode.index = lastIndex++; }
+        for(HGGraphNode graphNode: graphNodes) {
+            graphNode.index = freeIndices.size > 0 ? freeIndices.pop() : lastIndex++;
+        }
     }
 
     public boolean searchConnectionPath(Vector3 start, Vector3 end, GraphPath<Connection<HGGraphNode>> outPath) {
         if (start == null || end == null) { return false; }
-        HGGraphNode startNode = null, endNode = null;
-        //Gdx.app.debug("graph", "search: "
-        //        + " start: " + start
-        //        + " end: " + end
-        //);
-        for (HGGraphNodesGrid grid: grids) {
-            float startX = (start.x / globalScale) - grid.getX0();
-            float startZ = (start.z / globalScale) - grid.getZ0();
-            float endX = (end.x / globalScale) - grid.getX0();
-            float endZ = (end.z / globalScale) - grid.getZ0();
-
-            boolean startXBelongsToGrid = startX >= 0 && startX < grid.getWidth(true);
-            boolean startZBelongsToGrid = startZ >= 0 && startZ < grid.getHeight(true);
-            boolean endXBelongsToGrid = endX >= 0 && endX < grid.getWidth(true);
-            boolean endZBelongsToGrid = endZ >= 0 && endZ < grid.getHeight(true);
-
-            //Gdx.app.debug("graph", "search: "
-            //        + " globalScale: " + globalScale
-            //        + " x0: " + grid.getX0()
-            //        + " z0: " + grid.getZ0()
-            //        + " startX: " + startX
-            //        + " startZ: " + startZ
-            //        + " endX: " + endX
-            //        + " endZ: " + endZ
-            //);
-
-            if (startNode == null && startXBelongsToGrid && startZBelongsToGrid) {
-                startNode = grid.getGraphNode(Math.floor(startX), Math.floor(startZ));
-            }
-            if (endNode == null && endXBelongsToGrid && endZBelongsToGrid) {
-                endNode = grid.getGraphNode(Math.floor(endX), Math.floor(endZ));
-            }
-
-            if (startNode != null && endNode != null) { break; }
-        }
+        HGGraphNode startNode = getGraphNode(start);
+        HGGraphNode endNode = getGraphNode(end);
         if (startNode == null || endNode == null) { return false; }
 
-        return indexedAstar.searchConnectionPath(startNode, endNode, HGGraphNode.heuristic, outPath);
+        return searchConnectionPath(startNode, endNode, outPath);
+    }
+
+    // the node of the cell the (world) position is in, null if it's off the grids
+    public HGGraphNode getGraphNode(Vector3 position) {
+        if (position == null || grids.size == 0) { return null; }
+        HGGraphNodesGrid any = grids.first();
+        // world cells are centered (see HGGrid.getX0), the grids' space is not
+        int x = (int) Math.floor(position.x / globalScale) + any.x0 - any.getX0();
+        int z = (int) Math.floor(position.z / globalScale) + any.z0 - any.getZ0();
+        return getGraphNodeAt(x, z);
     }
 
     public boolean searchConnectionPath(HGGraphNode startNode, HGGraphNode endNode, GraphPath<Connection<HGGraphNode>> outPath) {
+        if (startNode == null || endNode == null || startNode.index < 0 || endNode.index < 0) { return false; }
+        if (jumpPointSearch && getCsr().flat) { return jumpPointSearcher.searchConnectionPath(startNode, endNode, outPath); }
+        if (hierarchical && startNode.grid != endNode.grid) { return searchHierarchical(startNode, endNode, outPath); }
+        if (csrBackend) { return getCsr().search.searchConnectionPath(startNode, endNode, outPath); }
         return indexedAstar.searchConnectionPath(startNode, endNode, HGGraphNode.heuristic, outPath);
     }
+
+    // true: searchConnectionPath goes through A* over the snapshot, which could be continued across the frames
+    // (see HGPathScheduler), false: through JPS or the cluster level, which run to the end once started
+    public boolean isSliced(HGGraphNode startNode, HGGraphNode endNode) {
+        if (jumpPointSearch && getCsr().flat) { return false; }
+        return !hierarchical || startNode.grid == endNode.grid;
+    }
+
+    // HierarchicalPathFinder plans the route over the clusters level and refines its first leg only (down to
+    // the next entrance), so the legs are searched one after another till the end node is reached.
+    public boolean searchHierarchical(HGGraphNode startNode, HGGraphNode endNode, GraphPath<Connection<HGGraphNode>> outPath) {
+        clusterLevel.update();
+        expandedNodes = 0;
+        levelSearch = csrBackend ? getCsr().search : null;
+        HGGraphNode current = startNode;
+        boolean found = true;
+        // every leg ends at an entrance (or the end node): more legs than entrances means there's no progress
+        for (int legs = 0; current != endNode && found; legs++) {
+            if (legs > clusterLevel.getNodeCount()) { found = false; break; }
+            tmpNodePath.clear();
+            clusterLevel.pin(current, endNode);
+            found = hierarchicalPathFinder.searchNodePath(current, endNode, HGGraphNode.heuristic, tmpNodePath)
+                    && tmpNodePath.getCount() > 1;
+            for (int i = 1; found && i < tmpNodePath.getCount(); i++) {
+                outPath.add(new HGGraphNodeConnection(tmpNodePath.get(i - 1), tmpNodePath.get(i)));
+            }
+            if (found) { current = tmpNodePath.get(tmpNodePath.getCount() - 1); }
+        }
+        setLevel(LEVEL_CELLS);
+        clusterLevel.pin(null, null);
+        levelSearch = null;
+        tmpNodePath.clear();
+        return found;
+    }
 }
@@ -30,6 +30,10 @@ public class HGGraphNode {
     public static Heuristic<HGGraphNode> heuristic = (node, endNode) -> node.coordinates.dst2(endNode.coordinates);
 
     public int index = -1;
+    // the grid the node belongs to (if any), see HGGraphNodesGrid.contains
+    public HGGraphNodesGrid grid = null;
+    // the node's position within the grid (see HGGraphNodesGrid.getGraphNodeIndex)
+    public int cell = -1;
     public Vector3 coordinates = new Vector3();
     public Array<Connection<HGGraphNode>> connections = new Array<>(true, 16, Connection.class);
 
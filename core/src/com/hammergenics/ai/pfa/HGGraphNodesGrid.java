@@ -36,6 +36,11 @@ public class HGGraphNodesGrid extends HGGrid {
     // https://libgdx.badlogicgames.com/ci/gdx-ai/docs/com/badlogic/gdx/ai/pfa/GraphPath.html
     // https://libgdx.badlogicgames.com/ci/gdx-ai/docs/com/badlogic/gdx/ai/pfa/DefaultGraphPath.html
     public final Array<HGGraphNode> graphNodes = new Array<>(true, 16, HGGraphNode.class);
+    // false: no HGGraphNodeConnection objects are created (about 8 per cell), the graph is searched
+    // through its compact snapshot only (see HGCsrGraph, HGGraph.csrBackend)
+    public static boolean objectConnections = true;
+    // incremented each time the nodes' coordinates change (see HGGraph.getCsr)
+    public int nodesModCount = 0;
 
     public HGGraphNodesGrid(int size, int x0, int z0) {
         super(size, x0, z0);
@@ -45,11 +50,14 @@ public class HGGraphNodesGrid extends HGGrid {
 
         for (int z = 0; z < height; z++) {
             for (int x = 0; x < width; x++) {
-                graphNodes.add(new HGGraphNode(0, new Vector3()));
+                HGGraphNode node = new HGGraphNode(0, new Vector3());
+                node.grid = this;
+                node.cell = graphNodes.size;
+                graphNodes.add(node);
             }
         }
         recalculate();
-        connectWithin();
+        if (objectConnections) { connectWithin(); }
     }
 
     @Override
@@ -58,26 +66,69 @@ public class HGGraphNodesGrid extends HGGrid {
         Arrays.stream(graphNodes.toArray())
                 .map(HGGraphNode::getCoordinates)
                 .forEach(coordinates -> coordinates.y = 0);
+        nodesModCount++;
     }
 
-    public void recalculate() {
-        int width = getWidth(true);
-        int height = getHeight(true);
+    public void recalculate() { recalculate(0, 0, getWidth(true) - 1, getHeight(true) - 1); }
+
+    // recalculates the nodes of the cells (local cell coordinates, inclusive) only, see TerrainChunk.updateDirtyRegion
+    public void recalculate(int cellX0, int cellZ0, int cellX1, int cellZ1) {
+        float[] values = getArray();
+        int x0 = getX0();
+        int z0 = getZ0();
         HGGraphNode node;
-        for (int z = 0; z < height; z++) {
-            for (int x = 0; x < width; x++) {
-                double[] values = new double[]{
-                        get(x    , z    ),
-                        get(x    , z + 1),
-                        get(x + 1, z    ),
-                        get(x + 1, z + 1)
-                };
-                node = getGraphNode(x, z);
-                node.getCoordinates().x = x + 0.5f + getX0();
-                node.getCoordinates().y = (float) Arrays.stream(values).average().orElse(0f);
-                node.getCoordinates().z = z + 0.5f + getZ0();
+        nodesModCount++;
+        for (int z = cellZ0; z <= cellZ1; z++) {
+            int row0 = rowOffset(z);
+            int row1 = rowOffset(z + 1);
+            int nodeRow = getGraphNodeIndex(0, z);
+            for (int x = cellX0; x <= cellX1; x++) {
+                // average of the 4 vertices of the cell
+                double sum = (double) values[row0 + x] + values[row1 + x] + values[row0 + x + 1] + values[row1 + x + 1];
+                node = graphNodes.items[nodeRow + x];
+                node.coordinates.x = x + 0.5f + x0;
+                node.coordinates.y = (float) (sum / 4d);
+                node.coordinates.z = z + 0.5f + z0;
+            }
+        }
+    }
+
+    /**
+     * The nodes' coordinates (x, y, z per node) as recalculate() followed by the mid/scale adjustment of
+     * HGEngine.finishResetChunk make them, out of the heights given (row-major, see rowOffset).
+     * Touches neither the grid nor the nodes, so it could be run on the workers (see TerrainMeshBuilder).
+     *
+     * @param width the amount of vertices per row (the cells are width - 1 by height - 1)
+     * @param x0 the grid's origin adjusted to the MAP_CENTER (see getX0)
+     */
+    public static float[] coordinates(float[] values, int width, int height, int x0, int z0,
+                                      float mid, float yScale, float scale) {
+        int cellsWidth = width - 1;
+        float[] out = new float[cellsWidth * (height - 1) * 3];
+        float yScl = yScale * scale;
+        int i = 0;
+        for (int z = 0; z < height - 1; z++) {
+            int row0 = z * width;
+            int row1 = row0 + width;
+            for (int x = 0; x < cellsWidth; x++) {
+                double sum = (double) values[row0 + x] + values[row1 + x] + values[row0 + x + 1] + values[row1 + x + 1];
+                out[i++] = (x + 0.5f + x0) * scale;
+                out[i++] = ((float) (sum / 4d) - mid) * yScl;
+                out[i++] = (z + 0.5f + z0) * scale;
             }
         }
+        return out;
+    }
+
+    // sets the coordinates calculated by coordinates(...), false if they don't match the nodes (left as is then)
+    public boolean setCoordinates(float[] coordinates) {
+        if (coordinates == null || coordinates.length != graphNodes.size * 3) { return false; }
+        HGGraphNode[] nodes = graphNodes.items;
+        for (int n = 0, i = 0; n < graphNodes.size; n++, i += 3) {
+            nodes[n].coordinates.set(coordinates[i], coordinates[i + 1], coordinates[i + 2]);
+        }
+        nodesModCount++;
+        return true;
     }
 
     public HGGraphNode getGraphNode(double x, double z) { return getGraphNode((int)Math.round(x), (int)Math.round(z)); }
@@ -88,6 +139,9 @@ public class HGGraphNodesGrid extends HGGrid {
         return graphNodes.get(index);
     }
     public int getGraphNodeIndex(int x, int z) { return z * getWidth(true) + x; }
+    // the node's cell coordinates in the graph's space (the same as the grid's origin: x0, z0)
+    public int getCellX(HGGraphNode node) { return x0 + node.cell % getWidth(true); }
+    public int getCellZ(HGGraphNode node) { return z0 + node.cell / getWidth(true); }
 
     public void connectNode(HGGraphNode node, Array<HGGraphNode> others) {
         if (node == null || others == null || others.size == 0) { return; }
@@ -196,6 +250,24 @@ public class HGGraphNodesGrid extends HGGrid {
         }
     }
 
+    // removes the connections (made by connectBottom/connectRight) leading from this grid to the other one
+    public void disconnect(HGGraphNodesGrid other) {
+        if (other == null || other == this) { return; }
+        boolean adjacent = (x0 == other.x0 && (z0 + getHeight(true) == other.z0 || other.z0 + other.getHeight(true) == z0))
+                || (z0 == other.z0 && (x0 + getWidth(true) == other.x0 || other.x0 + other.getWidth(true) == x0));
+        if (!adjacent) { return; }
+
+        for (HGGraphNode node: graphNodes) {
+            Array<Connection<HGGraphNode>> connections = node.connections;
+            for (int i = connections.size - 1; i >= 0; i--) {
+                if (other.contains(connections.get(i).getToNode())) { connections.removeIndex(i); }
+            }
+        }
+    }
+
+    // NOTE: the indices of the grid's nodes are not necessarily contiguous (see HGGraph.applyIndices)
+    public boolean contains(HGGraphNode node) { return node != null && node.grid == this; }
+
 
     public void addGraphNodesToRenderer(HGImmediateModeRenderer20 imr, Color clr, float scl) {
         for (HGGraphNode graphNode: graphNodes) {
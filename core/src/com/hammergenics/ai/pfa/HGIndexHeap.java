@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import java.util.Arrays;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGIndexHeap {
+    // see: https://en.wikipedia.org/wiki/Binary_heap
+    // The min-heap of the node indices by the float keys with no per entry allocations. There's no decrease-key:
+    // the index is pushed again with the smaller key and the stale entries are skipped by the caller on pop
+    // (the popped key is greater than the one known for the index by then).
+    private int[] nodes = new int[256];
+    private float[] keys = new float[256];
+    public int size = 0;
+
+    public void clear() { size = 0; }
+
+    public float peekKey() { return keys[0]; }
+
+    public void push(int node, float key) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (keys[parent] <= key) { break; }
+            nodes[i] = nodes[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+
+    public int pop() {
+        int top = nodes[0];
+        int node = nodes[--size];
+        float key = keys[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) { break; }
+            if (child + 1 < size && keys[child + 1] < keys[child]) { child++; }
+            if (key <= keys[child]) { break; }
+            nodes[i] = nodes[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+        return top;
+    }
+}
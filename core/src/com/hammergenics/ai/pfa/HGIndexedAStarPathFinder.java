@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.PathFinderQueue;
+import com.badlogic.gdx.ai.pfa.PathFinderRequest;
+import com.badlogic.gdx.ai.pfa.indexed.IndexedGraph;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BinaryHeap;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.Arrays;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGIndexedAStarPathFinder<N> implements PathFinder<N> {
+    // see: https://github.com/libgdx/gdx-ai/blob/master/gdx-ai/src/com/badlogic/gdx/ai/pfa/indexed/IndexedAStarPathFinder.java
+    // Same algorithm as IndexedAStarPathFinder except the node records: the array is sized once in its
+    // constructor there (so the finder should be re-created each time the graph grows), here it grows
+    // in place as the graph's node count does. The indices might be recycled (see HGGraph.applyIndices),
+    // so the record's node is re-assigned each time the record is (re)visited by a new search.
+    // The records keep the parent's index, so the graphs with the edges addressed by the indices (see IndexedEdgeGraph)
+    // are searched with no Connection objects at all: the ones of the path are created once it's found.
+    private static final int UNVISITED = 0;
+    private static final int OPEN = 1;
+    private static final int CLOSED = 2;
+
+    public final IndexedGraph<N> graph;
+    // null if the graph has the Connection objects only
+    public final IndexedEdgeGraph<N> edgeGraph;
+    public Metrics metrics;
+
+    protected NodeRecord<N>[] nodeRecords;
+    protected final BinaryHeap<NodeRecord<N>> openList = new BinaryHeap<>();
+    protected NodeRecord<N> current;
+    private int searchId;
+    private int endIndex;
+
+    public HGIndexedAStarPathFinder(IndexedGraph<N> graph) { this(graph, false); }
+
+    @SuppressWarnings("unchecked")
+    public HGIndexedAStarPathFinder(IndexedGraph<N> graph, boolean calculateMetrics) {
+        this.graph = graph;
+        this.edgeGraph = graph instanceof IndexedEdgeGraph ? (IndexedEdgeGraph<N>) graph : null;
+        this.nodeRecords = (NodeRecord<N>[]) new NodeRecord[Math.max(16, graph.getNodeCount())];
+        if (calculateMetrics) { this.metrics = new Metrics(); }
+    }
+
+    @Override
+    public boolean searchConnectionPath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<Connection<N>> outPath) {
+        boolean found = search(startNode, endNode, heuristic);
+        if (found) { generateConnectionPath(startNode, outPath); }
+        return found;
+    }
+
+    @Override
+    public boolean searchNodePath(N startNode, N endNode, Heuristic<N> heuristic, GraphPath<N> outPath) {
+        boolean found = search(startNode, endNode, heuristic);
+        if (found) { generateNodePath(startNode, outPath); }
+        return found;
+    }
+
+    // see IndexedAStarPathFinder.search(PathFinderRequest, long): the search is continued across the calls
+    @Override
+    public boolean search(PathFinderRequest<N> request, long timeToRun) {
+        long lastTime = TimeUtils.nanoTime();
+
+        if (request.statusChanged) {
+            initSearch(request.startNode, request.endNode, request.heuristic);
+            request.statusChanged = false;
+        }
+
+        do {
+            long currentTime = TimeUtils.nanoTime();
+            timeToRun -= currentTime - lastTime;
+            if (timeToRun <= PathFinderQueue.TIME_TOLERANCE) { return false; }
+
+            current = openList.pop();
+            current.category = CLOSED;
+
+            if (current.node == request.endNode) {
+                request.pathFound = true;
+                generateNodePath(request.startNode, request.resultPath);
+                return true;
+            }
+
+            visitChildren(request.endNode, request.heuristic);
+            lastTime = currentTime;
+        } while (openList.size > 0);
+
+        request.pathFound = false;
+        return true;
+    }
+
+    // the search by the indices (see IndexedEdgeGraph, IndexedHeuristic): the nodes' indices are not read (the nodes
+    // are the handles only), so the snapshots are searched while the nodes change (see HGPathService)
+    public boolean searchConnectionPath(int startIndex, int endIndex, IndexedHeuristic<N> heuristic, GraphPath<Connection<N>> outPath) {
+        N startNode = edgeGraph.getNode(startIndex);
+        boolean found = search(startNode, startIndex, edgeGraph.getNode(endIndex), endIndex, heuristic);
+        if (found) { generateConnectionPath(startNode, outPath); }
+        return found;
+    }
+
+    protected boolean search(N startNode, N endNode, Heuristic<N> heuristic) {
+        return search(startNode, graph.getIndex(startNode), endNode, graph.getIndex(endNode), heuristic);
+    }
+
+    protected boolean search(N startNode, int startIndex, N endNode, int endIndex, Heuristic<N> heuristic) {
+        initSearch(startNode, startIndex, endNode, endIndex, heuristic);
+
+        do {
+            current = openList.pop();
+            current.category = CLOSED;
+
+            if (current.node == endNode) { return true; }
+
+            visitChildren(endNode, heuristic);
+        } while (openList.size > 0);
+
+        return false;
+    }
+
+    protected void initSearch(N startNode, N endNode, Heuristic<N> heuristic) {
+        initSearch(startNode, graph.getIndex(startNode), endNode, graph.getIndex(endNode), heuristic);
+    }
+
+    protected void initSearch(N startNode, int startIndex, N endNode, int endIndex, Heuristic<N> heuristic) {
+        if (metrics != null) { metrics.reset(); }
+
+        // the search id is what makes the records of the previous searches "unvisited"
+        if (++searchId < 0) { searchId = 1; }
+        ensureCapacity(graph.getNodeCount());
+
+        openList.clear();
+
+        this.endIndex = endIndex;
+        NodeRecord<N> startRecord = getNodeRecord(startNode, startIndex);
+        startRecord.connection = null;
+        startRecord.parent = -1;
+        startRecord.costSoFar = 0;
+        addToOpenList(startRecord, estimate(startIndex, startNode, endNode, heuristic));
+
+        current = null;
+    }
+
+    protected void visitChildren(N endNode, Heuristic<N> heuristic) {
+        if (metrics != null) { metrics.expandedNodes++; }
+        if (edgeGraph != null && edgeGraph.hasEdges()) {
+            for (int e = edgeGraph.getEdgesFrom(current.index), to = edgeGraph.getEdgesTo(current.index); e < to; e++) {
+                int target = edgeGraph.getEdgeTarget(e);
+                visitChild(target, edgeGraph.getNode(target), null, edgeGraph.getEdgeCost(e), endNode, heuristic);
+            }
+            return;
+        }
+
+        Array<Connection<N>> connections = graph.getConnections(current.node);
+        for (int i = 0; i < connections.size; i++) {
+            Connection<N> connection = connections.get(i);
+            N node = connection.getToNode();
+            visitChild(graph.getIndex(node), node, connection, connection.getCost(), endNode, heuristic);
+        }
+    }
+
+    // connection: null if the edges are addressed by the indices (see IndexedEdgeGraph)
+    protected void visitChild(int index, N node, Connection<N> connection, float cost, N endNode, Heuristic<N> heuristic) {
+        if (metrics != null) { metrics.visitedNodes++; }
+
+        float nodeCost = current.costSoFar + cost;
+
+        float nodeHeuristic;
+        NodeRecord<N> nodeRecord = getNodeRecord(node, index);
+        if (nodeRecord.category == CLOSED) {
+            // a shorter route is possible with the inadmissible heuristics only
+            if (nodeRecord.costSoFar <= nodeCost) { return; }
+            nodeHeuristic = nodeRecord.getEstimatedTotalCost() - nodeRecord.costSoFar;
+        } else if (nodeRecord.category == OPEN) {
+            if (nodeRecord.costSoFar <= nodeCost) { return; }
+            openList.remove(nodeRecord);
+            nodeHeuristic = nodeRecord.getEstimatedTotalCost() - nodeRecord.costSoFar;
+        } else {
+            nodeHeuristic = estimate(index, node, endNode, heuristic);
+        }
+
+        nodeRecord.costSoFar = nodeCost;
+        nodeRecord.connection = connection;
+        nodeRecord.parent = current.index;
+        addToOpenList(nodeRecord, nodeCost + nodeHeuristic);
+    }
+
+    protected float estimate(int index, N node, N endNode, Heuristic<N> heuristic) {
+        if (heuristic instanceof IndexedHeuristic) { return ((IndexedHeuristic<N>) heuristic).estimate(index, endIndex); }
+        return heuristic.estimate(node, endNode);
+    }
+
+    protected void generateConnectionPath(N startNode, GraphPath<Connection<N>> outPath) {
+        while (current.parent >= 0) {
+            NodeRecord<N> parent = nodeRecords[current.parent];
+            outPath.add(current.connection != null ? current.connection : edgeGraph.createConnection(parent.node, current.node));
+            current = parent;
+        }
+        outPath.reverse();
+    }
+
+    protected void generateNodePath(N startNode, GraphPath<N> outPath) {
+        while (current.parent >= 0) {
+            outPath.add(current.node);
+            current = nodeRecords[current.parent];
+        }
+        outPath.add(startNode);
+        outPath.reverse();
+    }
+
+    protected void addToOpenList(NodeRecord<N> nodeRecord, float estimatedTotalCost) {
+        openList.add(nodeRecord, estimatedTotalCost);
+        nodeRecord.category = OPEN;
+        if (metrics != null) {
+            metrics.openListAdditions++;
+            metrics.openListPeak = Math.max(metrics.openListPeak, openList.size);
+        }
+    }
+
+    protected NodeRecord<N> getNodeRecord(N node) { return getNodeRecord(node, graph.getIndex(node)); }
+    protected NodeRecord<N> getNodeRecord(N node, int index) {
+        if (index >= nodeRecords.length) { ensureCapacity(index + 1); }
+        NodeRecord<N> nr = nodeRecords[index];
+        if (nr == null) { nr = nodeRecords[index] = new NodeRecord<>(); nr.searchId = searchId - 1; }
+        if (nr.searchId != searchId) {
+            nr.node = node;
+            nr.index = index;
+            nr.connection = null;
+            nr.parent = -1;
+            nr.category = UNVISITED;
+            nr.searchId = searchId;
+        }
+        return nr;
+    }
+
+    // grows by half at least, the records already allocated are kept
+    public void ensureCapacity(int nodeCount) {
+        if (nodeCount <= nodeRecords.length) { return; }
+        nodeRecords = Arrays.copyOf(nodeRecords, Math.max(nodeCount, nodeRecords.length + (nodeRecords.length >> 1)));
+    }
+
+    public int getCapacity() { return nodeRecords.length; }
+
+    protected static class NodeRecord<N> extends BinaryHeap.Node {
+        N node;
+        int index;
+        // null if the edges are addressed by the indices (see IndexedEdgeGraph)
+        Connection<N> connection;
+        // the index of the record the node was reached from, -1 for the start node
+        int parent;
+        float costSoFar;
+        int category;
+        int searchId;
+
+        public NodeRecord() { super(0); }
+
+        public float getEstimatedTotalCost() { return getValue(); }
+    }
+
+    /**
+     * The graph with the edges of the node i in [getEdgesFrom(i), getEdgesTo(i)) (see HGCsrGraph), so
+     * the search goes over the indices only. hasEdges: false - getConnections is used (e.g. the other levels).
+     */
+    public interface IndexedEdgeGraph<N> extends IndexedGraph<N> {
+        boolean hasEdges();
+        int getEdgesFrom(int index);
+        int getEdgesTo(int index);
+        int getEdgeTarget(int edge);
+        float getEdgeCost(int edge);
+        N getNode(int index);
+        // the connection of the path found (the only ones created)
+        Connection<N> createConnection(N fromNode, N toNode);
+    }
+
+    /**
+     * The heuristic over the nodes' indices (see IndexedGraph.getIndex), preferred by the finder to the one over the nodes.
+     */
+    public interface IndexedHeuristic<N> extends Heuristic<N> {
+        float estimate(int index, int endIndex);
+    }
+
+    public static class Metrics {
+        // the nodes the edges (connections) were visited of
+        public int expandedNodes;
+        public int visitedNodes;
+        public int openListAdditions;
+        public int openListPeak;
+
+        public void reset() {
+            expandedNodes = 0;
+            visitedNodes = 0;
+            openListAdditions = 0;
+            openListPeak = 0;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGJumpPointSearch {
+    // see: https://harablog.wordpress.com/2011/09/07/jump-point-search/
+    // see: https://users.cecs.anu.edu.au/~dharabor/data/papers/harabor-grastien-aaai11.pdf
+    // Jump Point Search over the cells of HGGraph's grids (as a single grid, see HGGraph.getGraphNodeAt) with
+    // the octile distance as the cost. The cell with no node (the map's border, a grid missing) is blocked,
+    // the moves are pruned with the forced neighbours test (the corners cutting allowed, the same as the edges of
+    // HGCsrGraph). The only edges missing between the cells present are the diagonals across the grids' corners
+    // (see HGCsrGraph.neighbours): the cells next to the grids' corners are the jump points expanded fully.
+    // The straight scans are precomputed per snapshot (see JPS+: the distance to the next jump point or the wall
+    // in each of the 4 directions), so only the diagonal scans go cell by cell.
+    // see: https://www.gameaipro.com/GameAIPro2/GameAIPro2_Chapter14_JPS_Plus_An_Extreme_A_Star_Speed_Optimization_for_Static_Uniform_Cost_Grids.pdf
+    private static final float SQRT2 = 1.4142135f;
+
+    public final HGGraph graph;
+    // the amount of the jump points expanded by the last search
+    public int expandedNodes = 0;
+    // the amount of the cells looked up by the last search (the scans, the forced neighbours tests and
+    // the straight jumps precomputed, if the snapshot changed since the previous search)
+    public int scannedCells = 0;
+
+    private HGCsrGraph csr;
+    private HGGraphNode end;
+    private int endX, endZ;
+    // the grids' size and the origin of the grids' layout (all are shifted the same, see HGGraph.toKey)
+    private int width, height, originX, originZ;
+    // the grid of the last cell looked up: the scans mostly stay within the same grid
+    private HGGraphNodesGrid lastGrid;
+    // per node and direction (+x, -x, +z, -z): d > 0 - the jump point is d cells away,
+    // d <= 0 - no jump point, -d cells could be passed before the wall (see straight)
+    private int[] straight = new int[0];
+    private HGCsrGraph straightCsr;
+    private final IntArray tmpCells = new IntArray();
+    private float[] costs = new float[0];
+    private int[] parents = new int[0];
+    private int[] stamps = new int[0];
+    private int[] closed = new int[0];
+    private int stamp = 0;
+    private final HGIndexHeap heap = new HGIndexHeap();
+    private final IntArray jumpPoints = new IntArray();
+
+    public HGJumpPointSearch(HGGraph graph) { this.graph = graph; }
+
+    public boolean searchConnectionPath(HGGraphNode startNode, HGGraphNode endNode, GraphPath<Connection<HGGraphNode>> outPath) {
+        csr = graph.getCsr();
+        expandedNodes = 0;
+        scannedCells = 0;
+        if (!csr.search.contains(startNode) || !csr.search.contains(endNode)) { return false; }
+        if (startNode == endNode) { return true; }
+        init(startNode.grid);
+
+        end = endNode;
+        endX = x(endNode);
+        endZ = z(endNode);
+
+        visit(startNode.index, -1, 0f);
+        heap.push(startNode.index, octile(x(startNode), z(startNode), endX, endZ));
+        while (heap.size > 0) {
+            int index = heap.pop();
+            if (closed[index] == stamp) { continue; } // stale
+            closed[index] = stamp;
+            if (index == endNode.index) { generatePath(index, outPath); return true; }
+            expandedNodes++;
+            expand(csr.nodes[index]);
+        }
+        return false;
+    }
+
+    private void init(HGGraphNodesGrid grid) {
+        if (costs.length < csr.nodeCount) {
+            costs = new float[csr.nodeCount];
+            parents = new int[csr.nodeCount];
+            stamps = new int[csr.nodeCount];
+            closed = new int[csr.nodeCount];
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) { Arrays.fill(stamps, 0); Arrays.fill(closed, 0); stamp = 1; }
+        heap.clear();
+        width = grid.getWidth(true);
+        height = grid.getHeight(true);
+        originX = Math.floorMod(grid.x0, width);
+        originZ = Math.floorMod(grid.z0, height);
+        lastGrid = grid;
+        if (straightCsr != csr) { precompute(); straightCsr = csr; }
+    }
+
+    private void precompute() {
+        if (straight.length < csr.nodeCount * 4) { straight = new int[csr.nodeCount * 4]; }
+        Arrays.fill(straight, 0, csr.nodeCount * 4, Integer.MIN_VALUE);
+        for (int dir = 0; dir < 4; dir++) {
+            int dx = dir == 0 ? 1 : dir == 1 ? -1 : 0;
+            int dz = dir == 2 ? 1 : dir == 3 ? -1 : 0;
+            for (int i = 0; i < csr.nodeCount; i++) {
+                HGGraphNode node = csr.nodes[i];
+                if (node == null || straight[i * 4 + dir] != Integer.MIN_VALUE) { continue; }
+                // going forward up to the cell already known (or the end of the line), then filling in backwards
+                tmpCells.clear();
+                int x = x(node), z = z(node), d = 0;
+                while (true) {
+                    tmpCells.add(node.index);
+                    HGGraphNode next = cell(x + dx, z + dz);
+                    if (next == null) { d = 0; break; }
+                    x += dx;
+                    z += dz;
+                    if (forced(x, z, dx, dz)) { d = 1; break; }
+                    int known = straight[next.index * 4 + dir];
+                    if (known != Integer.MIN_VALUE) { d = known > 0 ? known + 1 : known - 1; break; }
+                    node = next;
+                }
+                for (int k = tmpCells.size - 1; k >= 0; k--) {
+                    straight[tmpCells.get(k) * 4 + dir] = d;
+                    d = d > 0 ? d + 1 : d - 1;
+                }
+            }
+        }
+    }
+
+    private void visit(int index, int parent, float cost) {
+        stamps[index] = stamp;
+        parents[index] = parent;
+        costs[index] = cost;
+    }
+
+    private void expand(HGGraphNode node) {
+        int x = x(node), z = z(node);
+        int parent = parents[node.index];
+        if (parent < 0 || nearCorner(x, z)) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx != 0 || dz != 0) { jumpFrom(node, x, z, dx, dz); }
+                }
+            }
+            return;
+        }
+        // the natural neighbours: the direction of the move from the parent, plus the forced ones
+        int dx = Integer.signum(x - x(csr.nodes[parent]));
+        int dz = Integer.signum(z - z(csr.nodes[parent]));
+        if (dx != 0 && dz != 0) {
+            jumpFrom(node, x, z, dx, 0);
+            jumpFrom(node, x, z, 0, dz);
+            jumpFrom(node, x, z, dx, dz);
+            if (blocked(x - dx, z)) { jumpFrom(node, x, z, -dx, dz); }
+            if (blocked(x, z - dz)) { jumpFrom(node, x, z, dx, -dz); }
+        } else if (dx != 0) {
+            jumpFrom(node, x, z, dx, 0);
+            if (blocked(x, z + 1)) { jumpFrom(node, x, z, dx, 1); }
+            if (blocked(x, z - 1)) { jumpFrom(node, x, z, dx, -1); }
+        } else {
+            jumpFrom(node, x, z, 0, dz);
+            if (blocked(x + 1, z)) { jumpFrom(node, x, z, 1, dz); }
+            if (blocked(x - 1, z)) { jumpFrom(node, x, z, -1, dz); }
+        }
+    }
+
+    private void jumpFrom(HGGraphNode node, int x, int z, int dx, int dz) {
+        HGGraphNode jumpPoint = jump(node, x, z, dx, dz);
+        if (jumpPoint == null || closed[jumpPoint.index] == stamp) { return; }
+        int jx = x(jumpPoint), jz = z(jumpPoint);
+        float cost = costs[node.index] + octile(x, z, jx, jz);
+        if (stamps[jumpPoint.index] == stamp && costs[jumpPoint.index] <= cost) { return; }
+        visit(jumpPoint.index, node.index, cost);
+        heap.push(jumpPoint.index, cost + octile(jx, jz, endX, endZ));
+    }
+
+    // the next jump point in the direction (dx, dz), null if the scan runs into a blocked cell
+    private HGGraphNode jump(HGGraphNode node, int x, int z, int dx, int dz) {
+        if (dx == 0 || dz == 0) { return straight(node, x, z, dx, dz); }
+        while (true) {
+            node = step(node, x, z, dx, dz);
+            if (node == null) { return null; }
+            x += dx;
+            z += dz;
+            if (node == end || nearCorner(x, z)) { return node; }
+            if (blocked(x - dx, z) && !blocked(x - dx, z + dz)) { return node; }
+            if (blocked(x, z - dz) && !blocked(x + dx, z - dz)) { return node; }
+            if (straight(node, x, z, dx, 0) != null || straight(node, x, z, 0, dz) != null) { return node; }
+        }
+    }
+
+    private HGGraphNode straight(HGGraphNode node, int x, int z, int dx, int dz) {
+        int d = straight[node.index * 4 + (dx > 0 ? 0 : dx < 0 ? 1 : dz > 0 ? 2 : 3)];
+        // the end is on the way
+        int toEnd = dx != 0 ? (endX - x) * dx : (endZ - z) * dz;
+        if ((dx != 0 ? endZ == z : endX == x) && toEnd > 0 && toEnd <= Math.abs(d)) { return end; }
+        return d > 0 ? cell(x + dx * d, z + dz * d) : null;
+    }
+
+    // the straight move (dx, dz) to the cell (x, z) has the forced neighbours, or the cell is next to a grid's corner
+    private boolean forced(int x, int z, int dx, int dz) {
+        if (nearCorner(x, z)) { return true; }
+        if (dx != 0) {
+            return (blocked(x, z + 1) && !blocked(x + dx, z + 1)) || (blocked(x, z - 1) && !blocked(x + dx, z - 1));
+        }
+        return (blocked(x + 1, z) && !blocked(x + 1, z + dz)) || (blocked(x - 1, z) && !blocked(x - 1, z + dz));
+    }
+
+    // the neighbour in the direction (dx, dz) if the move is allowed, null otherwise
+    private HGGraphNode step(HGGraphNode node, int x, int z, int dx, int dz) {
+        HGGraphNode next = cell(x + dx, z + dz);
+        if (next == null) { return null; }
+        // all the diagonals but the ones across the grids' corners are there (see HGCsrGraph.neighbours)
+        if (dx == 0 || dz == 0 || !nearCorner(x, z)) { return next; }
+        for (int e = csr.offsets[node.index]; e < csr.offsets[node.index + 1]; e++) {
+            if (csr.targets[e] == next.index) { return next; }
+        }
+        return null;
+    }
+
+    private boolean blocked(int x, int z) { return cell(x, z) == null; }
+
+    // the node of the cell (x, z) in the grids' space, null if there's none (see HGGraph.getGraphNodeAt)
+    private HGGraphNode cell(int x, int z) {
+        scannedCells++;
+        int lx = x - lastGrid.x0, lz = z - lastGrid.z0;
+        if (lx >= 0 && lz >= 0 && lx < width && lz < height) {
+            return lastGrid.graphNodes.items[lastGrid.getGraphNodeIndex(lx, lz)];
+        }
+        HGGraphNode node = graph.getGraphNodeAt(x, z);
+        if (node == null || node.index < 0 || node.index >= csr.nodeCount) { return null; }
+        lastGrid = node.grid;
+        return node;
+    }
+
+    // within 1 cell of a cell on a grid's corner: the neighbourhood might lack the diagonals across the corner
+    private boolean nearCorner(int x, int z) {
+        int lx = Math.floorMod(x - originX, width), lz = Math.floorMod(z - originZ, height);
+        return (lx <= 1 || lx >= width - 2) && (lz <= 1 || lz >= height - 2);
+    }
+
+    private int x(HGGraphNode node) { return node.grid.getCellX(node); }
+    private int z(HGGraphNode node) { return node.grid.getCellZ(node); }
+
+    // see: https://en.wikipedia.org/wiki/Chebyshev_distance (the diagonal moves cost sqrt(2))
+    private static float octile(int x0, int z0, int x1, int z1) {
+        int dx = Math.abs(x1 - x0), dz = Math.abs(z1 - z0);
+        return Math.max(dx, dz) + (SQRT2 - 1f) * Math.min(dx, dz);
+    }
+    // the jump points are on the straight/diagonal lines: the cells in between are filled in
+    private void generatePath(int index, GraphPath<Connection<HGGraphNode>> outPath) {
+        jumpPoints.clear();
+        for (int i = index; i >= 0; i = parents[i]) { jumpPoints.add(i); }
+        for (int i = jumpPoints.size - 1; i > 0; i--) {
+            HGGraphNode from = csr.nodes[jumpPoints.get(i)];
+            HGGraphNode to = csr.nodes[jumpPoints.get(i - 1)];
+            int x = x(from), z = z(from);
+            int dx = Integer.signum(x(to) - x), dz = Integer.signum(z(to) - z);
+            while (from != to) {
+                x += dx;
+                z += dz;
+                HGGraphNode next = graph.getGraphNodeAt(x, z);
+                outPath.add(new HGGraphNodeConnection(from, next));
+                from = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.DefaultGraphPath;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.ai.pfa.PathFinderRequest;
+import com.badlogic.gdx.ai.sched.Schedulable;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.PriorityQueue;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGPathScheduler implements Schedulable {
+    // see: https://github.com/libgdx/gdx-ai/wiki/Pathfinding-API#interruptible-pathfinding
+    // Same idea as PathFinderQueue: the searches are run within the time given per frame and continued in the
+    // next frames (see HGIndexedAStarPathFinder.search(PathFinderRequest, long)), except the requests are
+    // served by priority (FIFO within the same priority) and the results are passed to the listeners.
+    // The searches go through the graph's snapshot (see HGCsrGraph) with the search state of their own,
+    // the request in progress is restarted if the snapshot changes in between.
+    // The JPS and the hierarchical searches (see HGGraph.isSliced) are not continued across the frames:
+    // they are run through HGGraph.searchConnectionPath to the end at once and the time spent counts
+    // against the budget the same way.
+    public long budgetMicros = 1000;
+
+    public interface Listener {
+        // called on the render thread (from run) once the search is over
+        void finished(Request request, boolean found);
+
+        class ListenerAdapter implements Listener {
+            @Override public void finished(Request request, boolean found) { }
+        }
+    }
+
+    public static class Request extends PathFinderRequest<HGGraphNode> {
+        public final int priority;
+        public final Listener listener;
+        public final long sequence;
+        public final long submitNanos;
+        public long finishNanos = 0;
+        public boolean done = false;
+        public boolean cancelled = false;
+        // the result as the regular HGGraphNodeConnection (valid once done and found)
+        public final GraphPath<Connection<HGGraphNode>> outPath = new DefaultGraphPath<>();
+
+        public Request(HGGraphNode startNode, HGGraphNode endNode, int priority, Listener listener, long sequence) {
+            super(startNode, endNode, null, new DefaultGraphPath<>());
+            this.priority = priority;
+            this.listener = listener;
+            this.sequence = sequence;
+            this.submitNanos = TimeUtils.nanoTime();
+        }
+
+        public long getLatencyNanos() { return (done ? finishNanos : TimeUtils.nanoTime()) - submitNanos; }
+    }
+
+    public final HGGraph graph;
+    private final PriorityQueue<Request> queue = new PriorityQueue<>(16, (r1, r2) ->
+            r1.priority != r2.priority ? Integer.compare(r2.priority, r1.priority) : Long.compare(r1.sequence, r2.sequence));
+    private Request current = null;
+    private HGCsrGraph.Search search = null;
+    private long sequence = 0;
+
+    // stats
+    public long completed = 0;
+    public long failed = 0;
+    public long totalLatencyNanos = 0;
+    public long maxLatencyNanos = 0;
+    public long lastRunNanos = 0;
+    public int maxQueueDepth = 0;
+
+    public HGPathScheduler(HGGraph graph) { this.graph = graph; }
+
+    // the start/end positions are resolved to the nodes right away (see HGGraph.getGraphNode), null if either is off the graph
+    public Request request(Vector3 start, Vector3 end, int priority, Listener listener) {
+        HGGraphNode startNode = graph.getGraphNode(start);
+        HGGraphNode endNode = graph.getGraphNode(end);
+        if (startNode == null || endNode == null) { return null; }
+        return request(startNode, endNode, priority, listener);
+    }
+
+    public Request request(HGGraphNode startNode, HGGraphNode endNode, int priority, Listener listener) {
+        Request request = new Request(startNode, endNode, priority, listener, sequence++);
+        queue.add(request);
+        maxQueueDepth = Math.max(maxQueueDepth, getQueueDepth());
+        return request;
+    }
+
+    public void cancel(Request request) {
+        if (request == null || request.done) { return; }
+        request.cancelled = true;
+        queue.remove(request);
+        if (current == request) { current = null; }
+    }
+
+    public void cancelAll() {
+        for (Request request: queue) { request.cancelled = true; }
+        queue.clear();
+        if (current != null) { current.cancelled = true; current = null; }
+    }
+
+    public int getQueueDepth() { return queue.size() + (current != null ? 1 : 0); }
+    public float getAverageLatencyMillis() { return completed + failed > 0 ? totalLatencyNanos / 1000000f / (completed + failed) : 0f; }
+
+    public void resetStats() {
+        completed = failed = 0;
+        totalLatencyNanos = maxLatencyNanos = lastRunNanos = 0;
+        maxQueueDepth = getQueueDepth();
+    }
+
+    // runs the searches within the budget (see budgetMicros)
+    public void update() { run(budgetMicros * 1000L); }
+
+    /**
+     * Render thread only. Runs the searches until the time given is spent, the searches not finished are
+     * continued on the next call.
+     *
+     * @param nanoTimeToRun the time (in nanoseconds) the searches are allowed to take
+     */
+    @Override
+    public void run(long nanoTimeToRun) {
+        long start = TimeUtils.nanoTime();
+        long elapsed = 0;
+        while (elapsed < nanoTimeToRun) {
+            if (current == null) {
+                current = queue.poll();
+                if (current == null) { break; }
+                current.statusChanged = true;
+            }
+
+            HGCsrGraph csr = graph.getCsr();
+            if (search == null || search.graph != csr) {
+                // the same search state re-pointed at the new snapshot
+                if (search == null) { search = new HGCsrGraph.Search(csr); } else { search.setGraph(csr); }
+                current.statusChanged = true;
+            }
+            if (current.statusChanged) {
+                // the nodes might be gone with their grids (see HGGraph.removeGraphNodesGrid)
+                if (!search.contains(current.startNode) || !search.contains(current.endNode)) {
+                    finish(current, false);
+                    elapsed = TimeUtils.timeSinceNanos(start);
+                    continue;
+                }
+                if (!graph.isSliced(current.startNode, current.endNode)) {
+                    finish(current, graph.searchConnectionPath(current.startNode, current.endNode, current.outPath));
+                    elapsed = TimeUtils.timeSinceNanos(start);
+                    continue;
+                }
+                current.resultPath.clear();
+                current.heuristic = search.heuristic;
+            }
+
+            // false: the time is over, the search is continued on the next run
+            if (!search.pathFinder.search(current, nanoTimeToRun - elapsed)) { break; }
+            finish(current, current.pathFound);
+            elapsed = TimeUtils.timeSinceNanos(start);
+        }
+        if (current != null) { current.executionFrames++; }
+        lastRunNanos = TimeUtils.timeSinceNanos(start);
+    }
+
+    private void finish(Request request, boolean found) {
+        current = null;
+        request.done = true;
+        request.pathFound = found;
+        request.finishNanos = TimeUtils.nanoTime();
+        if (found) {
+            // the sliced searches only: the others fill outPath in themselves (see run)
+            GraphPath<HGGraphNode> nodes = request.resultPath;
+            for (int i = 1; i < nodes.getCount(); i++) {
+                request.outPath.add(new HGGraphNodeConnection(nodes.get(i - 1), nodes.get(i)));
+            }
+            completed++;
+        } else {
+            request.outPath.clear();
+            failed++;
+        }
+        long latency = request.finishNanos - request.submitNanos;
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        if (request.listener != null) { request.listener.finished(request, found); }
+    }
+}
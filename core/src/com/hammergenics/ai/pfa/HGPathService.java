@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.DefaultGraphPath;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.hammergenics.core.utils.HGWorkers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGPathService {
+    // The batches of path requests solved across the workers (see HGWorkers.pool). Every batch is solved over
+    // the snapshot taken on submit (see HGCsrGraph): only its arrays are read by the workers, never the nodes
+    // (their indices and coordinates might change on the render thread meanwhile): the searches go by the indices
+    // (see HGIndexedAStarPathFinder.searchConnectionPath(int, int, IndexedHeuristic, GraphPath)).
+    // The search state (HGCsrGraph.Search and its path finder) is per worker thread, re-pointed at the snapshot
+    // of the batch, so the searches don't share anything.
+    // The cost and the heuristic are the same as HGGraph's: dst2 (see HGGraphNodeConnection, HGGraphNode.heuristic).
+    public static final int REQUESTS_PER_TASK = 4;
+
+    public interface Listener {
+        // called on the render thread once every request of the batch is solved
+        void finished(Array<Request> requests, long nanos);
+
+        class ListenerAdapter implements Listener {
+            @Override public void finished(Array<Request> requests, long nanos) { }
+        }
+    }
+
+    public static class Request {
+        public final HGGraphNode startNode;
+        public final HGGraphNode endNode;
+        public boolean found = false;
+        // the amount of the nodes expanded by the search
+        public int expanded = 0;
+        public final GraphPath<Connection<HGGraphNode>> outPath = new DefaultGraphPath<>();
+        // the snapshot's indices of the nodes (-1: not in the snapshot)
+        int start = -1;
+        int end = -1;
+
+        public Request(HGGraphNode startNode, HGGraphNode endNode) {
+            this.startNode = startNode;
+            this.endNode = endNode;
+        }
+    }
+
+    public final HGGraph graph;
+    public final ForkJoinPool pool;
+    public final AtomicLong solved = new AtomicLong(0);
+    public final AtomicLong running = new AtomicLong(0);
+
+    private final ThreadLocal<HGCsrGraph.Search> searches = new ThreadLocal<>();
+
+    public HGPathService(HGGraph graph) { this(graph, HGWorkers.pool); }
+    public HGPathService(HGGraph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+    /**
+     * Render thread only (the snapshot is taken here). The requests are solved on the workers, the listener
+     * is called on the render thread afterwards.
+     */
+    public void submit(Array<Request> requests, Listener listener) {
+        SolveAction action = prepare(requests);
+        running.incrementAndGet();
+        pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                long start = TimeUtils.nanoTime();
+                try {
+                    action.invoke();
+                } finally {
+                    running.decrementAndGet();
+                    long nanos = TimeUtils.timeSinceNanos(start);
+                    if (listener != null) { HGWorkers.postToRenderThread(() -> listener.finished(requests, nanos)); }
+                }
+            }
+        });
+    }
+
+    // Render thread only. Blocks till every request is solved (the workers do the job)
+    public void solve(Array<Request> requests) {
+        SolveAction action = prepare(requests);
+        if (ForkJoinTask.inForkJoinPool()) { action.invoke(); } else { pool.invoke(action); }
+    }
+
+    private SolveAction prepare(Array<Request> requests) {
+        HGCsrGraph csr = graph.getCsr();
+        Request[] items = requests.toArray(Request.class);
+        for (Request request: items) {
+            request.found = false;
+            request.expanded = 0;
+            request.outPath.clear();
+            request.start = csr.search.contains(request.startNode) ? request.startNode.index : -1;
+            request.end = csr.search.contains(request.endNode) ? request.endNode.index : -1;
+        }
+        return new SolveAction(csr, items, 0, items.length);
+    }
+
+    public boolean isBusy() { return running.get() > 0; }
+
+    private class SolveAction extends RecursiveAction {
+        final HGCsrGraph csr;
+        final Request[] requests;
+        final int from;
+        final int to;
+
+        SolveAction(HGCsrGraph csr, Request[] requests, int from, int to) {
+            this.csr = csr;
+            this.requests = requests;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > REQUESTS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SolveAction(csr, requests, from, mid), new SolveAction(csr, requests, mid, to));
+                return;
+            }
+            HGCsrGraph.Search search = searches.get();
+            if (search == null) {
+                searches.set(search = new HGCsrGraph.Search(csr));
+                search.pathFinder.metrics = new HGIndexedAStarPathFinder.Metrics();
+            }
+            search.setGraph(csr);
+            for (int i = from; i < to; i++) {
+                Request request = requests[i];
+                if (request.start >= 0 && request.end >= 0) {
+                    request.found = search.pathFinder.searchConnectionPath(request.start, request.end, search.heuristic, request.outPath);
+                    request.expanded = search.pathFinder.metrics.expandedNodes;
+                }
+                solved.incrementAndGet();
+            }
+        }
+    }
+}
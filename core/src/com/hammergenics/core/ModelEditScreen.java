@@ -27,7 +27,6 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g3d.Environment;
 import com.badlogic.gdx.graphics.g3d.ModelBatch;
-import com.badlogic.gdx.graphics.g3d.ModelCache;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.DirectionalLightsAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.PointLightsAttribute;
@@ -59,7 +58,6 @@ import static com.hammergenics.core.stages.ModelEditStage.LabelsTextEnum.TITLE_L
 public class ModelEditScreen extends ScreenAdapter {
     public final HGGame game;
     private final ModelBatch modelBatch;
-    private final ModelCache modelCache;
     private final SpriteBatch spriteBatch;
     // https://github.com/Anuken/GDXGifRecorder
     public final GifRecorder recorder;
@@ -86,11 +84,10 @@ public class ModelEditScreen extends ScreenAdapter {
     /**
      * @param game
      */
-    public ModelEditScreen(HGGame game, HGEngine engine, ModelBatch mb, ModelCache mc) {
+    public ModelEditScreen(HGGame game, HGEngine engine, ModelBatch mb) {
         this.game = game;
         this.eng = engine;
         this.modelBatch = mb; // https://github.com/libgdx/libgdx/wiki/ModelBatch
-        this.modelCache = mc; // https://github.com/libgdx/libgdx/wiki/ModelBatch
         this.spriteBatch = game.spriteBatch;
         // https://github.com/Anuken/GDXGifRecorder
         recorder = new GifRecorder(spriteBatch);
@@ -179,6 +176,15 @@ public class ModelEditScreen extends ScreenAdapter {
         eng.update(delta,
                 stage.physManagerTable.dynamicsWindow.dynamicsCheckBox.isChecked()
         );
+        if (stage.mapGenerationTable.terrainVisWindow.streamChunks.isChecked()) {
+            eng.chunkManager.update(perspectiveCamera.position, eng.unitSize);
+        }
+        // the chunks' meshes built on the workers, uploaded within the time budget (see TerrainMeshBuilder.update)
+        eng.updateChunkMeshes();
+        // the regions edited since the last frame only (see HGEngine.setGridNoiseHeight)
+        eng.updateDirtyChunks(eng.unitSize);
+        // the path searches continued within the time budget (see HGPathScheduler.run)
+        eng.pathScheduler.update();
         if (stage.isPressed(stage.aiTextButton)) {
             stage.aiManagerTable.update(delta);
         }
@@ -186,21 +192,13 @@ public class ModelEditScreen extends ScreenAdapter {
             stage.physManagerTable.update(delta);
         }
 
-        visibleTerrainParts = 0;
         // https://github.com/libgdx/libgdx/wiki/ModelCache#using-modelcache
-        modelCache.begin();
-        if (stage.mapGenerationTable.terrainVisWindow.previewTerrain.isChecked() && eng.chunks.size > 0) {
-            for (TerrainChunk tc: eng.chunks) {
-                for (HGModelInstance tp: tc.terrain) {
-                    // see: https://xoppa.github.io/blog/3d-frustum-culling-with-libgdx/
-                    if (isVisible(perspectiveCamera, tp)) {
-                        modelCache.add(tp);
-                        visibleTerrainParts++;
-                    }
-                }
-            }
+        // the per chunk caches are rebuilt only if the chunk's terrain has changed (outside of modelBatch.begin/end)
+        if (stage.mapGenerationTable.terrainVisWindow.previewTerrain.isChecked()) {
+            for (TerrainChunk tc: eng.chunks) { if (tc.terrain.size > 0) { tc.getTerrainCache(); } }
         }
-        modelCache.end();
+        // the noise grid's level of detail per chunk (the LOD meshes are built lazily by getNoise*Instance)
+        for (TerrainChunk tc: eng.chunks) { tc.selectLod(perspectiveCamera.position, eng.unitSize); }
 
         // https://github.com/libgdx/libgdx/wiki/ModelBatch
         // The Camera you supply is hold by reference, meaning that it must not be changed in between
@@ -229,11 +227,21 @@ public class ModelEditScreen extends ScreenAdapter {
         }
         if (eng.auxMIs.size > 0) { modelBatch.render(eng.auxMIs); }
 
-        modelBatch.render(modelCache, environment);
+        visibleTerrainParts = 0;
+        if (stage.mapGenerationTable.terrainVisWindow.previewTerrain.isChecked()) {
+            for (TerrainChunk tc: eng.chunks) {
+                if (tc.terrain.size == 0 || tc.terrainCache == null) { continue; }
+                // see: https://xoppa.github.io/blog/3d-frustum-culling-with-libgdx/
+                if (perspectiveCamera.frustum.boundsInFrustum(tc.terrainBounds)) {
+                    modelBatch.render(tc.terrainCache, environment);
+                    visibleTerrainParts += tc.terrain.size;
+                }
+            }
+        }
 
         if (stage.mapGenerationTable.noiseGridVisWindow.previewNoiseGrid.isChecked()) {
             for (TerrainChunk tc: eng.chunks) {
-                if (tc.noiseLinesHGModelInstance != null) { modelBatch.render(tc.noiseLinesHGModelInstance); }
+                if (tc.noiseLinesHGModelInstance != null) { modelBatch.render(tc.getNoiseLinesInstance()); }
             }
         }
         if (stage.gridOriginCheckBox.isChecked()) { modelBatch.render(eng.gridOHgModelInstance); }
@@ -245,7 +253,7 @@ public class ModelEditScreen extends ScreenAdapter {
         if (stage.physManagerTable.dynamicsWindow.groundCheckBox.isChecked()) {
             for (TerrainChunk tc: eng.chunks) {
                 if (tc.noiseTrianglesPhysModelInstance != null) {
-                    modelBatch.render(tc.noiseTrianglesPhysModelInstance, environment);
+                    modelBatch.render(tc.getNoiseTrianglesInstance(eng.unitSize), environment);
                 }
             }
         }
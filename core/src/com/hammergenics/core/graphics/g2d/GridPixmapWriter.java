@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.core.graphics.g2d;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.hammergenics.core.utils.HGWorkers;
+import com.hammergenics.map.HGGrid;
+import com.hammergenics.map.Quantizer;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class GridPixmapWriter {
+    // the rows per task, the smaller images are written on the calling thread
+    public static int rowsPerTask = 32;
+
+    public enum ColormapsEnum {
+        GRAYSCALE(Color.BLACK, Color.WHITE),
+        // deep water, shallow water, sand, grass, rock, snow
+        TERRAIN(new Color(0x1f3f8fff), new Color(0x3f7fbfff), new Color(0xd8c890ff),
+                new Color(0x4f9f3fff), new Color(0x7f6f5fff), Color.WHITE),
+        HEAT(Color.BLACK, Color.RED, Color.YELLOW, Color.WHITE);
+
+        public static final int SIZE = 256;
+        // RGBA8888 (see Color.rgba8888) of the values [0, 1] split into SIZE buckets
+        public final int[] lut = new int[SIZE];
+
+        ColormapsEnum(Color... stops) {
+            Color color = new Color();
+            for (int i = 0; i < SIZE; i++) {
+                float t = i / (SIZE - 1f) * (stops.length - 1);
+                int stop = Math.min((int) t, stops.length - 2);
+                color.set(stops[stop]).lerp(stops[stop + 1], t - stop);
+                lut[i] = Color.rgba8888(color);
+            }
+        }
+
+        public int rgba8888(float value) {
+            if (!(value > 0f)) { return lut[0]; } // NaN included
+            if (value >= 1f) { return lut[SIZE - 1]; }
+            return lut[(int) (value * (SIZE - 1) + 0.5f)];
+        }
+    }
+
+    /**
+     * Writes the grids' values (expected within [0, 1]) straight to the pixmap's pixels (no drawPixel calls),
+     * the rows are split between the workers (see HGWorkers.pool). The bounds (see HGGrid.getCombinedBounds)
+     * are stretched over the whole pixmap (nearest neighbour), the grids may overlap (the last one wins).
+     *
+     * @param pixmap   Pixmap.Format.RGBA8888 only
+     * @param step     if within (0, 1) the values are rounded to the step first (see HGGrid.roundToStep)
+     */
+    public static Pixmap write(Array<HGGrid> grids, Rectangle bounds, Pixmap pixmap, ColormapsEnum colormap, float step) {
+        if (pixmap.getFormat() != Pixmap.Format.RGBA8888) {
+            throw new IllegalArgumentException("RGBA8888 expected: " + pixmap.getFormat());
+        }
+        HGGrid[] sources = grids.toArray(HGGrid.class);
+        Quantizer quantizer = step > 0f && step < 1f ? new Quantizer(step) : null;
+        WriteAction action = new WriteAction(sources, bounds, pixmap, colormap, quantizer, 0, pixmap.getHeight());
+        if (pixmap.getHeight() <= rowsPerTask) { action.compute(); } else { HGWorkers.pool.invoke(action); }
+        return pixmap;
+    }
+
+    private static class WriteAction extends RecursiveAction {
+        private final HGGrid[] grids;
+        private final Rectangle bounds;
+        private final Pixmap pixmap;
+        private final ColormapsEnum colormap;
+        private final Quantizer quantizer;
+        private final int rowFrom;
+        private final int rowTo;
+
+        public WriteAction(HGGrid[] grids, Rectangle bounds, Pixmap pixmap, ColormapsEnum colormap,
+                           Quantizer quantizer, int rowFrom, int rowTo) {
+            this.grids = grids;
+            this.bounds = bounds;
+            this.pixmap = pixmap;
+            this.colormap = colormap;
+            this.quantizer = quantizer;
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowTo - rowFrom > rowsPerTask) {
+                int mid = (rowFrom + rowTo) >>> 1;
+                invokeAll(new WriteAction(grids, bounds, pixmap, colormap, quantizer, rowFrom, mid),
+                          new WriteAction(grids, bounds, pixmap, colormap, quantizer, mid, rowTo));
+                return;
+            }
+
+            // RGBA8888 is R, G, B, A in memory: big endian int 0xRRGGBBAA is exactly Color.rgba8888,
+            // own view per task (absolute puts only, the rows do not overlap)
+            IntBuffer pixels = pixmap.getPixels().duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+            int outW = pixmap.getWidth();
+            int outH = pixmap.getHeight();
+            int srcW = (int) bounds.width;
+            int srcH = (int) bounds.height;
+
+            for (int py = rowFrom; py < rowTo; py++) {
+                int sy = (int) ((long) py * srcH / outH);
+                for (HGGrid grid: grids) {
+                    int gz = sy - (grid.getZ0() - (int) bounds.y);
+                    if (gz < 0 || gz >= grid.getHeight()) { continue; }
+                    int gx0 = grid.getX0() - (int) bounds.x;
+                    // the pixels px with gx0 <= px * srcW / outW < gx0 + width
+                    int pxFrom = Math.max(0, ceilDiv((long) gx0 * outW, srcW));
+                    int pxTo = Math.min(outW, ceilDiv((long) (gx0 + grid.getWidth()) * outW, srcW));
+
+                    float[] values = grid.getArray();
+                    int row = grid.rowOffset(gz);
+                    int out = py * outW;
+                    for (int px = pxFrom; px < pxTo; px++) {
+                        float value = values[row + (int) ((long) px * srcW / outW) - gx0];
+                        if (quantizer != null) { value = quantizer.round(value); }
+                        pixels.put(out + px, colormap.rgba8888(value));
+                    }
+                }
+            }
+        }
+
+        private static int ceilDiv(long a, long b) { return (int) -Math.floorDiv(-a, b); }
+    }
+}
@@ -44,6 +44,14 @@ public class HGModel extends HGAsset<Model> implements Disposable {
 
     public HGModel(Model model) { this(model, null); }
 
+    // the model with a single mesh created from the data given (see Models.createGridModel(MeshData, ...)):
+    // the data is kept as the CPU copy as is, no read back
+    public HGModel(Model model, MeshData meshData) {
+        super(model, null);
+
+        mesh2data.put(model.meshes.first(), meshData);
+    }
+
     public HGModel(Model model, FileHandle assetFileHandle) {
         super(model, assetFileHandle);
 
@@ -94,10 +102,17 @@ public class HGModel extends HGAsset<Model> implements Disposable {
     }
 
     public static class MeshData {
-        VertexAttributes vertexAttributes;
+        public VertexAttributes vertexAttributes;
         public short[] indices;
         public float[] vertices;
 
+        // prepared elsewhere (e.g. on a worker thread, see Models.createGridMeshData), no read back from the mesh
+        public MeshData(VertexAttributes vertexAttributes, float[] vertices, short[] indices) {
+            this.vertexAttributes = vertexAttributes;
+            this.vertices = vertices;
+            this.indices = indices;
+        }
+
         public MeshData(Mesh mesh) {
             vertexAttributes = mesh.getVertexAttributes();
             int vs = vertexAttributes.vertexSize / 4;
@@ -23,6 +23,7 @@ import com.badlogic.gdx.graphics.g3d.Material;
 import com.badlogic.gdx.graphics.g3d.Model;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
 import com.badlogic.gdx.graphics.g3d.utils.AnimationController;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
@@ -81,6 +82,22 @@ public class HGModelInstance extends ModelInstance implements Disposable {
         radius = dims.len() / 2f;
     }
 
+    // copies the prototype's nodes and reuses its bounding box (no traversal of the vertices)
+    public HGModelInstance (final HGModelInstance prototype) {
+        super(prototype, new Matrix4());
+
+        this.hgModel = prototype.hgModel;
+        this.afh = prototype.afh;
+        this.rni = prototype.rni;
+        animationController = new HGAnimationController(this);
+
+        bb.set(prototype.bb);
+        center.set(prototype.center);
+        dims.set(prototype.dims);
+        maxD = prototype.maxD;
+        radius = prototype.radius;
+    }
+
     @Override
     public void dispose() {
         // hgModel is being disposed by the AssetManager
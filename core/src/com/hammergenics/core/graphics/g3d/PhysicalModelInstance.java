@@ -27,12 +27,15 @@ import com.badlogic.gdx.physics.bullet.collision.btBoxShape;
 import com.badlogic.gdx.physics.bullet.collision.btBvhTriangleMeshShape;
 import com.badlogic.gdx.physics.bullet.collision.btCollisionObject;
 import com.badlogic.gdx.physics.bullet.collision.btCollisionShape;
+import com.badlogic.gdx.physics.bullet.collision.btCompoundShape;
+import com.badlogic.gdx.physics.bullet.collision.btHeightfieldTerrainShape;
 import com.badlogic.gdx.physics.bullet.dynamics.btRigidBody;
 import com.badlogic.gdx.physics.bullet.linearmath.btMotionState;
 import com.badlogic.gdx.physics.bullet.softbody.btSoftBody;
 import com.badlogic.gdx.physics.bullet.softbody.btSoftBodyWorldInfo;
 import com.badlogic.gdx.utils.Disposable;
 import com.hammergenics.core.graphics.glutils.HGImmediateModeRenderer20;
+import com.hammergenics.map.HeightField;
 import com.hammergenics.physics.bullet.dynamics.btDynamicsWorldTypesEnum;
 import com.hammergenics.physics.bullet.dynamics.btRigidBodyProxy;
 
@@ -52,6 +55,11 @@ public class PhysicalModelInstance extends HGModelInstance implements Disposable
     public ShapesEnum rbShapeType;
     public Vector3 rbLocalInertia = Vector3.Zero.cpy();
     public float rbMass;
+    // ShapesEnum.HEIGHTFIELD only: bullet reads the (direct) buffer of the height field as is, no copies made
+    public HeightField rbHeightField = null;
+    public float rbHeightFieldMin;
+    public float rbHeightFieldMax;
+    public final Vector3 rbHeightFieldScaling = new Vector3(1f, 1f, 1f);
 
     public btSoftBody softBody;
     public btSoftBodyWorldInfo sbWorldInfo;
@@ -108,6 +116,20 @@ public class PhysicalModelInstance extends HGModelInstance implements Disposable
         setRbMotionState(new HGbtMotionState(this));
     }
 
+    // static (zero mass) ground with ShapesEnum.HEIGHTFIELD shape, the model is used for rendering only
+    public PhysicalModelInstance(HGModel hgModel, HeightField heightField, float minHeight, float maxHeight,
+                                 Vector3 heightFieldScaling, String... rootNodeIds) {
+        super(hgModel, null, rootNodeIds);
+        this.rbMass = 0f;
+        this.rbShapeType = ShapesEnum.HEIGHTFIELD;
+        this.rbHeightField = heightField;
+        this.rbHeightFieldMin = minHeight;
+        this.rbHeightFieldMax = maxHeight;
+        this.rbHeightFieldScaling.set(heightFieldScaling);
+        createRigidBody();
+        setRbMotionState(new HGbtMotionState(this));
+    }
+
     public void addRigidBodyToDynamicsWorld(int group, int mask) {
         btDynamicsWorldTypesEnum.selected.dynamicsWorld.addRigidBody(rigidBody, group, mask);
     }
@@ -209,7 +231,7 @@ public class PhysicalModelInstance extends HGModelInstance implements Disposable
     // btTriangleMeshShape btTriangleMeshShapeData
     // btTriangleShape btTriangleShapeEx btUniformScalingShape
     public enum ShapesEnum {
-        BOX, MESH
+        BOX, MESH, HEIGHTFIELD
     }
 
     public void setRbMotionState(btMotionState rbMotionState) {
@@ -277,6 +299,29 @@ public class PhysicalModelInstance extends HGModelInstance implements Disposable
                 //	 //moving concave objects not supported
                 //	 btAssert(0);
                 break;
+            case HEIGHTFIELD:
+                if (rbHeightField == null || !rbHeightField.isDirect()) {
+                    Gdx.app.error(getClass().getSimpleName(), "ERROR: direct height field expected");
+                    return;
+                }
+                // see: https://pybullet.org/Bullet/BulletFull/classbtHeightfieldTerrainShape.html
+                // heightScale is ignored for the float data, upAxis = 1 (Y), flipQuadEdges = true
+                // to match the triangulation of Models.createGridMeshPart (p00-p11 diagonal)
+                btHeightfieldTerrainShape heightFieldShape = new btHeightfieldTerrainShape(
+                        rbHeightField.width, rbHeightField.height, rbHeightField.buffer,
+                        1f, rbHeightFieldMin, rbHeightFieldMax, 1, true);
+                Vector3 scaling = new Vector3(rbHeightFieldScaling).scl(scale);
+                heightFieldShape.setLocalScaling(scaling);
+                // the height field is centered to origin (including (min + max)/2 height)
+                // while the model starts at origin, so it's shifted within the compound shape
+                // NOTE: the compound shape releases its children on dispose
+                btCompoundShape compoundShape = new btCompoundShape();
+                compoundShape.addChildShape(new Matrix4().setToTranslation(
+                        (rbHeightField.width - 1) * scaling.x / 2f,
+                        (rbHeightFieldMin + rbHeightFieldMax) * scaling.y / 2f,
+                        (rbHeightField.height - 1) * scaling.z / 2f), heightFieldShape);
+                rbCollisionShape = compoundShape;
+                break;
             default:
                 Gdx.app.error(getClass().getSimpleName(), "ERROR: unknown shape type: " + rbShapeType.name());
                 return;
@@ -135,6 +135,7 @@ public class SteerableModelInstance extends PhysicalModelInstance implements Dis
     // I.5. Follow Flow Field: https://github.com/libgdx/gdx-ai/wiki/Steering-Behaviors#flow-field-following
     //      SteeringBehavior -> FollowFlowField
     public FollowFlowField.FlowField<Vector3> flowField = Vector3::new;
+    public Location<Vector3> flowFieldTarget = this; // the goal of the flow field (see HGFlowFieldCache)
     public float followFlowFieldPredictionTime = 1f;
     // I.6. Follow Path: https://github.com/libgdx/gdx-ai/wiki/Steering-Behaviors#path-following
     //      SteeringBehavior -> Arrive -> FollowPath
@@ -18,6 +18,8 @@ package com.hammergenics.core.graphics.g3d.utils;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.g3d.Material;
 import com.badlogic.gdx.graphics.g3d.Model;
@@ -28,6 +30,7 @@ import com.badlogic.gdx.graphics.g3d.utils.shapebuilders.ArrowShapeBuilder;
 import com.badlogic.gdx.graphics.g3d.utils.shapebuilders.BoxShapeBuilder;
 import com.badlogic.gdx.graphics.g3d.utils.shapebuilders.SphereShapeBuilder;
 import com.badlogic.gdx.math.Vector3;
+import com.hammergenics.core.graphics.g3d.HGModel;
 import com.hammergenics.map.HGGrid;
 
 /**
@@ -79,71 +82,149 @@ public class Models {
     }
 
     public static Model createGridModel(HGGrid grid, int primType, float scale, Color clr) {
-        ModelBuilder mb;
-        MeshPartBuilder mpb;
-
-        mb = new ModelBuilder();
-        mb.begin();
+        return createGridModel(grid, primType, scale, clr, 1, 0f);
+    }
 
-        mb.node().id = "grid";
-        mpb = mb.part("grid", primType, VertexAttributes.Usage.Position | VertexAttributes.Usage.Normal,
-                new Material(ColorAttribute.createDiffuse(clr)));
+    // stride: every stride-th vertex is taken (LOD, the cells count is expected to be divisible by stride)
+    // skirtDepth: GL_TRIANGLES only, the border is extended down by skirtDepth (scaled) to hide the cracks
+    //             between the neighbouring grids of different LODs
+    // see: https://tulrich.com/geekstuff/chunklod.html
+    public static Model createGridModel(HGGrid grid, int primType, float scale, Color clr, int stride, float skirtDepth) {
+        return createGridModel(createGridMeshData(grid, primType, scale, stride, skirtDepth), primType, clr);
+    }
 
-        createGridMeshPart(grid, mpb, scale);
+    // GL stage (render thread only): uploads the vertices and indices prepared by createGridMeshData,
+    // no builders involved and no vertices traversal
+    public static Model createGridModel(HGModel.MeshData meshData, int primType, Color clr) {
+        int vs = meshData.vertexAttributes.vertexSize / 4; // vertex size is in bytes
+        Mesh mesh = new Mesh(true, meshData.vertices.length / vs, meshData.indices.length, meshData.vertexAttributes);
+        mesh.setVertices(meshData.vertices);
+        mesh.setIndices(meshData.indices);
 
+        ModelBuilder mb = new ModelBuilder();
+        mb.begin();
+        mb.node().id = "grid";
+        // the mesh is added to the model's meshes and disposed along with it (see ModelBuilder.end)
+        mb.part("grid", mesh, primType, new Material(ColorAttribute.createDiffuse(clr)));
         return mb.end();
     }
 
-    public static void createGridMeshPart(HGGrid grid, MeshPartBuilder mpb, float scale) {
-        int width = grid.getWidth();
-        int height = grid.getHeight();
-
-        if (mpb.getPrimitiveType() == GL20.GL_LINES) {
-            Vector3 p1 = new Vector3();
-            Vector3 p2 = new Vector3();
-            // drawing lines along X - axis
-            for (int z = 0; z < height; z++) {
-                for (int x = 0; x < width - 1; x++) {
-                    p1.set(x    , grid.get(x    , z), z);
-                    p2.set(x + 1, grid.get(x + 1, z), z);
-                    //Gdx.app.debug("grid", "" + " x: " + x + " z: " + z + " y1: " + y1 + " y2: " + y2);
-                    mpb.line(p1, p2);
+    public static HGModel.MeshData createGridMeshData(HGGrid grid, int primType, float scale, int stride, float skirtDepth) {
+        return createGridMeshData(grid.getArray(), grid.getWidth(), grid.getHeight(), grid.yScale,
+                primType, scale, stride, skirtDepth);
+    }
+
+    /**
+     * CPU stage: the vertices (Position, Normal) and indices of the grid's mesh, could be called on any thread
+     * (with the heights not being changed meanwhile, e.g. a copy of them).
+     * Every line/triangle has its own vertices, the indices go in order (as MeshPartBuilder.line/triangle do).
+     * GL_LINES: along X - axis row by row, then along Z - axis column by column (unscaled, see TerrainChunk);
+     * GL_TRIANGLES: 2 triangles (p00, p01, p11 and p00, p11, p10) per cell row by row (scaled), then the skirts.
+     * NOTE: with stride = 1 and no skirt the vertices layout is relied upon by TerrainChunk.updateDirtyRegion
+     *
+     * @param heights row-major [x + z * width], see HGGrid.rowOffset
+     */
+    public static HGModel.MeshData createGridMeshData(float[] heights, int width, int height, float yScale,
+                                                      int primType, float scale, int stride, float skirtDepth) {
+        VertexAttributes attributes = new VertexAttributes(VertexAttribute.Position(), VertexAttribute.Normal());
+        int vs = attributes.vertexSize / 4;
+        int segmentsX = (width - 1) / stride;  // per row
+        int segmentsZ = (height - 1) / stride; // per column
+        int rows = segmentsZ + 1;
+        int columns = segmentsX + 1;
+
+        float[] vertices;
+        int v = 0;
+        if (primType == GL20.GL_LINES) {
+            vertices = new float[2 * (rows * segmentsX + columns * segmentsZ) * vs];
+            // lines along X - axis
+            for (int z = 0; z < height; z += stride) {
+                int row = z * width;
+                for (int x = 0; x < width - stride; x += stride) {
+                    v = putVertex(vertices, v, vs, x         , heights[row + x         ], z);
+                    v = putVertex(vertices, v, vs, x + stride, heights[row + x + stride], z);
                 }
             }
-
-            // drawing lines along Z - axis
-            for (int x = 0; x < width; x++) {
-                for (int z = 0; z < height - 1; z++) {
-                    p1.set(x, grid.get(x, z    ), z    );
-                    p2.set(x, grid.get(x, z + 1), z + 1);
-                    mpb.line(p1, p2);
+            // lines along Z - axis
+            for (int x = 0; x < width; x += stride) {
+                for (int z = 0; z < height - stride; z += stride) {
+                    v = putVertex(vertices, v, vs, x, heights[ z           * width + x], z         );
+                    v = putVertex(vertices, v, vs, x, heights[(z + stride) * width + x], z + stride);
                 }
             }
-        } else if (mpb.getPrimitiveType() == GL20.GL_TRIANGLES) {
-            //com.badlogic.gdx.utils.GdxRuntimeException: Mesh must be indexed and triangulated
-            //        at com.badlogic.gdx.physics.bullet.collision.btIndexedMesh.set(btIndexedMesh.java:165)
-            //        at com.badlogic.gdx.physics.bullet.collision.btIndexedMesh.<init>(btIndexedMesh.java:126)
-            //        at com.badlogic.gdx.physics.bullet.collision.btIndexedMesh.obtain(btIndexedMesh.java:84)
-            //        at com.badlogic.gdx.physics.bullet.collision.btTriangleIndexVertexArray.addMeshPart(btTriangleIndexVertexArray.java:136)
-            //        at com.badlogic.gdx.physics.bullet.collision.btTriangleIndexVertexArray.addMeshParts(btTriangleIndexVertexArray.java:156)
-            //        at com.badlogic.gdx.physics.bullet.collision.btTriangleIndexVertexArray.<init>(btTriangleIndexVertexArray.java:119)
-            //        at com.badlogic.gdx.physics.bullet.collision.btTriangleIndexVertexArray.obtain(btTriangleIndexVertexArray.java:103)
-            //        at com.badlogic.gdx.physics.bullet.collision.btBvhTriangleMeshShape.obtain(btBvhTriangleMeshShape.java:83)
-            //btBvhTriangleMeshShape.obtain(hgModel.obj.meshParts);
-            Vector3 p00 = new Vector3();
-            Vector3 p01 = new Vector3();
-            Vector3 p10 = new Vector3();
-            Vector3 p11 = new Vector3();
-            for (int z = 1; z < height; z++) {
-                for (int x = 1; x < width; x++) {
-                    p00.set(x - 1, grid.get(x - 1, z - 1), z - 1).scl(scale, grid.yScale * scale, scale);
-                    p01.set(x - 1, grid.get(x - 1, z    ), z    ).scl(scale, grid.yScale * scale, scale);
-                    p10.set(x    , grid.get(x    , z - 1), z - 1).scl(scale, grid.yScale * scale, scale);
-                    p11.set(x    , grid.get(x    , z    ), z    ).scl(scale, grid.yScale * scale, scale);
-                    mpb.triangle(p00, p01, p11);
-                    mpb.triangle(p00, p11, p10);
+        } else {
+            int skirts = skirtDepth > 0f ? 2 * (segmentsX + segmentsZ) : 0;
+            vertices = new float[(6 * segmentsX * segmentsZ + 12 * skirts) * vs];
+            float ys = yScale * scale;
+            for (int z = stride; z < height; z += stride) {
+                int row0 = (z - stride) * width;
+                int row1 = z * width;
+                for (int x = stride; x < width; x += stride) {
+                    float x0 = (x - stride) * scale, x1 = x * scale;
+                    float z0 = (z - stride) * scale, z1 = z * scale;
+                    float y00 = heights[row0 + x - stride] * ys, y10 = heights[row0 + x] * ys;
+                    float y01 = heights[row1 + x - stride] * ys, y11 = heights[row1 + x] * ys;
+                    v = putVertex(vertices, v, vs, x0, y00, z0);
+                    v = putVertex(vertices, v, vs, x0, y01, z1);
+                    v = putVertex(vertices, v, vs, x1, y11, z1);
+                    v = putVertex(vertices, v, vs, x0, y00, z0);
+                    v = putVertex(vertices, v, vs, x1, y11, z1);
+                    v = putVertex(vertices, v, vs, x1, y10, z0);
                 }
             }
+
+            if (skirts > 0) {
+                // skirts: the vertical strips along the 4 borders (both sides, so no winding matters)
+                int lastX = segmentsX * stride;
+                int lastZ = segmentsZ * stride;
+                float depth = skirtDepth * ys;
+                for (int i = stride; i <= lastX; i += stride) {
+                    v = putSkirt(vertices, v, vs, heights, width, i - stride, 0, i, 0, scale, ys, depth);
+                    v = putSkirt(vertices, v, vs, heights, width, i - stride, lastZ, i, lastZ, scale, ys, depth);
+                }
+                for (int i = stride; i <= lastZ; i += stride) {
+                    v = putSkirt(vertices, v, vs, heights, width, 0, i - stride, 0, i, scale, ys, depth);
+                    v = putSkirt(vertices, v, vs, heights, width, lastX, i - stride, lastX, i, scale, ys, depth);
+                }
+            }
+        }
+
+        short[] indices = new short[vertices.length / vs];
+        for (int i = 0; i < indices.length; i++) { indices[i] = (short) i; }
+        return new HGModel.MeshData(attributes, vertices, indices);
+    }
+
+    // Position + Normal (left zero as MeshPartBuilder does with no normal given)
+    private static int putVertex(float[] vertices, int offset, int vs, float x, float y, float z) {
+        vertices[offset    ] = x;
+        vertices[offset + 1] = y;
+        vertices[offset + 2] = z;
+        return offset + vs;
+    }
+
+    private static int putSkirt(float[] vertices, int v, int vs, float[] heights, int width,
+                                int xa, int za, int xb, int zb, float scale, float ys, float depth) {
+        float ax = xa * scale, ay = heights[za * width + xa] * ys, az = za * scale;
+        float bx = xb * scale, by = heights[zb * width + xb] * ys, bz = zb * scale;
+        // a, aDown, bDown; a, bDown, b; and the same from the other side
+        v = putVertex(vertices, v, vs, ax, ay, az); v = putVertex(vertices, v, vs, ax, ay - depth, az); v = putVertex(vertices, v, vs, bx, by - depth, bz);
+        v = putVertex(vertices, v, vs, ax, ay, az); v = putVertex(vertices, v, vs, bx, by - depth, bz); v = putVertex(vertices, v, vs, bx, by, bz);
+        v = putVertex(vertices, v, vs, ax, ay, az); v = putVertex(vertices, v, vs, bx, by - depth, bz); v = putVertex(vertices, v, vs, ax, ay - depth, az);
+        v = putVertex(vertices, v, vs, ax, ay, az); v = putVertex(vertices, v, vs, bx, by, bz); v = putVertex(vertices, v, vs, bx, by - depth, bz);
+        return v;
+    }
+
+    public static void createGridMeshPart(HGGrid grid, MeshPartBuilder mpb, float scale) {
+        HGModel.MeshData meshData = createGridMeshData(grid, mpb.getPrimitiveType(), scale, 1, 0f);
+        int vs = meshData.vertexAttributes.vertexSize / 4;
+        Vector3 p = new Vector3();
+        short[] face = new short[3];
+        int perFace = mpb.getPrimitiveType() == GL20.GL_LINES ? 2 : 3;
+        for (int i = 0; i < meshData.indices.length; i++) {
+            int o = meshData.indices[i] * vs;
+            face[i % perFace] = mpb.vertex(p.set(meshData.vertices[o], meshData.vertices[o + 1], meshData.vertices[o + 2]), null, null, null);
+            if (i % perFace != perFace - 1) { continue; }
+            if (perFace == 2) { mpb.line(face[0], face[1]); } else { mpb.triangle(face[0], face[1], face[2]); }
         }
     }
 
@@ -17,13 +17,14 @@
 package com.hammergenics.core.stages.ui;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
 import com.hammergenics.HGGame;
 import com.hammergenics.core.ModelEditScreen;
+import com.hammergenics.core.graphics.g2d.GridPixmapWriter;
+import com.hammergenics.core.graphics.g2d.GridPixmapWriter.ColormapsEnum;
 import com.hammergenics.core.stages.ModelEditStage;
 import com.hammergenics.core.stages.ui.auxiliary.HGImageVisWindow;
 import com.hammergenics.core.stages.ui.map.CellularGridVisWindow;
@@ -31,6 +32,8 @@ import com.hammergenics.core.stages.ui.map.DungeonGridVisWindow;
 import com.hammergenics.core.stages.ui.map.NoiseGridVisWindow;
 import com.hammergenics.core.stages.ui.map.TerrainVisWindow;
 import com.hammergenics.map.HGGrid;
+import com.kotcrab.vis.ui.widget.VisLabel;
+import com.kotcrab.vis.ui.widget.VisProgressBar;
 import com.kotcrab.vis.ui.widget.VisTable;
 
 /**
@@ -44,6 +47,13 @@ public class MapGenerationVisTable extends ManagerVisTable {
     public DungeonGridVisWindow dungeonGridVisWindow;
     public TerrainVisWindow terrainVisWindow;
     public final HGImageVisWindow imagePreviewWindow;
+    public VisTable progressTable;
+    public VisLabel progressLabel;
+    public VisProgressBar progressBar;
+    // the preview images of the smaller (square) grids are stretched to this size
+    public static final int PREVIEW_SIZE = 512;
+    private Pixmap pixmap = null;
+    private final Rectangle combined = new Rectangle();
 
     public MapGenerationVisTable(ModelEditScreen modelES, ModelEditStage stage) {
         super(modelES, stage);
@@ -55,8 +65,18 @@ public class MapGenerationVisTable extends ManagerVisTable {
 
         imagePreviewWindow = new HGImageVisWindow(true);
 
+        progressLabel = new VisLabel("");
+        progressBar = new VisProgressBar(0f, 1f, 0.001f, false);
+        progressTable = new VisTable();
+        progressTable.add(progressLabel).padRight(5f);
+        progressTable.add(progressBar).expandX().fillX();
+        progressTable.setVisible(false);
+
         VisTable windows = new VisTable();
 
+        windows.add(progressTable).expandX().fillX();
+        windows.row();
+
         windows.add(noiseGridVisWindow).expandX().fillX();
         windows.row();
         windows.add(cellularGridVisWindow).expandX().fillX();
@@ -89,47 +109,50 @@ public class MapGenerationVisTable extends ManagerVisTable {
         imagePreviewWindow.hideImageWindow();
     }
 
+    public void showProgress(String text, int done, int total) {
+        progressLabel.setText(text + ": " + done + "/" + total);
+        progressBar.setValue(total > 0 ? done / (float) total : 0f);
+        progressTable.setVisible(true);
+    }
+
+    public void hideProgress() {
+        progressTable.setVisible(false);
+    }
+
     // see: https://github.com/czyzby/noise4j
     public Texture imageGrid(String title, Array<HGGrid> grids) {
+        return imageGrid(title, grids, ColormapsEnum.GRAYSCALE, -1f, null);
+    }
 
-        Rectangle combined = HGGrid.getCombinedBounds(grids, new Rectangle());
-        Gdx.app.debug("image", ""
-                + " w: " + (int)combined.getWidth()
-                + " h: " + (int)combined.getHeight());
-        Pixmap map = new Pixmap((int)combined.getWidth(), (int)combined.getHeight(), Pixmap.Format.RGBA8888);
-
-        final Color color = new Color();
-        int x0, y0;
-        for (HGGrid grid: grids) {
-            x0 = grid.getX0();
-            y0 = grid.getZ0();
-            Gdx.app.debug("image", "x0: " + x0 + " y0: " + y0);
-            for (int x = 0; x < grid.getWidth(); x++) {
-                for (int y = 0; y < grid.getHeight(); y++) {
-                    final float cell = grid.get(x, y);
-                    color.set(cell, cell, cell, 1f);
-                    map.drawPixel(x + x0 - (int)combined.x, y + y0 - (int)combined.y, Color.rgba8888(color));
-                }
-            }
+    /**
+     * Renders the grids to the texture (see GridPixmapWriter) and shows it in the preview window.
+     * The square grids smaller than PREVIEW_SIZE are stretched to PREVIEW_SIZE x PREVIEW_SIZE.
+     *
+     * @param step    the values are rounded to the step (within (0, 1)) for the preview only, the grids are intact
+     * @param texture the texture to update if the size matches (disposed otherwise), null for the new one
+     * @return the texture with the image (either the one passed or the new one)
+     */
+    public Texture imageGrid(String title, Array<HGGrid> grids, ColormapsEnum colormap, float step, Texture texture) {
+        HGGrid.getCombinedBounds(grids, combined);
+        int width = (int)combined.getWidth();
+        int height = (int)combined.getHeight();
+        if (width == height && width < PREVIEW_SIZE) { width = height = PREVIEW_SIZE; }
+
+        // the pixmap is reused between the calls (most of the time the previews are of the same size)
+        if (pixmap == null || pixmap.getWidth() != width || pixmap.getHeight() != height) {
+            if (pixmap != null) { pixmap.dispose(); }
+            pixmap = new Pixmap(width, height, Pixmap.Format.RGBA8888);
         }
+        GridPixmapWriter.write(grids, combined, pixmap, colormap, step);
 
-        if ((int)combined.getWidth() == (int)combined.getHeight() && (int)combined.getWidth() < 512) {
-            Pixmap other = new Pixmap(512, 512, Pixmap.Format.RGBA8888);
-
-            // see: https://libgdx.badlogicgames.com/ci/nightlies/docs/api/com/badlogic/gdx/graphics/Pixmap.html
-            // Draws an area from another Pixmap to this Pixmap. This will automatically scale and stretch
-            // the source image to the specified target rectangle. Use setFilter(Filter) to specify the type
-            // of filtering to be used (nearest neighbour or bilinear).
-            other.drawPixmap(map,
-                    0, 0, (int)combined.getWidth(), (int)combined.getHeight(),
-                    0, 0, 512, 512);
-            map.dispose();
-            map = other;
+        if (texture != null && texture.getWidth() == width && texture.getHeight() == height) {
+            // see: https://www.khronos.org/registry/OpenGL-Refpages/es2.0/xhtml/glTexSubImage2D.xml
+            texture.draw(pixmap, 0, 0);
+        } else {
+            if (texture != null) { texture.dispose(); }
+            texture = new Texture(pixmap);
         }
 
-        Texture texture = new Texture(map);
-        map.dispose();
-
         showPreviewImage(title, texture);
 
         return texture;
@@ -17,11 +17,13 @@
 package com.hammergenics.core.stages.ui.ai.pfa;
 
 import com.badlogic.gdx.ai.pfa.Connection;
-import com.badlogic.gdx.ai.pfa.DefaultGraphPath;
 import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
 import com.badlogic.gdx.utils.Array;
 import com.hammergenics.HGGame;
 import com.hammergenics.ai.pfa.HGGraphNode;
+import com.hammergenics.ai.pfa.HGPathScheduler;
 import com.hammergenics.core.ModelEditScreen;
 import com.hammergenics.core.graphics.g3d.EditableModelInstance;
 import com.hammergenics.core.stages.ModelEditStage;
@@ -40,6 +42,10 @@ public class PathFindingVisTable extends ContextAwareVisTable {
     public VisCheckBox previewGraphNodesGrid;
     public VisCheckBox previewGraphNodesConnectionsGrid;
     public VisCheckBox previewPathSegments;
+    public VisCheckBox jumpPointSearch;
+    public VisLabel statsLabel;
+    // the search in progress for the selected model instance (if any)
+    private HGPathScheduler.Request request = null;
 
     public Vector3VisTable fromVisTable;
     public Vector3VisTable toVisTable;
@@ -54,6 +60,8 @@ public class PathFindingVisTable extends ContextAwareVisTable {
         previewCheckBoxes.add(previewGraphNodesConnectionsGrid).center().expandX().fillX();
         previewCheckBoxes.add(previewPathSegments).center().expandX().fillX();
         add(previewCheckBoxes).center().expandX().fillX().colspan(2).row();
+        add(jumpPointSearch).left().colspan(2).row();
+        add(statsLabel).left().colspan(2).row();
 
         add(fromVisTable.titleL).right();
         add(fromVisTable.valueT).row();
@@ -71,6 +79,17 @@ public class PathFindingVisTable extends ContextAwareVisTable {
         previewPathSegments = new VisCheckBox("Preview Path Segments");
         previewPathSegments.setChecked(false);
 
+        jumpPointSearch = new VisCheckBox("Jump Point Search");
+        jumpPointSearch.setChecked(eng.pfaGraph.jumpPointSearch);
+        jumpPointSearch.addListener(new ChangeListener() {
+            @Override
+            public void changed(ChangeEvent event, Actor actor) {
+                eng.pfaGraph.jumpPointSearch = jumpPointSearch.isChecked();
+            }
+        });
+
+        statsLabel = new VisLabel("");
+
         fromVisTable = new Vector3VisTable(false, true, true, new VisLabel("Move From: "));
         toVisTable  = new Vector3VisTable(false, true, true, new VisLabel("Move To: "));
     }
@@ -83,19 +102,17 @@ public class PathFindingVisTable extends ContextAwareVisTable {
             EditableModelInstance pmi = dbgModelInstance;
             EditableModelInstance smi = getSecondaryModelInstance();
             if (smi != null) {
-                GraphPath<Connection<HGGraphNode>> outPath = new DefaultGraphPath<>();
-                if (eng.pfaGraph.searchConnectionPath(pmi.getPosition(), smi.getPosition(), outPath)) {
-                    dbgModelInstance.setOutPath(outPath);
-                    dbgModelInstance.steeringEnabled = true;
-
-                    fromVisTable.setVector3(dbgModelInstance.followPath.getStartPoint());
-                    toVisTable.setVector3(dbgModelInstance.followPath.getEndPoint());
-                } else {
-                    dbgModelInstance.setOutPath(null);
-
-                    fromVisTable.setVector3(dbgModelInstance.getPosition());
-                    toVisTable.setVector3(null);
-                }
+                // the search is done within the frame budget (see HGPathScheduler), the path is set once found
+                eng.pathScheduler.cancel(request);
+                request = eng.pathScheduler.request(pmi.getPosition(), smi.getPosition(), 0, new HGPathScheduler.Listener.ListenerAdapter() {
+                    @Override
+                    public void finished(HGPathScheduler.Request r, boolean found) {
+                        if (r != request || pmi != dbgModelInstance) { return; }
+                        request = null;
+                        setOutPath(pmi, found ? r.outPath : null);
+                    }
+                });
+                if (request == null) { setOutPath(pmi, null); }
             } else {
                 dbgModelInstance.setOutPath(null);
 
@@ -109,9 +126,29 @@ public class PathFindingVisTable extends ContextAwareVisTable {
         update(0f);
     }
 
+    public void setOutPath(EditableModelInstance mi, GraphPath<Connection<HGGraphNode>> outPath) {
+        if (outPath != null) {
+            mi.setOutPath(outPath);
+            mi.steeringEnabled = true;
+
+            fromVisTable.setVector3(mi.followPath.getStartPoint());
+            toVisTable.setVector3(mi.followPath.getEndPoint());
+        } else {
+            mi.setOutPath(null);
+
+            fromVisTable.setVector3(mi.getPosition());
+            toVisTable.setVector3(null);
+        }
+    }
+
     @Override
     public void update(float delta) {
         super.update(delta);
+
+        HGPathScheduler ps = eng.pathScheduler;
+        statsLabel.setText(String.format("queue: %d (max %d) latency avg: %.2fms max: %.2fms run: %.3fms",
+                ps.getQueueDepth(), ps.maxQueueDepth, ps.getAverageLatencyMillis(),
+                ps.maxLatencyNanos / 1000000f, ps.lastRunNanos / 1000000f));
     }
 
     @Override
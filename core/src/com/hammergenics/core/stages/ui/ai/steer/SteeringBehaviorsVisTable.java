@@ -25,6 +25,7 @@ import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
 import com.badlogic.gdx.utils.Array;
 import com.hammergenics.HGGame;
+import com.hammergenics.ai.pfa.HGFlowField;
 import com.hammergenics.ai.steer.SteeringBehaviorsVector3Enum;
 import com.hammergenics.core.ModelEditScreen;
 import com.hammergenics.core.graphics.g3d.EditableModelInstance;
@@ -346,8 +347,10 @@ public class SteeringBehaviorsVisTable extends ContextAwareVisTable {
                 steeringParamsVisTable.add(targetAVisTable).colspan(2).row();
                 break;
             case FOLLOW_FLOW_FIELD: // https://github.com/libgdx/gdx-ai/wiki/Steering-Behaviors#flow-field-following
+                targetAVisTable.setLocation(getCurrentTargetA());
                 followFlowFieldPredictionTimeVisTable.setFloat(mi.followFlowFieldPredictionTime).setSetter(mi::setFollowFlowFieldPredictionTime);
 
+                steeringParamsVisTable.add(targetAVisTable).colspan(2).row();
                 steeringParamsVisTable.add(followFlowFieldPredictionTimeVisTable.titleL).padRight(5f).right();
                 steeringParamsVisTable.add(followFlowFieldPredictionTimeVisTable.valueT).left().row();
                 break;
@@ -800,6 +803,7 @@ public class SteeringBehaviorsVisTable extends ContextAwareVisTable {
             case EVADE: return dbgModelInstance.evadeTarget;
             case FACE: return dbgModelInstance.faceTarget;
             case FLEE: return dbgModelInstance.fleeTarget;
+            case FOLLOW_FLOW_FIELD: return dbgModelInstance.flowFieldTarget;
             case INTERPOSE: return dbgModelInstance.interposeAgentA;
             case LOOK_WHERE_YOU_ARE_GOING: return dbgModelInstance.lwyagTarget;
             case MATCH_VELOCITY: return dbgModelInstance.matchVelocityTarget;
@@ -832,6 +836,13 @@ public class SteeringBehaviorsVisTable extends ContextAwareVisTable {
             case EVADE: dbgModelInstance.evadeTarget = target; break;
             case FACE: dbgModelInstance.faceTarget = target; break;
             case FLEE: dbgModelInstance.fleeTarget = target; break;
+            case FOLLOW_FLOW_FIELD:
+                // the field is shared with the other agents heading to the same cell
+                HGFlowField flowField = eng.flowFields.get(target.getPosition());
+                if (flowField == null) { break; }
+                dbgModelInstance.flowFieldTarget = target;
+                dbgModelInstance.setFlowField(flowField);
+                break;
             case INTERPOSE: dbgModelInstance.interposeAgentA = target; break;
             case LOOK_WHERE_YOU_ARE_GOING: dbgModelInstance.lwyagTarget = target; break;
             case MATCH_VELOCITY: dbgModelInstance.matchVelocityTarget = target; break;
@@ -16,16 +16,22 @@
 
 package com.hammergenics.core.stages.ui.map;
 
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.InputListener;
 import com.badlogic.gdx.utils.Array;
 import com.hammergenics.HGGame;
 import com.hammergenics.core.ModelEditScreen;
+import com.hammergenics.core.graphics.g2d.GridPixmapWriter.ColormapsEnum;
 import com.hammergenics.core.stages.ModelEditStage;
 import com.hammergenics.core.stages.ui.ContextAwareVisWindow;
+import com.hammergenics.map.GridGenerationJob;
+import com.hammergenics.map.GridGenerationJob.GeneratorsEnum;
 import com.hammergenics.map.HGGrid;
+import com.kotcrab.vis.ui.widget.VisLabel;
 import com.kotcrab.vis.ui.widget.VisTextButton;
+import com.kotcrab.vis.ui.widget.VisTextField;
 
 /**
  * Add description here
@@ -35,6 +41,11 @@ import com.kotcrab.vis.ui.widget.VisTextButton;
 public class DungeonGridVisWindow extends ContextAwareVisWindow {
     public VisTextButton genDungeonTextButton;
     public Texture textureDungeon;
+    public VisTextButton cancelTextButton;
+    public VisTextField variantsTF;
+    // the variants generated in parallel, each with its own seed (see HGEngine.generateGridVariants)
+    public int variants = 4;
+    public Array<GridGenerationJob> jobs = null;
 
     public DungeonGridVisWindow(ModelEditScreen modelES, ModelEditStage stage) {
         super("Dungeon Grid", modelES, stage);
@@ -44,8 +55,22 @@ public class DungeonGridVisWindow extends ContextAwareVisWindow {
         genDungeonTextButton.addListener(new InputListener() {
             @Override
             public boolean touchDown(InputEvent event, float x, float y, int pointer, int button) {
-                eng.generateDungeon();
-                textureDungeon = stage.mapGenerationTable.imageGrid("Dungeon Grid Preview", new Array<>(new HGGrid[]{eng.gridDungeon}));
+                if (eng.isGridGenerating(GeneratorsEnum.DUNGEON)) { return super.touchDown(event, x, y, pointer, button); }
+                // the variants are generated on the workers, each one is previewed as soon as it's done
+                jobs = eng.generateGridVariants(GeneratorsEnum.DUNGEON, variants, new GridGenerationJob.Listener() {
+                    @Override
+                    public void progress(GridGenerationJob job, int done, int total) { showProgress(); }
+
+                    @Override
+                    public void finished(GridGenerationJob job, boolean success) {
+                        if (success) {
+                            textureDungeon = stage.mapGenerationTable.imageGrid("Dungeon Grid Preview - seed: " + job.seed,
+                                    new Array<>(new HGGrid[]{job.grid}), ColormapsEnum.GRAYSCALE, -1f, textureDungeon);
+                        }
+                        showProgress();
+                    }
+                });
+                showProgress();
                 return super.touchDown(event, x, y, pointer, button); // false
                 // If true is returned, this listener will have touch focus, so it will receive all
                 // touchDragged and touchUp events, even those not over this actor, until touchUp is received.
@@ -53,7 +78,43 @@ public class DungeonGridVisWindow extends ContextAwareVisWindow {
             }
         });
 
-        add(genDungeonTextButton).center().expandX().fillX();
+        cancelTextButton = new VisTextButton("cancel");
+        stage.unpressButton(cancelTextButton);
+        cancelTextButton.addListener(new InputListener() {
+            @Override
+            public boolean touchDown(InputEvent event, float x, float y, int pointer, int button) {
+                eng.cancelGridJobs(GeneratorsEnum.DUNGEON);
+                return super.touchDown(event, x, y, pointer, button); // false
+            }
+        });
+
+        variantsTF = new VisTextField(Integer.toString(variants));
+        variantsTF.setTextFieldListener((textField, c) -> {
+            try {
+                int value = Integer.parseInt(textField.getText());
+                if (value <= 0 || value > 16) { textField.getColor().set(Color.PINK); return; }
+                variants = value;
+                textField.getColor().set(Color.WHITE);
+            } catch (NumberFormatException e) {
+                textField.getColor().set(Color.PINK);
+            }
+        });
+
+        add(new VisLabel("variants:")).right().padRight(5f);
+        add(variantsTF).width(40).maxWidth(40).padRight(5f);
+        add(genDungeonTextButton).center().expandX().fillX().padRight(5f);
+        add(cancelTextButton).center();
+    }
+
+    public void showProgress() {
+        if (jobs == null) { return; }
+        int done = 0, total = 0;
+        for (GridGenerationJob job: jobs) { done += job.done.get(); total += job.total; }
+        if (eng.isGridGenerating(GeneratorsEnum.DUNGEON)) {
+            stage.mapGenerationTable.showProgress("dungeon", done, total);
+        } else {
+            stage.mapGenerationTable.hideProgress();
+        }
     }
 
     @Override
@@ -26,12 +26,16 @@ import com.badlogic.gdx.utils.Array;
 import com.hammergenics.HGGame;
 import com.hammergenics.ai.pfa.HGGraphNodesGrid;
 import com.hammergenics.core.ModelEditScreen;
+import com.hammergenics.core.graphics.g2d.GridPixmapWriter.ColormapsEnum;
 import com.hammergenics.core.stages.ModelEditStage;
 import com.hammergenics.core.stages.ui.ContextAwareVisWindow;
 import com.hammergenics.map.HGGrid;
+import com.hammergenics.map.NoiseEnginesEnum;
+import com.hammergenics.map.ParallelNoiseGenerator;
 import com.hammergenics.map.TerrainChunk;
 import com.kotcrab.vis.ui.widget.VisCheckBox;
 import com.kotcrab.vis.ui.widget.VisLabel;
+import com.kotcrab.vis.ui.widget.VisSelectBox;
 import com.kotcrab.vis.ui.widget.VisTable;
 import com.kotcrab.vis.ui.widget.VisTextButton;
 import com.kotcrab.vis.ui.widget.VisTextField;
@@ -50,8 +54,11 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
     public VisTextButton roundStepNoiseTextButton;
     public VisTextButton discardNoiseTextButton;
     public VisCheckBox previewNoiseGrid;
+    public VisCheckBox parallelNoise;
     // TODO: preview image should be more general option on the stage level
     public VisCheckBox previewNoiseImage;
+    public VisLabel noiseStatsLabel;
+    public VisSelectBox<ColormapsEnum> colormapSB;
     public VisTextField noiseYScaleTF;
     public VisTextField noiseStepTF;
     public float noiseYScale = 20f;
@@ -79,18 +86,28 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
                         stages.add(nst.stageInfo);
                     }
                 }
-                if (stages.size == 0) { return super.touchDown(event, x, y, pointer, button); }
-
-                eng.generateNoise(noiseYScale, stages);
-
-                for (NoiseStageTable nst: noiseStageTables) {
-                    nst.noiseGridSeedTF.getColor().set(Color.WHITE);
-                    nst.noiseGridSeedTF.setText(Integer.toString(nst.stageInfo.seed));
+                if (stages.size == 0 || eng.isNoiseGenerating()) { return super.touchDown(event, x, y, pointer, button); }
+
+                if (parallelNoise.isChecked()) {
+                    eng.generateNoiseParallel(noiseYScale, stages, new ParallelNoiseGenerator.Listener() {
+                        @Override
+                        public void progress(int done, int total) {
+                            stage.mapGenerationTable.showProgress("noise", done, total);
+                        }
+
+                        @Override
+                        public void finished(boolean success) {
+                            stage.mapGenerationTable.hideProgress();
+                            if (success) { noiseGenerated(); }
+                        }
+                    });
+                    // seeds are rolled before the workers start
+                    updateSeeds();
+                    stage.mapGenerationTable.showProgress("noise", 0, eng.chunks.size);
+                } else {
+                    eng.generateNoise(noiseYScale, stages);
+                    noiseGenerated();
                 }
-
-                Array<HGGrid> grids = Arrays.stream(eng.chunks.toArray())
-                        .map(TerrainChunk::getGridNoise).collect(Array::new, Array::add, Array::addAll);
-                textureNoise = stage.mapGenerationTable.imageGrid("Noise Grid Preview", grids);
                 return super.touchDown(event, x, y, pointer, button); // false
                 // If true is returned, this listener will have touch focus, so it will receive all
                 // touchDragged and touchUp events, even those not over this actor, until touchUp is received.
@@ -104,10 +121,9 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
             @Override
             public boolean touchDown(InputEvent event, float x, float y, int pointer, int button) {
                 eng.roundNoiseToStep(noiseStep);
+                updateNoiseStats();
 
-                Array<HGGrid> grids = Arrays.stream(eng.chunks.toArray())
-                        .map(TerrainChunk::getGridNoise).collect(Array::new, Array::add, Array::addAll);
-                textureNoise = stage.mapGenerationTable.imageGrid("Noise Grid Preview - round step: " + noiseStep, grids);
+                previewNoise("Noise Grid Preview - round step: " + noiseStep, -1f);
                 return super.touchDown(event, x, y, pointer, button); // false
                 // If true is returned, this listener will have touch focus, so it will receive all
                 // touchDragged and touchUp events, even those not over this actor, until touchUp is received.
@@ -121,10 +137,9 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
             @Override
             public boolean touchDown(InputEvent event, float x, float y, int pointer, int button) {
                 eng.discardNoise();
+                updateNoiseStats();
 
-                Array<HGGrid> grids = Arrays.stream(eng.chunks.toArray())
-                        .map(TerrainChunk::getGridNoise).collect(Array::new, Array::add, Array::addAll);
-                textureNoise = stage.mapGenerationTable.imageGrid("Noise Grid Preview", grids);
+                previewNoise("Noise Grid Preview", -1f);
                 return super.touchDown(event, x, y, pointer, button); // false
                 // If true is returned, this listener will have touch focus, so it will receive all
                 // touchDragged and touchUp events, even those not over this actor, until touchUp is received.
@@ -151,11 +166,25 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
                 if (value >= 1 || value <= 0) { textField.getColor().set(Color.PINK); return; }
                 noiseStep = value;
                 textField.getColor().set(Color.WHITE);
+                previewNoiseLive("Noise Grid Preview - round step preview: " + noiseStep, noiseStep);
             } catch (NumberFormatException e) {
                 textField.getColor().set(Color.PINK);
             }
         });
 
+        noiseStatsLabel = new VisLabel("");
+
+        colormapSB = new VisSelectBox<>();
+        colormapSB.setItems(ColormapsEnum.values());
+        colormapSB.setSelected(ColormapsEnum.GRAYSCALE);
+        colormapSB.addListener(new ChangeListener() {
+            @Override
+            public void changed(ChangeEvent event, Actor actor) { previewNoiseLive("Noise Grid Preview", -1f); }
+        });
+
+        parallelNoise = new VisCheckBox("parallel");
+        parallelNoise.setChecked(false);
+
         previewNoiseGrid = new VisCheckBox("preview noise grid");
         previewNoiseGrid.setChecked(true);
 
@@ -194,9 +223,61 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
         VisTable previewCheckBoxes = new VisTable();
         previewCheckBoxes.add(previewNoiseGrid).center().expandX().fillX();
         previewCheckBoxes.add(previewNoiseImage).center().expandX().fillX();
+        previewCheckBoxes.add(parallelNoise).center().expandX().fillX();
+        previewCheckBoxes.add(new VisLabel("colormap:")).right().padRight(5f);
+        previewCheckBoxes.add(colormapSB).center().padRight(5f);
 
         add(previewCheckBoxes).center().expandX().fillX();
         row();
+
+        add(noiseStatsLabel).center().expandX().fillX();
+        row();
+    }
+
+    public void updateSeeds() {
+        for (NoiseStageTable nst: noiseStageTables) {
+            nst.noiseGridSeedTF.getColor().set(Color.WHITE);
+            nst.noiseGridSeedTF.setText(Integer.toString(nst.stageInfo.seed));
+        }
+    }
+
+    public void updateNoiseStats() {
+        Array<HGGrid> grids = Arrays.stream(eng.chunks.toArray())
+                .map(TerrainChunk::getGridNoise).collect(Array::new, Array::add, Array::addAll);
+        if (grids.size == 0) { noiseStatsLabel.setText(""); return; }
+
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (HGGrid grid: grids) {
+            min = Math.min(min, grid.getMin());
+            max = Math.max(max, grid.getMax());
+        }
+        // percentiles come from the per grid histograms (see HGGrid.setHistogramBins)
+        noiseStatsLabel.setText(String.format("min: %.3f max: %.3f mid: %.3f | p10: %.3f p50: %.3f p90: %.3f",
+                min, max, eng.mid,
+                HGGrid.getPercentile(grids, 0.1f),
+                HGGrid.getPercentile(grids, 0.5f),
+                HGGrid.getPercentile(grids, 0.9f)));
+    }
+
+    public void noiseGenerated() {
+        updateSeeds();
+        updateNoiseStats();
+
+        previewNoise("Noise Grid Preview", -1f);
+    }
+
+    // step: within (0, 1) - the rounding is previewed only (the grids are intact, see GridPixmapWriter.write)
+    public void previewNoise(String title, float step) {
+        if (eng.isNoiseGenerating()) { return; } // the grids are being written by the workers
+        Array<HGGrid> grids = Arrays.stream(eng.chunks.toArray())
+                .map(TerrainChunk::getGridNoise).collect(Array::new, Array::add, Array::addAll);
+        textureNoise = stage.mapGenerationTable.imageGrid(title, grids, colormapSB.getSelected(), step, textureNoise);
+    }
+
+    // the preview follows the values typed in while the image is shown (the texture is updated in place)
+    public void previewNoiseLive(String title, float step) {
+        if (!previewNoiseImage.isChecked() || !stage.mapGenerationTable.imagePreviewWindow.shown) { return; }
+        previewNoise(title, step);
     }
 
 
@@ -211,6 +292,8 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
         public VisTextField modifierTF;
 
         public VisTextField noiseGridSeedTF;
+        public VisSelectBox<NoiseEnginesEnum> engineSB;
+        public VisTextField octavesTF;
 
         public NoiseStageTable(ModelEditStage stage, int radius, float modifier) {
             this.stage = stage;
@@ -240,6 +323,26 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
                 }
             });
 
+            engineSB = new VisSelectBox<>();
+            engineSB.setItems(NoiseEnginesEnum.values());
+            engineSB.setSelected(stageInfo.engine);
+            engineSB.addListener(new ChangeListener() {
+                @Override
+                public void changed(ChangeEvent event, Actor actor) { stageInfo.engine = engineSB.getSelected(); }
+            });
+            // FBM and RIDGED only
+            octavesTF = new VisTextField(Integer.toString(stageInfo.octaves));
+            octavesTF.setTextFieldListener((textField, c) -> {
+                try {
+                    int value = Integer.parseInt(textField.getText());
+                    if (value <= 0 || value > 16) { textField.getColor().set(Color.PINK); return; }
+                    stageInfo.octaves = value;
+                    textField.getColor().set(Color.WHITE);
+                } catch (NumberFormatException e) {
+                    textField.getColor().set(Color.PINK);
+                }
+            });
+
             enabledCB = new VisCheckBox("enabled");
             enabledCB.setChecked(true);
 
@@ -265,6 +368,10 @@ public class NoiseGridVisWindow extends ContextAwareVisWindow {
             add(radiusTF).width(40).maxWidth(40).padRight(5f);
             add(new VisLabel("modifier:")).right().padRight(5f);
             add(modifierTF).width(40).maxWidth(40).padRight(5f);
+            add(new VisLabel("engine:")).right().padRight(5f);
+            add(engineSB).padRight(5f);
+            add(new VisLabel("octaves:")).right().padRight(5f);
+            add(octavesTF).width(30).maxWidth(30).padRight(5f);
             add(new VisLabel("seed:")).right().padRight(5f);
             add(noiseGridSeedTF).width(200).maxWidth(200).padRight(5f);
             add(applySeedCB).padRight(5f);
@@ -16,6 +16,7 @@
 
 package com.hammergenics.core.stages.ui.map;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.InputListener;
@@ -44,8 +45,13 @@ import static com.hammergenics.map.TerrainPartsEnum.TRRN_SIDE;
  */
 public class TerrainVisWindow extends ContextAwareVisWindow {
     public VisCheckBox previewTerrain;
+    public VisCheckBox streamChunks;
     public VisTextButton applyTerrainTextButton;
     public VisTextButton clearTerrainTextButton;
+    public VisTextButton saveMapTextButton;
+    public VisTextButton loadMapTextButton;
+    // see ChunkStore for the format
+    public FileHandle mapFileHandle = Gdx.files.local("map.hgcs");
     public ArrayMap<TerrainPartsEnum, FileHandle> trrnPart2fileHandle =
             new ArrayMap<>(true, 16, TerrainPartsEnum.class, FileHandle.class);
     public ArrayMap<TerrainPartsEnum, VisLabel> trrnPart2label =
@@ -96,9 +102,34 @@ public class TerrainVisWindow extends ContextAwareVisWindow {
             }
         });
 
+        saveMapTextButton = new VisTextButton("save map");
+        stage.unpressButton(saveMapTextButton);
+        saveMapTextButton.addListener(new InputListener() {
+            @Override
+            public boolean touchDown(InputEvent event, float x, float y, int pointer, int button) {
+                eng.saveChunks(mapFileHandle.file());
+
+                return super.touchDown(event, x, y, pointer, button); // false
+            }
+        });
+
+        loadMapTextButton = new VisTextButton("load map");
+        stage.unpressButton(loadMapTextButton);
+        loadMapTextButton.addListener(new InputListener() {
+            @Override
+            public boolean touchDown(InputEvent event, float x, float y, int pointer, int button) {
+                if (mapFileHandle.exists()) { eng.loadChunks(mapFileHandle.file(), eng.unitSize); }
+
+                return super.touchDown(event, x, y, pointer, button); // false
+            }
+        });
+
         previewTerrain = new VisCheckBox("preview terrain");
         previewTerrain.setChecked(true);
 
+        streamChunks = new VisCheckBox("stream chunks");
+        streamChunks.setChecked(false);
+
         VisTable trrnPartTable = new VisTable();
         for (ObjectMap.Entry<TerrainPartsEnum, FileHandle> entry: trrnPart2fileHandle) {
             TerrainPartsEnum part = entry.key;
@@ -137,6 +168,9 @@ public class TerrainVisWindow extends ContextAwareVisWindow {
         trrnTable.add(applyTerrainTextButton).pad(0.5f).center().expandX().fillX();
         trrnTable.add(previewTerrain).center().pad(0.5f).expandX().fillX();
         trrnTable.add(clearTerrainTextButton).pad(0.5f).center().expandX().fillX();
+        trrnTable.add(streamChunks).center().pad(0.5f).expandX().fillX();
+        trrnTable.add(saveMapTextButton).pad(0.5f).center().expandX().fillX();
+        trrnTable.add(loadMapTextButton).pad(0.5f).center().expandX().fillX();
         add(trrnTable).center().expandX().fillX();
         row();
     }
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.hammergenics.core.utils;
+
+import com.badlogic.gdx.Gdx;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGWorkers {
+    // keeping one core for the render thread
+    public static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    // see: https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/ForkJoinPool.html
+    // the worker threads of the ForkJoinPool are daemon threads, so the pool doesn't prevent
+    // the application from exiting and doesn't require an explicit shutdown
+    public static final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+
+    // see: https://github.com/libgdx/libgdx/wiki/Threading
+    // Anything touching GL (meshes, textures) or Bullet should be handed back to the render thread
+    public static void postToRenderThread(Runnable runnable) {
+        if (runnable == null) { return; }
+        if (Gdx.app != null) { Gdx.app.postRunnable(runnable); } else { runnable.run(); }
+    }
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.LongMap;
+import com.hammergenics.map.HGGrid.NoiseStageInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.hammergenics.HGEngine.MAP_SIZE;
+import static com.hammergenics.map.TerrainChunkManager.toChunkCoord;
+import static com.hammergenics.map.TerrainChunkManager.toKey;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class ChunkStore {
+    // File layout (little endian):
+    //   header: magic, version, chunk size (cells), yScale, step, mid,
+    //           stages count, stages (radius, modifier, seed, engine, octaves, lacunarity, gain),
+    //           chunks count, index (cx, cz, offset, length) per chunk
+    //   chunk:  x0, z0 (no MAP_CENTER adjustment), width, height, yScale, step, heights encoding,
+    //           heights (row-major, see HGGrid.rowOffset), cells count, cells (TerrainCellTable codes)
+    // Every chunk is self-contained, so it could be read independently (see TerrainChunkManager.load).
+    public static final int MAGIC = 0x53434748; // "HGCS"
+    public static final int VERSION = 2; // 1: no engine, octaves, lacunarity and gain in the stages
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // the heights quantized to the step: the amount of steps as short (see Quantizer.toUnits)
+    public static final int ENCODING_UNITS = 1;
+    // the heights as is
+    public static final int ENCODING_FLOAT = 2;
+
+    public static final int INDEX_ENTRY_BYTES = 4 + 4 + 8 + 4;
+    public static final int STAGE_BYTES = 4 + 4 + 4 + 4 + 4 + 4 + 4;
+
+    public final File file;
+    public final int chunkSize;
+    public final float yScale;
+    public final float step;
+    public final float mid;
+    public final Array<NoiseStageInfo> noiseStages = new Array<>(true, 16, NoiseStageInfo.class);
+    public final int[] cxs;
+    public final int[] czs;
+    public final long[] offsets;
+    public final int[] lengths;
+    public final LongMap<Integer> key2index = new LongMap<>();
+
+    // see: https://docs.oracle.com/javase/8/docs/api/java/nio/MappedByteBuffer.html
+    // the pages are loaded by the OS on the first access only, so the chunks not read cost nothing
+    private final MappedByteBuffer mapped;
+
+    private ChunkStore(File file, MappedByteBuffer mapped) {
+        this.file = file;
+        this.mapped = mapped;
+        ByteBuffer b = mapped.duplicate().order(ORDER);
+
+        if (b.getInt() != MAGIC) { throw new GdxRuntimeException("not a chunk store: " + file); }
+        int version = b.getInt();
+        if (version < 1 || version > VERSION) { throw new GdxRuntimeException("unsupported version: " + version + " " + file); }
+        chunkSize = b.getInt();
+        yScale = b.getFloat();
+        step = b.getFloat();
+        mid = b.getFloat();
+
+        int stages = b.getInt();
+        for (int i = 0; i < stages; i++) {
+            NoiseStageInfo stage = new NoiseStageInfo();
+            stage.radius = b.getInt();
+            stage.modifier = b.getFloat();
+            stage.seed = b.getInt();
+            if (version >= 2) {
+                int engine = b.getInt();
+                if (engine >= 0 && engine < NoiseEnginesEnum.values().length) { stage.engine = NoiseEnginesEnum.values()[engine]; }
+                stage.octaves = b.getInt();
+                stage.lacunarity = b.getFloat();
+                stage.gain = b.getFloat();
+            }
+            noiseStages.add(stage);
+        }
+
+        int count = b.getInt();
+        cxs = new int[count];
+        czs = new int[count];
+        offsets = new long[count];
+        lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            cxs[i] = b.getInt();
+            czs[i] = b.getInt();
+            offsets[i] = b.getLong();
+            lengths[i] = b.getInt();
+            key2index.put(toKey(cxs[i], czs[i]), i);
+        }
+    }
+
+    // NOTE: a single mapping is limited to 2GB (Integer.MAX_VALUE)
+    public static ChunkStore open(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return new ChunkStore(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new GdxRuntimeException("unable to open: " + file, e);
+        }
+    }
+
+    public int size() { return cxs.length; }
+
+    public boolean contains(int cx, int cz) { return key2index.containsKey(toKey(cx, cz)); }
+
+    /**
+     * Reads the chunk (cx, cz) into tc: the heights, the step and the cells classification as they were saved,
+     * no noise generation, rounding or classification is needed afterwards (see HGEngine.resetChunk).
+     * Thread safe: the mapping is only read through the duplicates.
+     *
+     * @return false if there's no such chunk in the store
+     */
+    public boolean read(int cx, int cz, TerrainChunk tc) {
+        Integer index = key2index.get(toKey(cx, cz));
+        if (index == null) { return false; }
+
+        ByteBuffer b = mapped.duplicate().order(ORDER);
+        b.position((int) offsets[index]);
+
+        HGGrid grid = tc.gridNoise;
+        b.getInt(); // x0: the chunk's position is defined by (cx, cz)
+        b.getInt(); // z0
+        int width = b.getInt();
+        int height = b.getInt();
+        if (width != grid.getWidth() || height != grid.getHeight()) {
+            throw new GdxRuntimeException("size mismatch: " + width + "x" + height
+                    + " vs " + grid.getWidth() + "x" + grid.getHeight() + " chunk: " + cx + ", " + cz);
+        }
+        grid.yScale = b.getFloat();
+        grid.step = b.getFloat();
+        int encoding = b.getInt();
+
+        float[] values = grid.getArray();
+        switch (encoding) {
+            case ENCODING_UNITS:
+                Quantizer quantizer = new Quantizer(grid.step);
+                for (int i = 0; i < values.length; i++) { values[i] = quantizer.fromUnits(b.getShort()); }
+                break;
+            case ENCODING_FLOAT:
+                b.asFloatBuffer().get(values, 0, values.length);
+                b.position(b.position() + values.length * Float.BYTES);
+                break;
+            default:
+                throw new GdxRuntimeException("unknown encoding: " + encoding + " chunk: " + cx + ", " + cz);
+        }
+        grid.invalidateStats();
+        grid.markDirty();
+
+        int cells = b.getInt();
+        if (cells > 0) {
+            int[] codes = new int[cells];
+            for (int i = 0; i < cells; i++) { codes[i] = b.get(); } // sign extended: TerrainCellTable.NONE is -1
+            tc.terrainCells = codes;
+        } else {
+            tc.terrainCells = null;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the chunks along with the map's parameters (the stages are kept to generate the chunks not saved).
+     */
+    public static void write(File file, Array<TerrainChunk> chunks,
+                             float yScale, float step, float mid, Array<NoiseStageInfo> noiseStages) {
+        int[] encodings = new int[chunks.size];
+        long[] offsets = new long[chunks.size];
+        int[] lengths = new int[chunks.size];
+
+        long offset = 4 * 6 + 4 + (long) noiseStages.size * STAGE_BYTES + 4 + (long) chunks.size * INDEX_ENTRY_BYTES;
+        for (int i = 0; i < chunks.size; i++) {
+            TerrainChunk tc = chunks.get(i);
+            encodings[i] = canEncodeUnits(tc.gridNoise) ? ENCODING_UNITS : ENCODING_FLOAT;
+            int values = tc.gridNoise.getWidth() * tc.gridNoise.getHeight();
+            int cells = tc.terrainCells != null ? tc.terrainCells.length : 0;
+            offsets[i] = offset;
+            lengths[i] = 4 * 7 + values * (encodings[i] == ENCODING_UNITS ? Short.BYTES : Float.BYTES) + 4 + cells;
+            offset += lengths[i];
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, offset);
+            ByteBuffer b = mapped.duplicate().order(ORDER);
+
+            b.putInt(MAGIC).putInt(VERSION).putInt(MAP_SIZE);
+            b.putFloat(yScale).putFloat(step).putFloat(mid);
+            b.putInt(noiseStages.size);
+            for (NoiseStageInfo stage: noiseStages) {
+                b.putInt(stage.radius).putFloat(stage.modifier).putInt(stage.seed);
+                b.putInt(stage.engine.ordinal()).putInt(stage.octaves).putFloat(stage.lacunarity).putFloat(stage.gain);
+            }
+            b.putInt(chunks.size);
+            for (int i = 0; i < chunks.size; i++) {
+                HGGrid grid = chunks.get(i).gridNoise;
+                b.putInt(toChunkCoord(grid.getX0())).putInt(toChunkCoord(grid.getZ0()));
+                b.putLong(offsets[i]).putInt(lengths[i]);
+            }
+
+            for (int i = 0; i < chunks.size; i++) {
+                TerrainChunk tc = chunks.get(i);
+                HGGrid grid = tc.gridNoise;
+                b.putInt(grid.getX0(false)).putInt(grid.getZ0(false));
+                b.putInt(grid.getWidth()).putInt(grid.getHeight());
+                b.putFloat(grid.yScale).putFloat(grid.step).putInt(encodings[i]);
+
+                float[] values = grid.getArray();
+                if (encodings[i] == ENCODING_UNITS) {
+                    Quantizer quantizer = new Quantizer(grid.step);
+                    for (float value: values) { b.putShort((short) quantizer.toUnits(value)); }
+                } else {
+                    b.asFloatBuffer().put(values);
+                    b.position(b.position() + values.length * Float.BYTES);
+                }
+
+                int cells = tc.terrainCells != null ? tc.terrainCells.length : 0;
+                b.putInt(cells);
+                for (int c = 0; c < cells; c++) { b.put((byte) tc.terrainCells[c]); }
+            }
+            mapped.force();
+        } catch (IOException e) {
+            throw new GdxRuntimeException("unable to write: " + file, e);
+        }
+    }
+
+    // lossless only: every height should be restored exactly from its amount of steps
+    public static boolean canEncodeUnits(HGGrid grid) {
+        if (grid.step <= 0f) { return false; }
+        Quantizer quantizer = new Quantizer(grid.step);
+        for (float value: grid.getArray()) {
+            int units = quantizer.toUnits(value);
+            if (units < Short.MIN_VALUE || units > Short.MAX_VALUE) { return false; }
+            if (quantizer.fromUnits(units) != value) { return false; }
+        }
+        return true;
+    }
+}
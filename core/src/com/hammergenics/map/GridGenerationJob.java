@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.IntArray;
+import com.hammergenics.core.utils.HGWorkers;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class GridGenerationJob {
+    public enum GeneratorsEnum {
+        // see: https://gamedevelopment.tutsplus.com/tutorials/generate-random-cave-levels-using-cellular-automata--gamedev-9664
+        // same rules and parameters as noise4j's CellularAutomataGenerator (see HGGrid.generateCellular): 0.5 alive
+        // chance, 4 iterations, the neighbours beyond the border are not counted. The Random is the job's own
+        // (noise4j's one is shared, see Generators.getRandom), so the grids differ from noise4j's for the same seed
+        CELLULAR(4) {
+            @Override
+            protected void generate(GridGenerationJob job) {
+                HGGrid grid = job.grid;
+                int width = grid.getWidth();
+                int height = grid.getHeight();
+                float[] cells = grid.getArray();
+                float[] next = new float[cells.length];
+                Random random = new Random(job.seed);
+                for (int i = 0; i < cells.length; i++) { cells[i] = random.nextFloat() < ALIVE_CHANCE ? ALIVE : DEAD; }
+                job.progress();
+
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    for (int z = 0; z < height; z++) {
+                        if (job.cancelled) { return; }
+                        for (int x = 0; x < width; x++) {
+                            int alive = 0;
+                            for (int dz = -1; dz <= 1; dz++) {
+                                for (int dx = -1; dx <= 1; dx++) {
+                                    if (dx == 0 && dz == 0) { continue; }
+                                    int nx = x + dx, nz = z + dz;
+                                    if (nx < 0 || nz < 0 || nx >= width || nz >= height) { continue; }
+                                    if (cells[nx + nz * width] == ALIVE) { alive++; }
+                                }
+                            }
+                            int i = x + z * width;
+                            if (cells[i] == ALIVE) { next[i] = alive < DEATH_LIMIT ? DEAD : ALIVE; }
+                            else { next[i] = alive > BIRTH_LIMIT ? ALIVE : DEAD; }
+                        }
+                    }
+                    System.arraycopy(next, 0, cells, 0, cells.length);
+                    job.progress();
+                }
+            }
+        },
+        // see: https://journal.stuffwithstuff.com/2014/12/21/rooms-and-mazes/
+        // same idea and parameters as noise4j's DungeonGenerator (see HGGrid.generateDungeon), but on the job's
+        // own Random (noise4j's one is shared by all its generators, see Generators.getRandom): the rooms are placed
+        // at random, the rest is filled with the maze, then the regions are joined and the dead ends are removed
+        DUNGEON(3) {
+            @Override
+            protected void generate(GridGenerationJob job) {
+                Dungeon dungeon = new Dungeon(job);
+                if (!dungeon.placeRooms()) { return; }
+                job.progress();
+                if (!dungeon.growMazes()) { return; }
+                job.progress();
+                if (!dungeon.connectRegions()) { return; }
+                job.progress();
+                if (!dungeon.removeDeadEnds()) { return; }
+                job.progress();
+            }
+        };
+
+        public static final float ALIVE = 1f;
+        public static final float DEAD = 0f;
+        public static final float ALIVE_CHANCE = 0.5f;
+        public static final int ITERATIONS = 4;
+        public static final int BIRTH_LIMIT = 4;
+        public static final int DEATH_LIMIT = 3;
+
+        // the amount of the progress steps (besides the first one)
+        public final int steps;
+
+        GeneratorsEnum(int steps) { this.steps = steps; }
+
+        // worker thread: should check job.cancelled from time to time and call job.progress() after each step
+        protected abstract void generate(GridGenerationJob job);
+    }
+
+    public interface Listener {
+        // both methods are called on the render thread
+        void progress(GridGenerationJob job, int done, int total);
+        void finished(GridGenerationJob job, boolean success);
+
+        class ListenerAdapter implements Listener {
+            @Override public void progress(GridGenerationJob job, int done, int total) { }
+            @Override public void finished(GridGenerationJob job, boolean success) { }
+        }
+    }
+
+    public final GeneratorsEnum generator;
+    public final long seed;
+    // the job's own grid: not shared with anything until finished
+    public final HGGrid grid;
+    public final Listener listener;
+    public final AtomicInteger done = new AtomicInteger(0);
+    public final int total;
+    public volatile boolean running = false;
+    public volatile boolean cancelled = false;
+
+    public GridGenerationJob(GeneratorsEnum generator, int size, long seed, Listener listener) {
+        this.generator = generator;
+        this.seed = seed;
+        this.grid = new HGGrid(size);
+        this.listener = listener;
+        this.total = generator.steps + 1;
+    }
+
+    /**
+     * Starts the generation on the workers (see HGWorkers.pool), the listener is notified on the render thread.
+     * The jobs are independent from each other so any amount of them could run at the same time.
+     *
+     * @return false if already started
+     */
+    public boolean submit() {
+        if (running || done.get() > 0) { return false; }
+        running = true;
+        HGWorkers.pool.execute(() -> {
+            boolean success = false;
+            // the stats and the dirty region are updated once the generation is over (see HGGrid.endBulk)
+            grid.beginBulk();
+            try {
+                generator.generate(this);
+                success = !cancelled;
+            } catch (Throwable t) {
+                HGWorkers.postToRenderThread(() -> Gdx.app.error("grid", "ERROR: " + generator + " generation failed: " + t));
+            } finally {
+                grid.endBulk();
+                final boolean result = success;
+                HGWorkers.postToRenderThread(() -> {
+                    running = false;
+                    if (listener != null) { listener.finished(this, result); }
+                });
+            }
+        });
+        return true;
+    }
+
+    // the job stops at the next check (between the rows, room attempts, mazes etc.), finished(job, false) follows
+    public void cancel() { cancelled = true; }
+
+    public boolean isRunning() { return running; }
+    public float getProgress() { return done.get() / (float) total; }
+
+    protected void progress() {
+        final int current = done.incrementAndGet();
+        if (listener != null) { HGWorkers.postToRenderThread(() -> listener.progress(this, current, total)); }
+    }
+
+    /**
+     * The dungeon's state while generated: the cells are the grid's values (WALL, FLOOR, CORRIDOR),
+     * the regions are the connected areas carved (each room and each maze is a region of its own till joined).
+     * All the methods return false if the job was cancelled in the meanwhile.
+     */
+    static class Dungeon {
+        // noise4j's DungeonGenerator defaults and the parameters of HGGrid.generateDungeon
+        public static final float WALL = 1f;
+        public static final float FLOOR = 0.5f;
+        public static final float CORRIDOR = 0f;
+        public static final int ROOM_ATTEMPTS = 500;
+        public static final int MIN_ROOM_SIZE = 9;
+        public static final int MAX_ROOM_SIZE = 75;
+        public static final int ROOM_TOLERANCE = 10; // Max difference between width and height.
+        public static final float WINDING_CHANCE = 0.15f;
+        public static final float RANDOM_CONNECTOR_CHANCE = 0.01f;
+
+        // right, down, left, up
+        private static final int[] DX = { 1, 0, -1, 0 };
+        private static final int[] DZ = { 0, 1, 0, -1 };
+
+        final GridGenerationJob job;
+        final Random random;
+        final int width;
+        final int height;
+        final float[] cells;
+        // by the cell index: the region carved (-1 for the walls)
+        final int[] regions;
+        int regionCount = 0;
+        int roomCount = 0;
+        // the rooms as x, z, width, height
+        final IntArray rooms = new IntArray();
+
+        Dungeon(GridGenerationJob job) {
+            this.job = job;
+            this.random = new Random(job.seed);
+            this.width = job.grid.getWidth();
+            this.height = job.grid.getHeight();
+            this.cells = job.grid.getArray();
+            this.regions = new int[cells.length];
+            Arrays.fill(cells, WALL);
+            Arrays.fill(regions, -1);
+        }
+
+        // odd sizes at odd positions: the rooms and the mazes share the same lattice, so the walls between are 1 cell
+        boolean placeRooms() {
+            int maxSize = Math.min(MAX_ROOM_SIZE, Math.min(width, height) - 2);
+            if (maxSize % 2 == 0) { maxSize--; }
+            if (maxSize < MIN_ROOM_SIZE) { return true; }
+            for (int attempt = 0; attempt < ROOM_ATTEMPTS; attempt++) {
+                if (job.cancelled) { return false; }
+                int roomWidth = toOdd(MIN_ROOM_SIZE + random.nextInt(maxSize - MIN_ROOM_SIZE + 1));
+                int roomHeight = toOdd(roomWidth + random.nextInt(2 * ROOM_TOLERANCE + 1) - ROOM_TOLERANCE);
+                roomWidth = Math.min(roomWidth, maxSize);
+                roomHeight = Math.max(MIN_ROOM_SIZE, Math.min(roomHeight, maxSize));
+                if (roomWidth > width - 2 || roomHeight > height - 2) { continue; }
+                int x = 1 + 2 * random.nextInt((width - roomWidth) / 2);
+                int z = 1 + 2 * random.nextInt((height - roomHeight) / 2);
+                if (overlaps(x, z, roomWidth, roomHeight)) { continue; }
+
+                rooms.add(x, z, roomWidth, roomHeight);
+                int region = regionCount++;
+                for (int rz = z; rz < z + roomHeight; rz++) {
+                    for (int rx = x; rx < x + roomWidth; rx++) { carve(rx, rz, FLOOR, region); }
+                }
+            }
+            roomCount = regionCount;
+            return true;
+        }
+
+        private boolean overlaps(int x, int z, int w, int h) {
+            for (int i = 0; i < rooms.size; i += 4) {
+                // at least a wall in between
+                if (x <= rooms.get(i) + rooms.get(i + 2) && rooms.get(i) <= x + w
+                        && z <= rooms.get(i + 1) + rooms.get(i + 3) && rooms.get(i + 1) <= z + h) { return true; }
+            }
+            return false;
+        }
+
+        // the growing tree maze from every odd cell not carved yet
+        boolean growMazes() {
+            IntArray stack = new IntArray();
+            for (int z = 1; z < height - 1; z += 2) {
+                if (job.cancelled) { return false; }
+                for (int x = 1; x < width - 1; x += 2) {
+                    if (cells[x + z * width] != WALL) { continue; }
+                    int region = regionCount++;
+                    carve(x, z, CORRIDOR, region);
+                    stack.add(x + z * width);
+                    int lastDir = -1;
+                    int[] unmade = new int[4];
+                    while (stack.size > 0) {
+                        int cell = stack.peek();
+                        int cx = cell % width, cz = cell / width;
+                        int count = 0;
+                        for (int dir = 0; dir < 4; dir++) { if (canCarve(cx, cz, dir)) { unmade[count++] = dir; } }
+                        if (count == 0) { stack.pop(); lastDir = -1; continue; }
+
+                        boolean straight = false;
+                        for (int i = 0; i < count; i++) { straight |= unmade[i] == lastDir; }
+                        int dir = straight && random.nextFloat() >= WINDING_CHANCE ? lastDir : unmade[random.nextInt(count)];
+                        carve(cx + DX[dir], cz + DZ[dir], CORRIDOR, region);
+                        carve(cx + 2 * DX[dir], cz + 2 * DZ[dir], CORRIDOR, region);
+                        stack.add(cx + 2 * DX[dir] + (cz + 2 * DZ[dir]) * width);
+                        lastDir = dir;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean canCarve(int x, int z, int dir) {
+            int nx = x + 2 * DX[dir], nz = z + 2 * DZ[dir];
+            if (nx < 1 || nz < 1 || nx >= width - 1 || nz >= height - 1) { return false; }
+            return cells[nx + nz * width] == WALL;
+        }
+
+        // the walls between two (or more) different regions are the connectors: the spanning tree of the regions
+        // is made out of the random connectors, the rest are opened by chance (so there are some loops)
+        boolean connectRegions() {
+            if (regionCount < 2) { return true; }
+            IntArray connectors = new IntArray();
+            int[] around = new int[4];
+            for (int z = 1; z < height - 1; z++) {
+                for (int x = 1; x < width - 1; x++) {
+                    if (cells[x + z * width] == WALL && regionsAround(x, z, null, around) > 1) { connectors.add(x + z * width); }
+                }
+            }
+
+            // merged[region]: the region it's been merged into
+            int[] merged = new int[regionCount];
+            for (int i = 0; i < merged.length; i++) { merged[i] = i; }
+            int open = regionCount;
+            while (connectors.size > 0 && open > 1) {
+                if (job.cancelled) { return false; }
+                int connector = connectors.get(random.nextInt(connectors.size));
+                int cx = connector % width, cz = connector / width;
+                int count = regionsAround(cx, cz, merged, around);
+                carve(cx, cz, FLOOR, around[0]);
+
+                // the rest of the regions around are merged into the first one
+                for (int i = 0; i < merged.length; i++) {
+                    for (int j = 1; j < count; j++) { if (merged[i] == around[j]) { merged[i] = around[0]; } }
+                }
+                open -= count - 1;
+
+                // the connectors not needed anymore: next to the one just opened (no double doors)
+                // or within the same region now (opened by chance)
+                for (int i = connectors.size - 1; i >= 0; i--) {
+                    int other = connectors.get(i);
+                    int ox = other % width, oz = other / width;
+                    boolean adjacent = Math.abs(ox - cx) + Math.abs(oz - cz) < 2;
+                    if (!adjacent) {
+                        int regionsCount = regionsAround(ox, oz, merged, around);
+                        if (regionsCount > 1) { continue; }
+                        if (random.nextFloat() < RANDOM_CONNECTOR_CHANCE) { carve(ox, oz, FLOOR, around[0]); }
+                    }
+                    connectors.removeIndex(i);
+                }
+            }
+            return true;
+        }
+
+        // the distinct regions (merged if given) of the 4 neighbours
+        private int regionsAround(int x, int z, int[] merged, int[] out) {
+            int count = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                int region = regions[x + DX[dir] + (z + DZ[dir]) * width];
+                if (region < 0) { continue; }
+                if (merged != null) { region = merged[region]; }
+                boolean known = false;
+                for (int i = 0; i < count; i++) { known |= out[i] == region; }
+                if (!known) { out[count++] = region; }
+            }
+            return count;
+        }
+
+        // the cells with a single exit (or none) are filled back in, then their neighbours are checked again:
+        // each dead end corridor is walked back once, O(cells)
+        boolean removeDeadEnds() {
+            IntArray candidates = new IntArray();
+            for (int z = 1; z < height - 1; z++) {
+                for (int x = 1; x < width - 1; x++) { if (cells[x + z * width] != WALL) { candidates.add(x + z * width); } }
+            }
+            while (candidates.size > 0) {
+                if ((candidates.size & 0xFFF) == 0 && job.cancelled) { return false; }
+                int i = candidates.pop();
+                if (cells[i] == WALL || exits(i) > 1) { continue; }
+                cells[i] = WALL;
+                regions[i] = -1;
+                for (int dir = 0; dir < 4; dir++) {
+                    int next = i + DX[dir] + DZ[dir] * width;
+                    if (cells[next] != WALL) { candidates.add(next); }
+                }
+            }
+            return !job.cancelled;
+        }
+
+        // the cells carved are 1 cell off the border at least, so the neighbours are always within the grid
+        private int exits(int i) {
+            int exits = 0;
+            for (int dir = 0; dir < 4; dir++) { if (cells[i + DX[dir] + DZ[dir] * width] != WALL) { exits++; } }
+            return exits;
+        }
+
+        private void carve(int x, int z, float value, int region) {
+            cells[x + z * width] = value;
+            regions[x + z * width] = region;
+        }
+
+        private static int toOdd(int value) { return value % 2 == 0 ? value + 1 : value; }
+    }
+
+    @Override
+    public String toString() { return generator + " (seed: " + seed + ")"; }
+}
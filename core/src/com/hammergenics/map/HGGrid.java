@@ -23,12 +23,14 @@ import com.github.czyzby.noise4j.map.generator.cellular.CellularAutomataGenerato
 import com.github.czyzby.noise4j.map.generator.noise.NoiseGenerator;
 import com.github.czyzby.noise4j.map.generator.room.dungeon.DungeonGenerator;
 import com.github.czyzby.noise4j.map.generator.util.Generators;
+import com.hammergenics.core.utils.HGWorkers;
 
-import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.hammergenics.HGEngine.MAP_CENTER;
-import static java.math.BigDecimal.ROUND_HALF_UP;
 
 /**
  * Add description here
@@ -39,9 +41,30 @@ public class HGGrid extends Grid {
     // these are to trick NoiseGenerator to generate the noise at the custom position (x0,z0)
     public int x0, z0;
 
+    // statistics: kept up to date by set(x, y, value), recalculated in one pass after the bulk operations
+    // (noise generation, rounding etc.) or lazily (see getMin/getMax/getMid) once marked dirty
     public float min;
     public float max;
     public float mid;
+    protected boolean statsDirty = true;
+    // optional height distribution over [min, max], see setHistogramBins
+    public static final int HISTOGRAM_BINS = 64;
+    public int[] histogram = null;
+    protected boolean histogramDirty = true;
+    // the rectangle (local vertex coordinates, inclusive) modified since the last clearDirty(),
+    // so the meshes, terrain parts, graph nodes etc. are rebuilt only for the affected region
+    protected int dirtyX0 = Integer.MAX_VALUE, dirtyZ0 = Integer.MAX_VALUE;
+    protected int dirtyX1 = Integer.MIN_VALUE, dirtyZ1 = Integer.MIN_VALUE;
+    // incremented on every markDirty (never reset), so the copies of the heights (e.g. the meshes being built
+    // on the workers, see TerrainMeshBuilder) could tell if they are still up to date
+    public int modCount = 0;
+    // the samples generated by the row-wise engines so far (see NoiseEngine), all grids
+    public static final AtomicLong generatedSamples = new AtomicLong(0L);
+    // false during the bulk writes through set(x, y, value) (noise4j's generators write a sample at a time):
+    // no per sample stats and dirty tracking, see beginBulk/endBulk
+    protected boolean tracking = true;
+    // min/max pyramid for the ray queries (created on the first use), keeps its own dirty rectangle
+    protected HeightPyramid pyramid = null;
     public float yScale = 1f;
     public float step = -1f;
     Array<NoiseStageInfo> noiseStages = new Array<>(true, 16, NoiseStageInfo.class);
@@ -59,7 +82,14 @@ public class HGGrid extends Grid {
     public float get(int x, int y) { return super.get(x0 + x, z0 + y); }
 
     @Override
-    public float set(int x, int y, float value) { return super.set(x0 + x, z0 + y, value); }
+    public float set(int x, int y, float value) {
+        if (!tracking) { super.set(x0 + x, z0 + y, value); return value; }
+        float old = get(x, y);
+        super.set(x0 + x, z0 + y, value);
+        updateStats(old, value);
+        if (old != value) { markDirty(x, y); }
+        return value;
+    }
 
     @Override
     public boolean isIndexValid(int x, int y) { return super.isIndexValid(x - x0, y - z0); }
@@ -81,11 +111,110 @@ public class HGGrid extends Grid {
     public int getHeight() { return getHeight(false); }
     public int getHeight(boolean cells) { return cells ? super.getHeight() - 1 : super.getHeight(); }
 
+    // Bulk access: noise4j keeps the values in one row-major float array [x + z * width] with no offsets
+    // (x0, z0) applied, so the loops below and in the callers go over the rows directly, with no
+    // per-cell offset arithmetic of get/set overrides.
+    public int rowOffset(int z) { return z * getWidth(); }
+
+    // Shared edges: the grid owns the samples [0, width - 1) x [0, height - 1) only, the last column and row
+    // are the ghosts - the copies of the first column/row of the +x/+z neighbours (the owners), so every sample
+    // is generated once and the neighbours match along the edges by construction (see copyGhosts)
+    public int getOwnedWidth() { return getWidth() - 1; }
+    public int getOwnedHeight() { return getHeight() - 1; }
+
+    public float[] getRow(int z, float[] out) { return getRow(z, out, 0); }
+    public float[] getRow(int z, float[] out, int offset) {
+        System.arraycopy(getArray(), rowOffset(z), out, offset, getWidth());
+        return out;
+    }
+
+    public void setRow(int z, float[] values) { setRow(z, values, 0); }
+    public void setRow(int z, float[] values, int offset) {
+        System.arraycopy(values, offset, getArray(), rowOffset(z), getWidth());
+        invalidateStats();
+        markDirty(0, z, getWidth() - 1, z);
+    }
+
+    // quantized-step mode: the heights as the amount of steps (meaningful only after roundToStep)
+    public int[] toUnits(int[] out) {
+        if (step <= 0f) { return out; }
+        Quantizer quantizer = new Quantizer(step);
+        float[] values = getArray();
+        for (int i = 0; i < values.length; i++) { out[i] = quantizer.toUnits(values[i]); }
+        return out;
+    }
+
+    public HeightField toHeightField(boolean direct) {
+        return new HeightField(getWidth(), getHeight(), direct).copyFrom(this);
+    }
+
+    // the stats are invalidated and the whole grid is marked dirty once by endBulk
+    public void beginBulk() { tracking = false; }
+    public void endBulk() {
+        tracking = true;
+        invalidateStats();
+        markDirty();
+    }
+
+    public void set(HeightField heightField) { heightField.copyTo(this); invalidateStats(); markDirty(); }
+
+    public void markDirty() { markDirty(0, 0, getWidth() - 1, getHeight() - 1); }
+    public void markDirty(int x, int z) { markDirty(x, z, x, z); }
+    public void markDirty(int xFrom, int zFrom, int xTo, int zTo) {
+        dirtyX0 = Math.max(0, Math.min(dirtyX0, xFrom));
+        dirtyZ0 = Math.max(0, Math.min(dirtyZ0, zFrom));
+        dirtyX1 = Math.min(getWidth() - 1, Math.max(dirtyX1, xTo));
+        dirtyZ1 = Math.min(getHeight() - 1, Math.max(dirtyZ1, zTo));
+        modCount++;
+        if (pyramid != null) { pyramid.markDirty(xFrom, zFrom, xTo, zTo); }
+    }
+    public boolean isDirty() { return dirtyX0 <= dirtyX1 && dirtyZ0 <= dirtyZ1; }
+    public void clearDirty() {
+        dirtyX0 = dirtyZ0 = Integer.MAX_VALUE;
+        dirtyX1 = dirtyZ1 = Integer.MIN_VALUE;
+    }
+    public int getDirtyX0() { return dirtyX0; }
+    public int getDirtyZ0() { return dirtyZ0; }
+    public int getDirtyX1() { return dirtyX1; }
+    public int getDirtyZ1() { return dirtyZ1; }
+
+    /**
+     * Bilinear interpolation of the heights at the local (x, z), clamped to the grid. No exceptions, no allocations.
+     * NOTE: the mesh is triangulated (see Models.createGridMeshPart), so within a cell
+     *       the result may differ from the rendered surface by the cell's "twist".
+     */
+    public float getBilinear(float x, float z) {
+        int width = getWidth();
+        int height = getHeight();
+        float[] values = getArray();
+        x = Math.max(0f, Math.min(x, width - 1));
+        z = Math.max(0f, Math.min(z, height - 1));
+        int ix = Math.min((int) x, width - 2);
+        int iz = Math.min((int) z, height - 2);
+        if (ix < 0 || iz < 0) { return values.length > 0 ? values[0] : 0f; } // a single row/column grid
+        float fx = x - ix;
+        float fz = z - iz;
+        int row0 = rowOffset(iz);
+        int row1 = rowOffset(iz + 1);
+        float y0 = values[row0 + ix] + (values[row0 + ix + 1] - values[row0 + ix]) * fx;
+        float y1 = values[row1 + ix] + (values[row1 + ix + 1] - values[row1 + ix]) * fx;
+        return y0 + (y1 - y0) * fz;
+    }
+
+    // the regions changed since the last call are updated first (see HeightPyramid.refresh)
+    public HeightPyramid getPyramid() {
+        if (pyramid == null) { pyramid = new HeightPyramid(this); }
+        pyramid.refresh();
+        return pyramid;
+    }
+
     public int getX0() { return getX0(true); }
     public int getX0(boolean adjCenter) { return adjCenter ? x0 - MAP_CENTER : x0; }
     public int getZ0() { return getZ0(true); }
     public int getZ0(boolean adjCenter) { return adjCenter ? z0 - MAP_CENTER : z0; }
-    public float getMid() { return mid; }
+    public float getMin() { if (statsDirty) { calculateMinMaxMid(); } return min; }
+    public float getMax() { if (statsDirty) { calculateMinMaxMid(); } return max; }
+    public float getMid() { if (statsDirty) { calculateMinMaxMid(); } return mid; }
 
     public static Rectangle getCombinedBounds(Array<HGGrid> grids, Rectangle out) {
         if (out == null) { return null; }
@@ -104,29 +233,123 @@ public class HGGrid extends Grid {
 
     public void discard() {
         fill(0f);
+        markDirty();
         min = max = mid = 0f;
+        statsDirty = false;
+        histogramDirty = true;
+    }
+
+    // should be called after the values are changed in bulk (bypassing set(x, y, value)): fill, getArray() etc.
+    public void invalidateStats() {
+        statsDirty = true;
+        histogramDirty = true;
     }
 
+    // single pass: O(n)
     public void calculateMinMaxMid() {
-        float[] values = new float[getArray().length];
-        System.arraycopy(getArray(), 0, values, 0, values.length);
-        Arrays.sort(values, 0, values.length);
-        min = values[0];
-        max = values[values.length - 1];
-        int scale = new BigDecimal(Float.toString(min)).scale();
-        mid = BigDecimal.valueOf((max + min)/2f).setScale(scale, ROUND_HALF_UP).floatValue();
+        float[] values = getArray();
+        float min = values[0];
+        float max = values[0];
+        for (int i = 1; i < values.length; i++) {
+            float value = values[i];
+            if (value < min) { min = value; } else if (value > max) { max = value; }
+        }
+        this.min = min;
+        this.max = max;
+        calculateMid();
+        statsDirty = false;
+        histogramDirty = true;
+    }
+
+    protected void calculateMid() { mid = Quantizer.roundHalfUp((max + min)/2f, Quantizer.scaleOf(min)); }
+
+    // O(1) in most cases: only when the current min (max) value goes up (down) the stats are marked dirty
+    protected void updateStats(float old, float value) {
+        if (statsDirty) { return; }
+        boolean changed = false;
+        if (value < min) { min = value; changed = true; }
+        else if (old == min && value > old) { invalidateStats(); return; }
+        if (value > max) { max = value; changed = true; }
+        else if (old == max && value < old) { invalidateStats(); return; }
+
+        if (changed) {
+            calculateMid();
+            histogramDirty = true;
+        } else if (histogram != null && !histogramDirty) {
+            histogram[toBin(old)]--;
+            histogram[toBin(value)]++;
+        }
+    }
+
+    public void setHistogramBins(int bins) {
+        histogram = bins > 0 ? new int[bins] : null;
+        histogramDirty = true;
+    }
+
+    public int[] getHistogram() {
+        if (histogram == null) { return null; }
+        if (statsDirty) { calculateMinMaxMid(); }
+        if (histogramDirty) {
+            Arrays.fill(histogram, 0);
+            float[] values = getArray();
+            for (int i = 0; i < values.length; i++) { histogram[toBin(values[i])]++; }
+            histogramDirty = false;
+        }
+        return histogram;
+    }
+
+    protected int toBin(float value) {
+        if (max <= min) { return 0; }
+        int bin = (int) ((value - min) / (max - min) * histogram.length);
+        return bin < 0 ? 0 : (bin >= histogram.length ? histogram.length - 1 : bin);
+    }
+
+    // the amount of values below the value (linear within a bin), the histogram is enabled if it's not yet
+    public float countBelow(float value) {
+        if (histogram == null) { setHistogramBins(HISTOGRAM_BINS); }
+        int[] histogram = getHistogram();
+        if (value < min) { return 0f; }
+        if (value >= max) { return getArray().length; }
+        float binSize = (max - min) / histogram.length;
+        float position = (value - min) / binSize;
+        int bin = Math.min((int) position, histogram.length - 1);
+        float count = 0f;
+        for (int i = 0; i < bin; i++) { count += histogram[i]; }
+        return count + histogram[bin] * (position - bin);
+    }
+
+    /**
+     * @param grids grids to take the values from (the histograms are enabled on demand, see setHistogramBins)
+     * @param p     percentile: [0, 1]
+     * @return the approximate (within the bin size) value of the percentile over all grids
+     */
+    public static float getPercentile(Array<HGGrid> grids, float p) {
+        float lo = Float.MAX_VALUE, hi = -Float.MAX_VALUE;
+        long total = 0;
+        for (HGGrid grid: grids) {
+            lo = Math.min(lo, grid.getMin());
+            hi = Math.max(hi, grid.getMax());
+            total += grid.getArray().length;
+        }
+        if (total == 0 || hi <= lo) { return lo; }
+
+        float target = p * total;
+        // bisection over the value: each step is O(bins) per grid
+        for (int i = 0; i < 24; i++) {
+            float value = (lo + hi) / 2f;
+            float count = 0f;
+            for (HGGrid grid: grids) { count += grid.countBelow(value); }
+            if (count < target) { lo = value; } else { hi = value; }
+        }
+        return (lo + hi) / 2f;
     }
 
     public void roundToDigits(int digits) {
         if (digits <= 0) { return; }
         double pow10 = Math.pow(10f, digits);
-        for (int x = 0; x < getWidth(); x++) {
-            for (int y = 0; y < getHeight(); y++) {
-                float value = get(x, y);
-                value = Math.round(value * pow10) / (float)pow10;
-                set(x, y, value);
-            }
-        }
+        float[] values = getArray();
+        for (int i = 0; i < values.length; i++) { values[i] = Math.round(values[i] * pow10) / (float)pow10; }
+        markDirty();
 
         calculateMinMaxMid();
     }
@@ -134,27 +357,28 @@ public class HGGrid extends Grid {
     public void roundToStep(float step) {
         if (step >= 1f || step <= 0f) { return; }
         this.step = step;
-        int scale = new BigDecimal(Float.toString(step)).scale();
-        for (int x = 0; x < getWidth(); x++) {
-            for (int y = 0; y < getHeight(); y++) {
-                float value = get(x, y);
-                float mod = value % step;
-                value -= mod;
-                if (mod > step/2f) { value += step; }
-                value = BigDecimal.valueOf(value).setScale(scale, ROUND_HALF_UP).floatValue();
-                set(x, y, value);
-            }
-        }
+        Quantizer quantizer = new Quantizer(step);
+        float[] values = getArray();
+        for (int i = 0; i < values.length; i++) { values[i] = quantizer.round(values[i]); }
+        markDirty();
 
         calculateMinMaxMid();
     }
 
     // see: https://github.com/czyzby/noise4j
-    public void generateNoise(float yScale, Array<NoiseStageInfo> stages) {
+    public void generateNoise(float yScale, Array<NoiseStageInfo> stages) { generateNoise(yScale, stages, true); }
+
+    /**
+     * @param ghosts false - the ghost samples (the last column and row, see getOwnedWidth) are left to be copied
+     *               from their owners (see copyGhosts) or generated separately (see generateGhosts).
+     *               NOTE: noise4j's NoiseGenerator (NoiseEnginesEnum.NOISE4J) always generates the whole grid.
+     */
+    public void generateNoise(float yScale, Array<NoiseStageInfo> stages, boolean ghosts) {
         if (stages.size == 0) { return; }
         final NoiseGenerator noiseGenerator = new NoiseGenerator();
 
         fill(0f);
+        markDirty();
         this.yScale = yScale;
         this.step = -1f;
 
@@ -163,7 +387,11 @@ public class HGGrid extends Grid {
 
         for (NoiseStageInfo stage: stages) {
             if (stage.seed < 0) { stage.seed = Generators.rollSeed(); }
-            noiseStage(this, noiseGenerator, stage.radius, stage.modifier, stage.seed);
+            if (stage.engine.engine == null) {
+                noiseStage(this, noiseGenerator, stage.radius, stage.modifier, stage.seed);
+            } else if (stage.radius > 0) { // the radius is the feature size: the frequency is 1 / radius
+                noiseStage(stage, ghosts);
+            }
         }
 
         calculateMinMaxMid();
@@ -183,16 +411,134 @@ public class HGGrid extends Grid {
         // Seed ensures randomness, can be saved if you feel the need to
         // generate the same map in the future.
         noiseGenerator.setSeed(seed);
-        noiseGenerator.generate(grid);
+        HGGrid hgGrid = grid instanceof HGGrid ? (HGGrid) grid : null;
+        if (hgGrid != null) { hgGrid.beginBulk(); }
+        try { noiseGenerator.generate(grid); }
+        finally { if (hgGrid != null) { hgGrid.endBulk(); } }
         return seed;
     }
 
+    /**
+     * Adds the noise of the row-wise engine (see NoiseEngine) to the grid: the rows are split between the workers
+     * (see HGWorkers.pool), the values depend on the grid's position and the stage only (see HGGrid.getX0(false)),
+     * so the neighbouring grids match along the shared edges.
+     *
+     * @param ghosts false - the owned samples only (see getOwnedWidth)
+     */
+    public void noiseStage(NoiseStageInfo stage, boolean ghosts) {
+        NoiseRowsAction action = ghosts ? new NoiseRowsAction(stage, 0, getHeight(), getWidth())
+                                        : new NoiseRowsAction(stage, 0, getOwnedHeight(), getOwnedWidth());
+        // already on a worker (e.g. ParallelNoiseGenerator): the rows are forked within the same pool
+        if (ForkJoinTask.inForkJoinPool()) { action.invoke(); } else { HGWorkers.pool.invoke(action); }
+        invalidateStats();
+        markDirty();
+    }
+
+    private class NoiseRowsAction extends RecursiveAction {
+        // the rows per task
+        private static final int ROWS = 16;
+        private final NoiseStageInfo stage;
+        private final int zFrom;
+        private final int zTo;
+        private final int count;
+
+        public NoiseRowsAction(NoiseStageInfo stage, int zFrom, int zTo, int count) {
+            this.stage = stage;
+            this.zFrom = zFrom;
+            this.zTo = zTo;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if (zTo - zFrom > ROWS) {
+                int mid = (zFrom + zTo) >>> 1;
+                invokeAll(new NoiseRowsAction(stage, zFrom, mid, count), new NoiseRowsAction(stage, mid, zTo, count));
+                return;
+            }
+            float[] values = getArray();
+            for (int z = zFrom; z < zTo; z++) {
+                stage.engine.engine.addRow(stage, x0, z0 + z, values, rowOffset(z), count);
+            }
+            generatedSamples.addAndGet((long) (zTo - zFrom) * count);
+        }
+    }
+
+    /**
+     * Generates the ghost samples which have no owner to be copied from (see copyGhosts) with the stages
+     * the grid was generated with (the row-wise engines only, noise4j's NoiseGenerator has done the whole grid).
+     *
+     * @param column the last column (except the corner)
+     * @param row    the last row (except the corner)
+     * @param corner the last sample
+     */
+    public void generateGhosts(boolean column, boolean row, boolean corner) {
+        if (!column && !row && !corner) { return; }
+        float[] values = getArray();
+        int gx = getOwnedWidth();
+        int gz = getOwnedHeight();
+        for (NoiseStageInfo stage: noiseStages) {
+            if (stage.engine.engine == null || stage.radius <= 0) { continue; }
+            NoiseEngine engine = stage.engine.engine;
+            if (column) {
+                for (int z = 0; z < gz; z++) { engine.addRow(stage, x0 + gx, z0 + z, values, rowOffset(z) + gx, 1); }
+                generatedSamples.addAndGet(gz);
+            }
+            if (row) {
+                engine.addRow(stage, x0, z0 + gz, values, rowOffset(gz), gx);
+                generatedSamples.addAndGet(gx);
+            }
+            if (corner) {
+                engine.addRow(stage, x0 + gx, z0 + gz, values, rowOffset(gz) + gx, 1);
+                generatedSamples.incrementAndGet();
+            }
+        }
+        invalidateStats();
+        markDirty(column || corner ? gx : 0, column ? 0 : gz, gx, gz);
+    }
+
+    /**
+     * Copies the ghost samples from their owners: the first column of the right (+x) neighbour, the first row
+     * of the bottom (+z) one and the first sample of the diagonal one. Only the changed samples are marked dirty.
+     *
+     * @param right  null - the column is left as is
+     * @param bottom null - the row is left as is
+     * @param corner null - the corner is left as is
+     * @return true if any sample has changed
+     */
+    public boolean copyGhosts(HGGrid right, HGGrid bottom, HGGrid corner) {
+        float[] values = getArray();
+        int gx = getOwnedWidth();
+        int gz = getOwnedHeight();
+        boolean changed = false;
+        if (right != null) {
+            float[] other = right.getArray();
+            for (int z = 0; z < gz; z++) { changed |= copyGhost(values, rowOffset(z) + gx, other[right.rowOffset(z)], gx, z); }
+        }
+        if (bottom != null) {
+            float[] other = bottom.getArray();
+            for (int x = 0; x < gx; x++) { changed |= copyGhost(values, rowOffset(gz) + x, other[x], x, gz); }
+        }
+        if (corner != null) { changed |= copyGhost(values, rowOffset(gz) + gx, corner.getArray()[0], gx, gz); }
+        if (changed) { invalidateStats(); }
+        return changed;
+    }
+
+    private boolean copyGhost(float[] values, int index, float value, int x, int z) {
+        if (values[index] == value) { return false; }
+        values[index] = value;
+        markDirty(x, z);
+        return true;
+    }
+
     // see: https://github.com/czyzby/noise4j
     public void generateCellular() {
         final CellularAutomataGenerator cellularGenerator = new CellularAutomataGenerator();
         cellularGenerator.setAliveChance(0.5f);
         cellularGenerator.setIterationsAmount(4);
-        cellularGenerator.generate(this);
+        beginBulk();
+        try { cellularGenerator.generate(this); }
+        finally { endBulk(); }
     }
 
     // see: https://github.com/czyzby/noise4j
@@ -203,12 +549,31 @@ public class HGGrid extends Grid {
         dungeonGenerator.setMaxRoomSize(75);
         dungeonGenerator.setTolerance(10); // Max difference between width and height.
         dungeonGenerator.setMinRoomSize(9);
-        dungeonGenerator.generate(this);
+        beginBulk();
+        try { dungeonGenerator.generate(this); }
+        finally { endBulk(); }
     }
 
     public static class NoiseStageInfo {
         public int radius = 32;
         public float modifier = 1f;
         public int seed = -1;
+        public NoiseEnginesEnum engine = NoiseEnginesEnum.NOISE4J;
+        // NoiseEnginesEnum.FBM and NoiseEnginesEnum.RIDGED only
+        public int octaves = 5;
+        public float lacunarity = 2f;
+        public float gain = 0.5f;
+
+        public NoiseStageInfo cpy() {
+            NoiseStageInfo out = new NoiseStageInfo();
+            out.radius = radius;
+            out.modifier = modifier;
+            out.seed = seed;
+            out.engine = engine;
+            out.octaves = octaves;
+            out.lacunarity = lacunarity;
+            out.gain = gain;
+            return out;
+        }
     }
 }
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HeightField {
+    public final int width;
+    public final int height;
+    // row-major: [x + z * width], no offsets (x0, z0) applied
+    public final FloatBuffer buffer;
+
+    public HeightField(int width, int height) { this(width, height, true); }
+
+    public HeightField(int width, int height, boolean direct) {
+        // see: https://libgdx.badlogicgames.com/ci/nightlies/docs/api/com/badlogic/gdx/utils/BufferUtils.html
+        // BufferUtils.newFloatBuffer returns the direct buffer in the native order
+        this(width, height, direct ? BufferUtils.newFloatBuffer(width * height) : FloatBuffer.allocate(width * height));
+    }
+
+    public HeightField(int width, int height, FloatBuffer buffer) {
+        if (buffer.capacity() < width * height) {
+            throw new GdxRuntimeException("buffer is too small: " + buffer.capacity() + " < " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.buffer = buffer;
+    }
+
+    // see: https://docs.oracle.com/javase/8/docs/api/java/nio/channels/FileChannel.html#map-java.nio.channels.FileChannel.MapMode-long-long-
+    // A mapping, once established, is not dependent upon the file channel that was used to create it.
+    // Closing the channel, in particular, has no effect upon the validity of the mapping.
+    public static HeightField map(File file, long position, int width, int height, boolean readOnly) {
+        long size = (long) width * height * Float.BYTES;
+        try (RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(
+                    readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, position, size);
+            mapped.order(ByteOrder.nativeOrder());
+            return new HeightField(width, height, mapped.asFloatBuffer());
+        } catch (IOException e) {
+            throw new GdxRuntimeException("unable to map: " + file + " position: " + position + " size: " + size, e);
+        }
+    }
+
+    public boolean isDirect() { return buffer.isDirect(); }
+
+    public int rowOffset(int z) { return z * width; }
+
+    public float get(int x, int z) { return buffer.get(x + z * width); }
+    public void set(int x, int z, float value) { buffer.put(x + z * width, value); }
+
+    // NOTE: the bulk operations below use the position of the buffer, so they are not thread safe
+    public float[] getRow(int z, float[] out) { return getRow(z, out, 0); }
+    public float[] getRow(int z, float[] out, int offset) {
+        buffer.position(rowOffset(z));
+        buffer.get(out, offset, width);
+        buffer.position(0);
+        return out;
+    }
+
+    public void putRow(int z, float[] values) { putRow(z, values, 0); }
+    public void putRow(int z, float[] values, int offset) {
+        buffer.position(rowOffset(z));
+        buffer.put(values, offset, width);
+        buffer.position(0);
+    }
+
+    public HeightField copyFrom(float[] values) {
+        buffer.position(0);
+        buffer.put(values, 0, width * height);
+        buffer.position(0);
+        return this;
+    }
+
+    // the rectangle (inclusive) only, the values are row-major [x + z * width] as well
+    public HeightField copyFrom(float[] values, int xFrom, int zFrom, int xTo, int zTo) {
+        for (int z = zFrom; z <= zTo; z++) {
+            buffer.position(rowOffset(z) + xFrom);
+            buffer.put(values, rowOffset(z) + xFrom, xTo - xFrom + 1);
+        }
+        buffer.position(0);
+        return this;
+    }
+
+    public float[] copyTo(float[] out) {
+        buffer.position(0);
+        buffer.get(out, 0, width * height);
+        buffer.position(0);
+        return out;
+    }
+
+    public HeightField copyFrom(HGGrid grid) {
+        if (grid.getWidth() != width || grid.getHeight() != height) {
+            throw new GdxRuntimeException("size mismatch: " + grid.getWidth() + "x" + grid.getHeight() + " vs " + width + "x" + height);
+        }
+        return copyFrom(grid.getArray());
+    }
+
+    public void copyTo(HGGrid grid) {
+        if (grid.getWidth() != width || grid.getHeight() != height) {
+            throw new GdxRuntimeException("size mismatch: " + grid.getWidth() + "x" + grid.getHeight() + " vs " + width + "x" + height);
+        }
+        copyTo(grid.getArray());
+    }
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HeightPyramid {
+    // min/max mip pyramid over the cells of the grid: level 0 is the cells themselves (min/max of the 4 corners),
+    // every next level merges the 2x2 nodes of the previous one, the last level is a single node
+    // see: Tevs et al., "Maximum Mipmaps for Fast, Accurate, and Scalable Dynamic Height Field Rendering"
+    public final HGGrid grid;
+    public final int levels;
+    public final int[] widths;
+    public final int[] heights;
+    public final float[][] mins;
+    public final float[][] maxs;
+
+    // the vertices (local, inclusive) changed since the last refresh, see HGGrid.markDirty
+    protected int dirtyX0 = Integer.MAX_VALUE, dirtyZ0 = Integer.MAX_VALUE;
+    protected int dirtyX1 = Integer.MIN_VALUE, dirtyZ1 = Integer.MIN_VALUE;
+
+    public HeightPyramid(HGGrid grid) {
+        this.grid = grid;
+        int w = grid.getWidth(true);
+        int h = grid.getHeight(true);
+
+        int levels = 0;
+        if (w > 0 && h > 0) {
+            for (int lw = w, lh = h; ; lw = (lw + 1) / 2, lh = (lh + 1) / 2) {
+                levels++;
+                if (lw == 1 && lh == 1) { break; }
+            }
+        }
+        this.levels = levels;
+        widths = new int[levels];
+        heights = new int[levels];
+        mins = new float[levels][];
+        maxs = new float[levels][];
+        for (int l = 0, lw = w, lh = h; l < levels; l++, lw = (lw + 1) / 2, lh = (lh + 1) / 2) {
+            widths[l] = lw;
+            heights[l] = lh;
+            mins[l] = new float[lw * lh];
+            maxs[l] = new float[lw * lh];
+        }
+
+        markDirty(0, 0, grid.getWidth() - 1, grid.getHeight() - 1);
+    }
+
+    public void markDirty(int xFrom, int zFrom, int xTo, int zTo) {
+        dirtyX0 = Math.min(dirtyX0, xFrom);
+        dirtyZ0 = Math.min(dirtyZ0, zFrom);
+        dirtyX1 = Math.max(dirtyX1, xTo);
+        dirtyZ1 = Math.max(dirtyZ1, zTo);
+    }
+
+    public boolean isDirty() { return dirtyX0 <= dirtyX1 && dirtyZ0 <= dirtyZ1; }
+
+    // O(region + log(size)): only the nodes covering the vertices changed are updated
+    public void refresh() {
+        if (!isDirty() || levels == 0) { return; }
+        update(Math.max(0, dirtyX0 - 1), Math.max(0, dirtyZ0 - 1),
+                Math.min(widths[0] - 1, dirtyX1), Math.min(heights[0] - 1, dirtyZ1));
+        dirtyX0 = dirtyZ0 = Integer.MAX_VALUE;
+        dirtyX1 = dirtyZ1 = Integer.MIN_VALUE;
+    }
+
+    // the cells (inclusive) and all the nodes above them
+    public void update(int cellX0, int cellZ0, int cellX1, int cellZ1) {
+        float[] values = grid.getArray();
+        float[] min = mins[0];
+        float[] max = maxs[0];
+        int w = widths[0];
+        for (int z = cellZ0; z <= cellZ1; z++) {
+            int row0 = grid.rowOffset(z);
+            int row1 = grid.rowOffset(z + 1);
+            for (int x = cellX0; x <= cellX1; x++) {
+                float y00 = values[row0 + x], y10 = values[row0 + x + 1];
+                float y01 = values[row1 + x], y11 = values[row1 + x + 1];
+                min[z * w + x] = Math.min(Math.min(y00, y01), Math.min(y10, y11));
+                max[z * w + x] = Math.max(Math.max(y00, y01), Math.max(y10, y11));
+            }
+        }
+
+        for (int l = 1; l < levels; l++) {
+            cellX0 >>= 1; cellZ0 >>= 1; cellX1 >>= 1; cellZ1 >>= 1;
+            float[] cMin = mins[l - 1];
+            float[] cMax = maxs[l - 1];
+            int cw = widths[l - 1];
+            int ch = heights[l - 1];
+            min = mins[l];
+            max = maxs[l];
+            w = widths[l];
+            for (int z = cellZ0; z <= cellZ1; z++) {
+                for (int x = cellX0; x <= cellX1; x++) {
+                    int c = (2 * z) * cw + 2 * x;
+                    float lo = cMin[c];
+                    float hi = cMax[c];
+                    boolean right = 2 * x + 1 < cw;
+                    boolean below = 2 * z + 1 < ch;
+                    if (right) { lo = Math.min(lo, cMin[c + 1]); hi = Math.max(hi, cMax[c + 1]); }
+                    if (below) { lo = Math.min(lo, cMin[c + cw]); hi = Math.max(hi, cMax[c + cw]); }
+                    if (right && below) { lo = Math.min(lo, cMin[c + cw + 1]); hi = Math.max(hi, cMax[c + cw + 1]); }
+                    min[z * w + x] = lo;
+                    max[z * w + x] = hi;
+                }
+            }
+        }
+    }
+
+    /**
+     * The ray is in the grid's local space: x, z in cells (vertex (0, 0) at the origin), y in the raw heights.
+     * The direction doesn't have to be normalized: the result is in its units (e.g. maxT = 1 for a segment).
+     * The nodes the ray misses (by x, z or by their [min, max] heights) are skipped as a whole,
+     * the surviving cells are tested against the 2 triangles they are rendered with (see Models.createGridMeshPart).
+     * No allocations, so it could be used for the visibility checks in bulk.
+     *
+     * @return the parameter t of the first hit within [0, maxT] or -1 if there's none
+     */
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        refresh();
+        if (levels == 0) { return -1f; }
+        return intersectNode(levels - 1, 0, 0, ox, oy, oz, dx, dy, dz, maxT);
+    }
+
+    private float intersectNode(int level, int i, int j, float ox, float oy, float oz,
+                                float dx, float dy, float dz, float maxT) {
+        int size = 1 << level; // cells per node's side
+        float x0 = i * size;
+        float z0 = j * size;
+        float x1 = Math.min(x0 + size, widths[0]);
+        float z1 = Math.min(z0 + size, heights[0]);
+        int node = j * widths[level] + i;
+        if (!slabs(ox, oy, oz, dx, dy, dz, x0, mins[level][node], z0, x1, maxs[level][node], z1, maxT)) { return -1f; }
+
+        if (level == 0) { return intersectCell(i, j, ox, oy, oz, dx, dy, dz, maxT); }
+
+        // the children closer to the ray's origin first, the farther ones are pruned by the closest hit found
+        int nearX = dx >= 0f ? 0 : 1;
+        int nearZ = dz >= 0f ? 0 : 1;
+        float best = -1f;
+        for (int k = 0; k < 4; k++) {
+            int ci = 2 * i + ((k & 1) == 0 ? nearX : 1 - nearX);
+            int cj = 2 * j + ((k & 2) == 0 ? nearZ : 1 - nearZ);
+            if (ci >= widths[level - 1] || cj >= heights[level - 1]) { continue; }
+            float t = intersectNode(level - 1, ci, cj, ox, oy, oz, dx, dy, dz, best >= 0f ? best : maxT);
+            if (t >= 0f && (best < 0f || t < best)) { best = t; }
+        }
+        return best;
+    }
+
+    // see: https://tavianator.com/2011/ray_box.html
+    private static boolean slabs(float ox, float oy, float oz, float dx, float dy, float dz,
+                                 float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float maxT) {
+        float tNear = 0f;
+        float tFar = maxT;
+        if (dx != 0f) {
+            float t1 = (minX - ox) / dx, t2 = (maxX - ox) / dx;
+            tNear = Math.max(tNear, Math.min(t1, t2)); tFar = Math.min(tFar, Math.max(t1, t2));
+        } else if (ox < minX || ox > maxX) { return false; }
+        if (dy != 0f) {
+            float t1 = (minY - oy) / dy, t2 = (maxY - oy) / dy;
+            tNear = Math.max(tNear, Math.min(t1, t2)); tFar = Math.min(tFar, Math.max(t1, t2));
+        } else if (oy < minY || oy > maxY) { return false; }
+        if (dz != 0f) {
+            float t1 = (minZ - oz) / dz, t2 = (maxZ - oz) / dz;
+            tNear = Math.max(tNear, Math.min(t1, t2)); tFar = Math.min(tFar, Math.max(t1, t2));
+        } else if (oz < minZ || oz > maxZ) { return false; }
+        return tNear <= tFar;
+    }
+
+    private float intersectCell(int x, int z, float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        float[] values = grid.getArray();
+        int row0 = grid.rowOffset(z);
+        int row1 = grid.rowOffset(z + 1);
+        float y00 = values[row0 + x], y10 = values[row0 + x + 1];
+        float y01 = values[row1 + x], y11 = values[row1 + x + 1];
+        // p00, p01, p11 and p00, p11, p10
+        float t1 = intersectTriangle(ox, oy, oz, dx, dy, dz,
+                x, y00, z, x, y01, z + 1, x + 1, y11, z + 1);
+        float t2 = intersectTriangle(ox, oy, oz, dx, dy, dz,
+                x, y00, z, x + 1, y11, z + 1, x + 1, y10, z);
+        float t = t1 < 0f ? t2 : (t2 < 0f ? t1 : Math.min(t1, t2));
+        return t <= maxT ? t : -1f;
+    }
+
+    // Moller-Trumbore (both sides), see: https://en.wikipedia.org/wiki/M%C3%B6ller%E2%80%93Trumbore_intersection_algorithm
+    private static float intersectTriangle(float ox, float oy, float oz, float dx, float dy, float dz,
+                                           float ax, float ay, float az, float bx, float by, float bz,
+                                           float cx, float cy, float cz) {
+        float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12f) { return -1f; }
+        float inv = 1f / det;
+        float sx = ox - ax, sy = oy - ay, sz = oz - az;
+        float u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0f || u > 1f) { return -1f; }
+        float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inv;
+        if (v < 0f || u + v > 1f) { return -1f; }
+        float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        return t >= 0f ? t : -1f;
+    }
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import com.hammergenics.map.HGGrid.NoiseStageInfo;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public interface NoiseEngine {
+    /**
+     * Adds the stage's noise (within [0, stage.modifier]) to the count values of the row z starting at x.
+     * The coordinates are the grid's ones (no MAP_CENTER adjustment, see HGGrid.getX0(false)), the result should
+     * depend on the coordinates and the stage only: the rows are generated in parallel and the chunks independently.
+     */
+    void addRow(NoiseStageInfo stage, int x, int z, float[] out, int offset, int count);
+}
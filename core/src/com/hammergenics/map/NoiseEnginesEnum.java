@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public enum NoiseEnginesEnum {
+    // noise4j's NoiseGenerator: the whole grid at once (see HGGrid.noiseStage)
+    NOISE4J(null),
+    OPEN_SIMPLEX((stage, x, z, out, offset, count) -> OpenSimplexNoise.addRow(
+            stage.seed, 1f / stage.radius, stage.modifier, x, z, out, offset, count)),
+    FBM((stage, x, z, out, offset, count) -> OpenSimplexNoise.addFbmRow(
+            stage.seed, 1f / stage.radius, stage.modifier, stage.octaves, stage.lacunarity, stage.gain,
+            x, z, out, offset, count)),
+    RIDGED((stage, x, z, out, offset, count) -> OpenSimplexNoise.addRidgedRow(
+            stage.seed, 1f / stage.radius, stage.modifier, stage.octaves, stage.lacunarity, stage.gain,
+            x, z, out, offset, count));
+
+    // null: not a row-wise engine
+    public final NoiseEngine engine;
+
+    NoiseEnginesEnum(NoiseEngine engine) { this.engine = engine; }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class OpenSimplexNoise {
+    // see: https://github.com/KdotJPG/OpenSimplex2 (OpenSimplex2, the 2D "fast" variant: 3 simplex corners per sample)
+    // The only state is the seed: the value at (x, y) depends on nothing else, so any tile (row, chunk)
+    // of the plane could be evaluated independently and matches its neighbours exactly.
+    private static final long PRIME_X = 0x5205402B9270C86FL;
+    private static final long PRIME_Y = 0x598CD327003817B5L;
+    private static final long HASH_MULTIPLIER = 0x53A3F72DEEC546F5L;
+
+    private static final double SKEW_2D = 0.366025403784439;        // (sqrt(3) - 1) / 2
+    private static final float UNSKEW_2D = -0.21132486540518713f;   // (1 / sqrt(3) - 1) / 2
+    private static final float RSQUARED_2D = 0.5f;
+
+    private static final int N_GRADS_2D_EXPONENT = 7;
+    private static final int N_GRADS_2D = 1 << N_GRADS_2D_EXPONENT;
+    // brings the sum of the 3 corners' contributions to [-1, 1]
+    private static final float NORMALIZER_2D = 0.01001634121365712f;
+    // 24 evenly spread unit gradients repeated over N_GRADS_2D (x, y interleaved), pre-multiplied by the normalizer
+    private static final float[] GRADIENTS_2D = new float[N_GRADS_2D * 2];
+    static {
+        for (int i = 0; i < N_GRADS_2D; i++) {
+            double angle = (i % 24) * Math.PI * 2d / 24d + Math.PI / 24d;
+            GRADIENTS_2D[i * 2    ] = (float) (Math.cos(angle) / NORMALIZER_2D);
+            GRADIENTS_2D[i * 2 + 1] = (float) (Math.sin(angle) / NORMALIZER_2D);
+        }
+    }
+
+    /**
+     * @return the noise value at (x, y) within [-1, 1]
+     */
+    public static float noise2(long seed, double x, double y) {
+        // skewing to the simplex (triangular) lattice
+        double s = SKEW_2D * (x + y);
+        double xs = x + s, ys = y + s;
+
+        int xsb = fastFloor(xs), ysb = fastFloor(ys);
+        float xi = (float) (xs - xsb), yi = (float) (ys - ysb);
+        long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+
+        float t = (xi + yi) * UNSKEW_2D;
+        float dx0 = xi + t, dy0 = yi + t;
+
+        // the far corner (1, 1)
+        float dx1 = dx0 - (1 + 2 * UNSKEW_2D);
+        float dy1 = dy0 - (1 + 2 * UNSKEW_2D);
+        // the middle corner: (0, 1) if dy0 > dx0 else (1, 0), picked with no branch:
+        // m is the sign bit of (dx0 - dy0)
+        int m = Float.floatToRawIntBits(dx0 - dy0) >>> 31;
+        float dx2 = dx0 - UNSKEW_2D - (1 - m);
+        float dy2 = dy0 - UNSKEW_2D - m;
+
+        // the attenuations are clamped to 0 instead of skipping the corners (no branches)
+        float a0 = Math.max(RSQUARED_2D - dx0 * dx0 - dy0 * dy0, 0f);
+        float a1 = Math.max(RSQUARED_2D - dx1 * dx1 - dy1 * dy1, 0f);
+        float a2 = Math.max(RSQUARED_2D - dx2 * dx2 - dy2 * dy2, 0f);
+        a0 *= a0; a1 *= a1; a2 *= a2;
+
+        return a0 * a0 * grad(seed, xsbp, ysbp, dx0, dy0)
+             + a1 * a1 * grad(seed, xsbp + PRIME_X, ysbp + PRIME_Y, dx1, dy1)
+             + a2 * a2 * grad(seed, xsbp + (1 - m) * PRIME_X, ysbp + m * PRIME_Y, dx2, dy2);
+    }
+
+    private static float grad(long seed, long xsvp, long ysvp, float dx, float dy) {
+        long hash = seed ^ xsvp ^ ysvp;
+        hash *= HASH_MULTIPLIER;
+        hash ^= hash >> (64 - N_GRADS_2D_EXPONENT + 1);
+        int gi = (int) hash & ((N_GRADS_2D - 1) << 1);
+        return GRADIENTS_2D[gi] * dx + GRADIENTS_2D[gi | 1] * dy;
+    }
+
+    private static int fastFloor(double x) {
+        int xi = (int) x;
+        return x < xi ? xi - 1 : xi;
+    }
+
+    // The rows below add the values within [0, modifier] to out[offset, offset + count): x, x + 1, ... at z
+    // (the lattice coordinates scaled by the frequency), so the rows of the neighbouring chunks line up.
+
+    public static void addRow(long seed, float frequency, float modifier,
+                              int x, int z, float[] out, int offset, int count) {
+        double y = z * (double) frequency;
+        float half = modifier * 0.5f;
+        for (int i = 0; i < count; i++) {
+            out[offset + i] += half + half * noise2(seed, (x + i) * (double) frequency, y);
+        }
+    }
+
+    // fractional Brownian motion: the octaves of the increasing frequency (lacunarity) and decreasing amplitude (gain)
+    // see: https://thebookofshaders.com/13/
+    public static void addFbmRow(long seed, float frequency, float modifier, int octaves, float lacunarity, float gain,
+                                 int x, int z, float[] out, int offset, int count) {
+        float amplitude = 1f, total = 0f;
+        for (int o = 0; o < octaves; o++) { total += amplitude; amplitude *= gain; }
+        float scale = modifier / total; // the octaves sum up to [-total, total]
+
+        amplitude = 1f;
+        for (int o = 0; o < octaves; o++) {
+            // every octave has its own seed, otherwise the lattice points of the octaves correlate
+            long octaveSeed = seed + o;
+            double y = z * (double) frequency;
+            float a = amplitude * scale * 0.5f;
+            for (int i = 0; i < count; i++) {
+                out[offset + i] += a + a * noise2(octaveSeed, (x + i) * (double) frequency, y);
+            }
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+    }
+
+    // ridged multifractal: the octaves of (1 - |n|)^2 each weighted by the previous one (sharp ridges, smooth valleys)
+    // see: https://thebookofshaders.com/13/
+    public static void addRidgedRow(long seed, float frequency, float modifier, int octaves, float lacunarity, float gain,
+                                    int x, int z, float[] out, int offset, int count) {
+        float amplitude = 1f, total = 0f;
+        for (int o = 0; o < octaves; o++) { total += amplitude; amplitude *= gain; }
+        float scale = modifier / total; // each octave is within [0, amplitude]
+
+        double y0 = z * (double) frequency;
+        for (int i = 0; i < count; i++) {
+            double xf = (x + i) * (double) frequency;
+            double yf = y0;
+            float weight = 1f, sum = 0f;
+            amplitude = 1f;
+            for (int o = 0; o < octaves; o++) {
+                float ridge = 1f - Math.abs(noise2(seed + o, xf, yf));
+                ridge *= ridge;
+                ridge *= weight;
+                weight = Math.min(ridge * 2f, 1f);
+                sum += ridge * amplitude;
+                xf *= lacunarity;
+                yf *= lacunarity;
+                amplitude *= gain;
+            }
+            out[offset + i] += sum * scale;
+        }
+    }
+}
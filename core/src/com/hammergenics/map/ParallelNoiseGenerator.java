@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.github.czyzby.noise4j.map.generator.util.Generators;
+import com.hammergenics.core.utils.HGWorkers;
+import com.hammergenics.map.HGGrid.NoiseStageInfo;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class ParallelNoiseGenerator {
+    public final AtomicInteger done = new AtomicInteger(0);
+    public volatile int total = 0;
+    public volatile boolean running = false;
+
+    public interface Listener {
+        // both methods are called on the render thread
+        void progress(int done, int total);
+        void finished(boolean success);
+
+        class ListenerAdapter implements Listener {
+            @Override public void progress(int done, int total) { }
+            @Override public void finished(boolean success) { }
+        }
+    }
+
+    public boolean isRunning() { return running; }
+    public float getProgress() { return total > 0 ? done.get() / (float) total : 0f; }
+
+    public boolean generate(Array<TerrainChunk> chunks, float yScale, Array<NoiseStageInfo> stages, Listener listener) {
+        if (running || chunks == null || chunks.size == 0 || stages == null || stages.size == 0) { return false; }
+
+        // Rolling the seeds once (on the calling thread) so every chunk gets exactly the same seeds
+        // as it would on the sequential path (see HGGrid.generateNoise). The workers get the copies
+        // of the stages so the UI is free to modify the originals while the generation is running.
+        final Array<NoiseStageInfo> snapshot = new Array<>(true, stages.size, NoiseStageInfo.class);
+        for (NoiseStageInfo stage: stages) {
+            if (stage.seed < 0) { stage.seed = Generators.rollSeed(); }
+            snapshot.add(stage.cpy());
+        }
+
+        final TerrainChunk[] targets = chunks.toArray(TerrainChunk.class);
+        // the terrain parts are iterated by the render thread, so clearing them here and not on the workers
+        for (TerrainChunk tc: targets) { tc.clearTerrain(); }
+
+        done.set(0);
+        total = targets.length;
+        running = true;
+
+        HGWorkers.pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                boolean success = false;
+                try {
+                    ChunkNoiseAction[] actions = new ChunkNoiseAction[targets.length];
+                    for (int i = 0; i < targets.length; i++) {
+                        actions[i] = new ChunkNoiseAction(targets[i], yScale, snapshot, listener);
+                    }
+                    invokeAll(actions);
+                    success = true;
+                } catch (Throwable t) {
+                    HGWorkers.postToRenderThread(() -> Gdx.app.error("noise", "ERROR: parallel generation failed: " + t));
+                } finally {
+                    final boolean result = success;
+                    HGWorkers.postToRenderThread(() -> {
+                        running = false;
+                        if (listener != null) { listener.finished(result); }
+                    });
+                }
+            }
+        });
+        return true;
+    }
+
+    private class ChunkNoiseAction extends RecursiveAction {
+        private final TerrainChunk chunk;
+        private final float yScale;
+        private final Array<NoiseStageInfo> stages;
+        private final Listener listener;
+
+        public ChunkNoiseAction(TerrainChunk chunk, float yScale, Array<NoiseStageInfo> stages, Listener listener) {
+            this.chunk = chunk;
+            this.yScale = yScale;
+            this.stages = stages;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            // each grid creates its own NoiseGenerator (see HGGrid.generateNoise)
+            // so there's no state shared between the workers
+            // the owned samples only, the shared edges are stitched on the render thread (see HGEngine.stitchChunks)
+            chunk.gridNoise.generateNoise(yScale, stages, false);
+
+            final int current = done.incrementAndGet();
+            if (listener != null) { HGWorkers.postToRenderThread(() -> listener.progress(current, total)); }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.hammergenics.map;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class Quantizer {
+    private static final double[] POW10 = new double[19];
+    static { POW10[0] = 1d; for (int i = 1; i < POW10.length; i++) { POW10[i] = POW10[i - 1] * 10d; } }
+
+    public final float step;
+    public final int scale;
+
+    public Quantizer(float step) {
+        this.step = step;
+        this.scale = scaleOf(step);
+    }
+
+    public static double pow10(int exponent) {
+        if (exponent >= 0) { return exponent < POW10.length ? POW10[exponent] : Math.pow(10d, exponent); }
+        return -exponent < POW10.length ? 1d / POW10[-exponent] : Math.pow(10d, exponent);
+    }
+
+    /**
+     * Equivalent of: <code>new BigDecimal(Float.toString(value)).scale()</code>
+     * <p>
+     * Float.toString prints either the plain notation "ddd.ddd" or the computerized scientific
+     * notation "d.dddE-n". The scale is read right off the string: this is called once per pass
+     * (not per cell), and emulating the exact digits Float.toString produces is not worth it.
+     *
+     * @param value float value
+     * @return the scale of the decimal representation
+     */
+    public static int scaleOf(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) { return 0; }
+        String str = Float.toString(value);
+        int dot = str.indexOf('.');
+        int exp = str.indexOf('E');
+        if (exp < 0) { return str.length() - dot - 1; }
+        return (exp - dot - 1) - Integer.parseInt(str.substring(exp + 1));
+    }
+
+    /**
+     * Allocation free equivalent of: <code>BigDecimal.valueOf(value).setScale(scale, ROUND_HALF_UP).floatValue()</code>
+     *
+     * @param value float value
+     * @param scale the amount of decimal digits to keep (might be negative)
+     * @return the value rounded half away from zero
+     */
+    public static float roundHalfUp(float value, int scale) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) { return value; }
+        double pow = pow10(scale);
+        double abs = Math.abs((double) value) * pow;
+        double floor = Math.floor(abs);
+        // not using Math.floor(abs + 0.5d) since adding 0.5d might round up on its own (e.g. 0.49999999999999994)
+        if (abs - floor >= 0.5d) { floor += 1d; }
+        if (floor == 0d) { return 0f; } // BigDecimal has no negative zero
+        double rounded = floor / pow;
+        return (float) (value < 0f ? -rounded : rounded);
+    }
+
+    /**
+     * Allocation free equivalent of the rounding used by HGGrid.roundToStep (before Quantizer):
+     * the value is snapped to the closest multiple of the step and rounded to the step's decimal scale.
+     *
+     * @param value float value
+     * @return the value rounded to the step
+     */
+    public float round(float value) {
+        float mod = value % step;
+        value -= mod;
+        if (mod > step/2f) { value += step; }
+        return roundHalfUp(value, scale);
+    }
+
+    // fixed point representation: the amount of steps (meant for the values already rounded to the step)
+    public int toUnits(float value) { return (int) Math.round((double) value / step); }
+    public float fromUnits(int units) { return roundHalfUp(units * step, scale); }
+}
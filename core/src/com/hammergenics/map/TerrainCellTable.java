@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.hammergenics.map;
+
+import static com.hammergenics.map.TerrainPartsEnum.TRRN_CORN_INN;
+import static com.hammergenics.map.TerrainPartsEnum.TRRN_CORN_OUT;
+import static com.hammergenics.map.TerrainPartsEnum.TRRN_FLAT;
+import static com.hammergenics.map.TerrainPartsEnum.TRRN_SIDE;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class TerrainCellTable {
+    public static final int NONE = -1;
+
+    // cell code: [part ordinal + 1][y offset in steps: 1 bit][reference corner (2d index): 2 bits]
+    public static int code(TerrainPartsEnum part, int corner2d, int yOffsetSteps) {
+        return ((part.ordinal() + 1) << 3) | ((yOffsetSteps & 0b1) << 2) | (corner2d & 0b11);
+    }
+    public static TerrainPartsEnum part(int code) { return code < 0 ? null : TerrainPartsEnum.values()[(code >> 3) - 1]; }
+    public static int corner(int code) { return code & 0b11; }
+    public static int yOffsetSteps(int code) { return (code >> 2) & 0b1; }
+
+    // counterclockwise order of the corners: 0b00 -> 0b01 -> 0b11 -> 0b10 (see HGModelInstance.indices2d)
+    private static final int[] NEXT_2D = new int[]{0b01, 0b11, 0b00, 0b10};
+
+    // the deltas of the corners to the lowest one (in steps) fit 2 bits each: 4 corners -> 256 signatures
+    public static final int MAX_DELTA = 0b11;
+    private static final int[] TABLE = new int[256];
+
+    static {
+        int[] units = new int[4];
+        for (int signature = 0; signature < TABLE.length; signature++) {
+            for (int i = 0; i < 4; i++) { units[i] = (signature >> (i << 1)) & MAX_DELTA; }
+            TABLE[signature] = classify(units);
+        }
+    }
+
+    /**
+     * @param u00 corner 0b00 height in steps (see Quantizer.toUnits)
+     * @param u01 corner 0b01 height in steps
+     * @param u10 corner 0b10 height in steps
+     * @param u11 corner 0b11 height in steps
+     * @return the cell code (see TerrainCellTable.code) or NONE
+     */
+    public static int lookup(int u00, int u01, int u10, int u11) {
+        int min = Math.min(Math.min(u00, u01), Math.min(u10, u11));
+        int d00 = u00 - min, d01 = u01 - min, d10 = u10 - min, d11 = u11 - min;
+        if ((d00 | d01 | d10 | d11) > MAX_DELTA) {
+            // too steep for the table: rare enough to classify on the spot
+            return classify(new int[]{u00, u01, u10, u11});
+        }
+        return TABLE[d00 | (d01 << 2) | (d10 << 4) | (d11 << 6)];
+    }
+
+    /**
+     * The integer form of the plane based classification TerrainChunk.applyTerrainParts used to do per cell.
+     * <p>
+     * By default the screen camera is looking 111 -> 000 direction
+     * <pre>
+     *       (0b00) 010 **─────────** 110 (0b10)
+     *                ** │       ** │
+     *              **   │     **   │
+     * (0b01) 011 **─────────** 111 │
+     *            │      │    │     │
+     *            │ 000 **────│────** 100
+     *            │   **      │  **
+     *            │ **        │**
+     *        001 **─────────** 101 (0b11)
+     * </pre>
+     * created with https://asciiflow.com/
+     *
+     * @param units the heights (in steps) of the corners indexed by the 2d corner index: 0b00, 0b01, 0b10, 0b11
+     * @return the cell code (see TerrainCellTable.code) or NONE
+     */
+    public static int classify(int[] units) {
+        // all 4 points are on the same plane
+        if (units[0b00] + units[0b11] == units[0b01] + units[0b10]) {
+            // 1. plane is parallel to XZ - flat surface (no other parts are applied for flat)
+            if (units[0b00] == units[0b01] && units[0b00] == units[0b10]) { return code(TRRN_FLAT, 0b11, 0); }
+
+            // 2. plane has a tilt and the points form a rectangle (either of two adjacent sides
+            //    is parallel to X or Z) - side surface
+            if (units[0b01] == units[0b00] || units[0b10] == units[0b00]) {
+                // the lowest corner (the first one if there are several) followed (counterclockwise)
+                // by the second lowest one: the latter is taken
+                int index = 0;
+                for (int i = 1; i < 4; i++) { if (units[i] < units[index]) { index = i; } }
+                int second = Integer.MAX_VALUE;
+                for (int i = 0; i < 4; i++) { if (i != index && units[i] < second) { second = units[i]; } }
+                if (units[NEXT_2D[index]] == second) { index = NEXT_2D[index]; }
+
+                return code(TRRN_SIDE, index, 1);
+            }
+            // 3. plane has a tilt and the points form a rhombus - no part for this one
+            return NONE;
+        }
+
+        // 4 points form a triangle pyramid: one point triple should be level, the remaining corner
+        // is the protrusive point. The triples are checked in the same order the planes were:
+        // 0b000110, 0b000111, 0b001011, 0b011011
+        for (int triple = 0; triple < 4; triple++) {
+            int c1 = triple < 3 ? 0b00 : 0b01;
+            int c2 = triple < 2 ? 0b01 : 0b10;
+            int c3 = triple == 0 ? 0b10 : 0b11;
+            if (units[c1] != units[c2] || units[c1] != units[c3]) { continue; }
+
+            // e.g. for the triple 00, 01, 10 we have 00 ^ 01 ^ 10 = 11
+            int pp = c1 ^ c2 ^ c3;
+            // 1. the protrusive point is below the level - inner corner
+            // 2. the protrusive point is above the level - outer corner
+            return units[pp] < units[c1] ? code(TRRN_CORN_INN, pp, 1) : code(TRRN_CORN_OUT, pp, 0);
+        }
+        return NONE;
+    }
+}
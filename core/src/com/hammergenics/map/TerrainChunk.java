@@ -18,29 +18,27 @@ package com.hammergenics.map;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.math.Plane;
-import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.ModelCache;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.physics.bullet.collision.btBvhTriangleMeshShape;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.ArrayMap;
-import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.Sort;
+import com.hammergenics.ai.pfa.HGGraphNode;
 import com.hammergenics.ai.pfa.HGGraphNodesGrid;
 import com.hammergenics.core.graphics.g3d.HGModel;
 import com.hammergenics.core.graphics.g3d.HGModelInstance;
 import com.hammergenics.core.graphics.g3d.PhysicalModelInstance;
 import com.hammergenics.core.graphics.g3d.PhysicalModelInstance.ShapesEnum;
+import com.hammergenics.physics.bullet.dynamics.btDynamicsWorldTypesEnum;
 
-import java.math.BigDecimal;
-import java.util.Comparator;
+import java.util.Arrays;
 
 import static com.hammergenics.HGEngine.gridHgModel;
+import static com.hammergenics.core.graphics.g3d.utils.Models.createGridMeshData;
 import static com.hammergenics.core.graphics.g3d.utils.Models.createGridModel;
-import static com.hammergenics.map.TerrainPartsEnum.TRRN_CORN_INN;
-import static com.hammergenics.map.TerrainPartsEnum.TRRN_CORN_OUT;
 import static com.hammergenics.map.TerrainPartsEnum.TRRN_FLAT;
-import static com.hammergenics.map.TerrainPartsEnum.TRRN_SIDE;
-import static java.math.BigDecimal.ROUND_HALF_UP;
 
 /**
  * Add description here
@@ -48,6 +46,15 @@ import static java.math.BigDecimal.ROUND_HALF_UP;
  * @author nrsharip
  */
 public class TerrainChunk {
+    // the ground collision: HEIGHTFIELD reads the heights directly (see heightField), MESH builds the BVH
+    // over the triangles mesh (an index/vertex array and a tree on top of the render mesh)
+    public static ShapesEnum groundShapeType = ShapesEnum.HEIGHTFIELD;
+    // LOD: level l takes every 2^l-th vertex, level 0 is the full resolution (physics, editing etc.);
+    // the level is picked per chunk (the leaves of the quadtree) by the distance to the camera (see selectLod)
+    public static int lodLevels = 4;
+    // the distance (in chunk sizes) the full resolution is kept within, doubled for each next level
+    public static float lodDistance = 1.5f;
+
     public HGGraphNodesGrid gridNoise;
     public HGModel noiseLinesHgModel = null;
     public HGModel noiseTrianglesHgModel = null;
@@ -55,20 +62,51 @@ public class TerrainChunk {
     public PhysicalModelInstance noiseTrianglesPhysModelInstance = null;
     public HGModelInstance yLinesHGModelInstance;
     public Array<HGModelInstance> terrain = new Array<>(true, 16, HGModelInstance.class);
-
-    public TerrainChunk(int size, int x0, int z0) {
+    // per cell (row-major) classification: TerrainCellTable code or TerrainCellTable.NONE
+    public int[] terrainCells = null;
+    // per cell (row-major) terrain part (null if none), so the parts could be replaced per region
+    public HGModelInstance[] terrainTiles = null;
+    // the translation applied to the terrain parts so far (see trnTerrain), applied to the re-placed parts as well
+    public final Vector3 terrainOffset = new Vector3();
+    // the local bounds of the ground collision shape (the bounds the BVH is quantized over)
+    public final BoundingBox collisionBounds = new BoundingBox();
+    // ShapesEnum.HEIGHTFIELD only: the direct copy of the heights shared with bullet (see btHeightfieldTerrainShape)
+    public HeightField heightField = null;
+    // static batch of the terrain parts: rebuilt only when the terrain is changed (see terrainDirty)
+    // see: https://github.com/libgdx/libgdx/wiki/ModelCache#using-modelcache
+    public ModelCache terrainCache = null;
+    // LOD models and instances (index 0 is not used, see noiseLinesHgModel and noiseTrianglesHgModel):
+    // built lazily on the first use of the level, dropped on any change of the heights
+    public final HGModel[] lodLinesHgModels = new HGModel[lodLevels];
+    public final HGModel[] lodTrianglesHgModels = new HGModel[lodLevels];
+    public final HGModelInstance[] lodLinesInstances = new HGModelInstance[lodLevels];
+    public final HGModelInstance[] lodTrianglesInstances = new HGModelInstance[lodLevels];
+    public int lod = 0;
+    public final BoundingBox terrainBounds = new BoundingBox();
+    public boolean terrainDirty = true;
+
+    public TerrainChunk(int size, int x0, int z0) { this(size, x0, z0, true); }
+
+    // meshes: false - no meshes until resetNoiseModelInstances (e.g. built on the workers, see TerrainMeshBuilder)
+    public TerrainChunk(int size, int x0, int z0, boolean meshes) {
         gridNoise = new HGGraphNodesGrid(size, x0, z0);
         gridNoise.fill(0f);
+        gridNoise.setHistogramBins(HGGrid.HISTOGRAM_BINS); // lazily calculated, see HGGrid.getHistogram
 
         yLinesHGModelInstance = new HGModelInstance(gridHgModel, "Y");
-        resetNoiseModelInstances(1f);
+        if (meshes) { resetNoiseModelInstances(1f); }
     }
 
     public HGGraphNodesGrid getGridNoise() { return gridNoise; }
 
     public void generateNoise(float yScale, Array<HGGraphNodesGrid.NoiseStageInfo> stages) {
+        generateNoise(yScale, stages, true);
+    }
+
+    // ghosts: false - the shared edges are left to the owners (see HGGrid.copyGhosts and HGEngine.stitchChunk)
+    public void generateNoise(float yScale, Array<HGGraphNodesGrid.NoiseStageInfo> stages, boolean ghosts) {
         clearTerrain();
-        gridNoise.generateNoise(yScale, stages);
+        gridNoise.generateNoise(yScale, stages, ghosts);
     }
 
     public void roundNoiseToStep(float step) {
@@ -82,6 +120,15 @@ public class TerrainChunk {
     }
 
     public void resetNoiseModelInstances(float scale) {
+        resetNoiseModelInstances(scale,
+                createGridMeshData(gridNoise, GL20.GL_LINES, scale, 1, 0f),
+                createGridMeshData(gridNoise, GL20.GL_TRIANGLES, scale, 1, 0f));
+    }
+
+    // GL stage: the vertices and indices are expected to be built by Models.createGridMeshData (stride 1, no skirt)
+    // from the current heights, here they are only uploaded and kept as the models' CPU copies (see HGModel.MeshData)
+    public void resetNoiseModelInstances(float scale, HGModel.MeshData linesData, HGModel.MeshData trianglesData) {
+        clearLod();
         // models
         if (noiseLinesHgModel != null) { noiseLinesHgModel.dispose(); }
         if (noiseTrianglesHgModel != null) { noiseTrianglesHgModel.dispose(); }
@@ -89,8 +136,8 @@ public class TerrainChunk {
         if (noiseLinesHGModelInstance != null) { noiseLinesHGModelInstance.dispose(); }
         if (noiseTrianglesPhysModelInstance != null) { noiseTrianglesPhysModelInstance.dispose(); }
 
-        noiseLinesHgModel = new HGModel(createGridModel(gridNoise, GL20.GL_LINES, scale, Color.YELLOW));
-        noiseTrianglesHgModel = new HGModel(createGridModel(gridNoise, GL20.GL_TRIANGLES, scale, Color.GRAY));
+        noiseLinesHgModel = new HGModel(createGridModel(linesData, GL20.GL_LINES, Color.YELLOW), linesData);
+        noiseTrianglesHgModel = new HGModel(createGridModel(trianglesData, GL20.GL_TRIANGLES, Color.GRAY), trianglesData);
         //com.badlogic.gdx.utils.GdxRuntimeException: Mesh must be indexed and triangulated
         //        at com.badlogic.gdx.physics.bullet.collision.btIndexedMesh.set(btIndexedMesh.java:165)
         //        at com.badlogic.gdx.physics.bullet.collision.btIndexedMesh.<init>(btIndexedMesh.java:126)
@@ -107,13 +154,22 @@ public class TerrainChunk {
                 scale, gridNoise.yScale * scale, scale
         );
 
-        noiseTrianglesPhysModelInstance = new PhysicalModelInstance(
-                noiseTrianglesHgModel, 0f, ShapesEnum.MESH, "grid");
+        if (groundShapeType == ShapesEnum.HEIGHTFIELD) {
+            if (heightField == null) { heightField = gridNoise.toHeightField(true); }
+            else { heightField.copyFrom(gridNoise); }
+            noiseTrianglesPhysModelInstance = new PhysicalModelInstance(
+                    noiseTrianglesHgModel, heightField, gridNoise.getMin(), gridNoise.getMax(),
+                    new Vector3(scale, gridNoise.yScale * scale, scale), "grid");
+        } else {
+            noiseTrianglesPhysModelInstance = new PhysicalModelInstance(
+                    noiseTrianglesHgModel, 0f, ShapesEnum.MESH, "grid");
+        }
         noiseTrianglesPhysModelInstance.setToTranslationAndScaling(
                 gridNoise.getX0() * scale, 0, gridNoise.getZ0() * scale,
                 1f, 1f, 1f // scaling is handled in createGridModel for GL_TRIANGLES
                            // since it is meant for rigid body which has no notion of scaling
         );
+        noiseTrianglesHgModel.obj.meshes.first().calculateBoundingBox(collisionBounds);
 
         float halfCellsWidth = (gridNoise.getWidth(true))/2f;
         float halfCellsHeight = (gridNoise.getHeight(true))/2f;
@@ -126,255 +182,433 @@ public class TerrainChunk {
         );
     }
 
-    public void applyTerrainParts(float scale) {
+    public void applyTerrainParts(float scale) { applyTerrainParts(scale, true); }
+
+    // classify: false - the parts are placed by the codes already in terrainCells (e.g. loaded by ChunkStore)
+    public void applyTerrainParts(float scale, boolean classify) {
         if (gridNoise.step < 0) { return; }
-        terrain.clear();
 
-        Array<Float> ys = new Array<>(true, 16, Float.class);
-        Array<Vector3> points = new Array<>(new Vector3[]{ new Vector3(), new Vector3(), new Vector3(), new Vector3() });
+        int cellsCount = gridNoise.getWidth(true) * gridNoise.getHeight(true);
+        int[] cells = terrainCells;
+        if (cells == null || cells.length != cellsCount) { cells = new int[cellsCount]; classify = true; }
+
+        HGModelInstance[] tiles = buildTerrainParts(gridNoise.getArray(), gridNoise.getWidth(), gridNoise.getHeight(),
+                gridNoise.yScale, gridNoise.step, gridNoise.getX0(), gridNoise.getZ0(), scale, 0f, cells, classify);
+        setTerrainParts(cells, tiles, 0f);
+    }
+
+    /**
+     * Classifies the cells and places the terrain parts over the heights given (row-major, see HGGrid.rowOffset).
+     * Touches neither the chunk nor the grid, so it could be run on the workers over the snapshot of the heights
+     * (see TerrainMeshBuilder): HGModelInstance is only a CPU side copy of the part's prototype.
+     *
+     * @param yOffset the parts are translated by (see trnTerrain)
+     * @param cells the codes (see TerrainCellTable), filled in if classify or read otherwise
+     * @return per cell (row-major) terrain part (null if none), see terrainTiles
+     */
+    public static HGModelInstance[] buildTerrainParts(float[] heights, int width, int height, float yScale, float step,
+                                                     int x0, int z0, float scale, float yOffset, int[] cells, boolean classify) {
+        int cellsWidth = width - 1;
+        HGModelInstance[] tiles = new HGModelInstance[cells.length];
+
+        int[] units = null;
+        if (classify) {
+            units = new int[heights.length];
+            // the same as HGGrid.toUnits
+            if (step > 0f) {
+                Quantizer quantizer = new Quantizer(step);
+                for (int i = 0; i < heights.length; i++) { units[i] = quantizer.toUnits(heights[i]); }
+            }
+        }
+        float[] ys = new float[4];     // 0b00, 0b01, 0b10, 0b11 corners of the cell
 
         Vector3 translation = new Vector3();
-        Quaternion rotation = new Quaternion();
         Vector3 scaling = new Vector3();
 
-        ArrayMap<Integer, Plane> index2plane = new ArrayMap<>(Integer.class, Plane.class);
-
-        index2plane.put(0b000110, new Plane());
-        index2plane.put(0b000111, new Plane());
-        index2plane.put(0b001011, new Plane());
-        index2plane.put(0b011011, new Plane());
-
-        //Gdx.app.debug("chunk", "x0: " + gridNoise.getX0() + " z0: " + gridNoise.getZ0());
-        int floatScale = new BigDecimal(Float.toString(gridNoise.step)).scale();
-        for (int x = 1; x < gridNoise.getWidth(); x++) {
-            for (int z = 1; z < gridNoise.getHeight(); z++) {
-                ys.clear();
-                ys.addAll(
-                        gridNoise.get(x - 1, z - 1),
-                        gridNoise.get(x - 1,     z),
-                        gridNoise.get(    x, z - 1),
-                        gridNoise.get(    x,     z)
-                );
-
-                points.get(0b00).set(x - 1, ys.get(0b00), z - 1);
-                points.get(0b01).set(x - 1, ys.get(0b01), z    );
-                points.get(0b10).set(x    , ys.get(0b10), z - 1);
-                points.get(0b11).set(x    , ys.get(0b11), z    );
-
-                index2plane.get(0b000110).set(points.get(0b00), points.get(0b01), points.get(0b10));
-
-                // Getting issues with precision thus setting it here explicitly
-                float dot = index2plane.get(0b000110).normal.dot(points.get(0b11));
-                dot = BigDecimal.valueOf(dot).setScale(floatScale, ROUND_HALF_UP).floatValue();
-                float d = index2plane.get(0b000110).d;
-                d = BigDecimal.valueOf(d).setScale(floatScale, ROUND_HALF_UP).floatValue();
-
-                // check if all 4 points are on the same plane
-                if (dot + d == 0) {
-                    // all 4 points are on the same plane, possible options:
-                    // 1. plane is parallel to XZ - we're dealing with the flat surface - TRRN_FLAT
-                    if (TRRN_FLAT.ready && index2plane.get(0b000110).normal.isOnLine(Vector3.Y)) {
-                        HGModelInstance tmp = new HGModelInstance(TRRN_FLAT.model);
-
-                        translation.set(points.get(0b11));
-                        translation.scl(1f, gridNoise.yScale, 1f);
-                        translation.sub(tmp.dims.cpy().scl(1/2f));
-                        translation.add(gridNoise.getX0(), 0, gridNoise.getZ0());
-                        scaling.set(scale, scale, scale);
-                        tmp.setToTranslationAndScaling(translation.scl(scaling), scaling);
-                        terrain.add(tmp);
-                        continue;
-                    } else if (index2plane.get(0b000110).normal.isOnLine(Vector3.Y)) {
-                        continue; // to make sure that no other parts are applied for flat
-                    }
-
-                    Vector3 line1 = points.get(0b01).cpy().sub(points.get(0b00));
-                    Vector3 line2 = points.get(0b10).cpy().sub(points.get(0b00));
-
-                    // 2. plane has a tilt. The points form a rectangle - TRRN_SIDE
-                    // It is sufficient to check if either of two adjacent sides of the polygon
-                    // is collinear with X or Z unit vectors. If it is the polygon is a rectangle
-                    if (TRRN_SIDE.ready && (
-                            line1.isOnLine(Vector3.X) || line1.isOnLine(Vector3.Z) ||
-                                    line2.isOnLine(Vector3.X) || line2.isOnLine(Vector3.Z))) {
-
-                        Array<Float> sorted = new Array<>(ys);
-                        Sort.instance().sort(sorted, Comparator.comparingDouble(Float::doubleValue));
-
-                        int index = ys.indexOf(sorted.get(0), false);
-                        // ATTENTION: on indexOf(...) use, since the y value most likely will match precisely
-                        //            It is safer to check the next adjacent corner if it has the second greatest distance
-                        //            If not - we already got the corner of maximum index
-                        if (ys.get(HGModelInstance.getNext2dIndex(index)).equals(sorted.get(1))) {
-                            index = HGModelInstance.getNext2dIndex(index);
-                        }
-
-                        HGModelInstance tmp = new HGModelInstance(TRRN_SIDE.model);
-
-                        float factor = gridNoise.yScale * gridNoise.step/tmp.dims.y;
-
-                        rotation.idt();
-                        switch (TRRN_SIDE.leadingCornerI2d ^ index) {
-                            case 0b01: rotation.setEulerAngles(90, 0, 0); break;
-                            case 0b10: rotation.setEulerAngles(-90, 0, 0); break;
-                            case 0b11: rotation.setEulerAngles(180, 0, 0); break;
-                        }
-
-                        translation.set(points.get(0b11));
-                        translation.y = points.get(index).y + gridNoise.step;
-                        translation.scl(1f, gridNoise.yScale, 1f);
-                        translation.sub(tmp.dims.cpy().scl(1, factor, 1).scl(1/2f));
-                        translation.add(gridNoise.getX0(), 0, gridNoise.getZ0());
-                        scaling.set(scale, factor * scale, scale);
-                        tmp.setToTranslationAndScaling(translation.scl(scale), scaling);
-                        tmp.rotate(rotation);
-                        terrain.add(tmp);
-                        continue;
-                    }
-                    // 3. plane has a tilt. The points form a rhombus - ?
-                } else {
-                    // 4 points form a triangle pyramid. One point triple should define a plane
-                    // which should be parallel to XZ plane (P). Let's find P.
-                    index2plane.get(0b000111).set(points.get(0b00), points.get(0b01), points.get(0b11));
-                    index2plane.get(0b001011).set(points.get(0b00), points.get(0b10), points.get(0b11));
-                    index2plane.get(0b011011).set(points.get(0b01), points.get(0b10), points.get(0b11));
-
-                    // By default the screen camera is looking 111 -> 000 direction
-                    //
-                    //       (0b00) 010 **─────────** 110 (0b10)
-                    //                ** │       ** │
-                    //              **   │     **   │
-                    // (0b01) 011 **─────────** 111 │
-                    //            │      │    │     │
-                    //            │ 000 **────│────** 100
-                    //            │   **      │  **
-                    //            │ **        │**
-                    //        001 **─────────** 101 (0b11)
-                    //
-                    // In this example the plane P parallel to XZ is 0b000110 and the protrusive point is 0b11
-                    //
-                    // created with https://asciiflow.com/
-
-                    // Index of P
-                    int ip = -1;
-                    for (ObjectMap.Entry<Integer, Plane> entry: index2plane) {
-                        // checking each plane if it's normal is collinear with the Y unit vector
-                        // meaning the plane is parallel to XZ. Expecting to have only one such
-                        // plane so on positive match - break the loop
-                        if (entry.value.normal.isOnLine(Vector3.Y)) { ip = entry.key; break; }
-                    }
-                    if (ip < 0) { continue; }
-
-                    // Index of Protrusive Point:
-                    // * for plane 0b000110 we have 00 ^ 01 ^ 10 = 11
-                    // * for plane 0b000111 we have 00 ^ 01 ^ 11 = 10
-                    // * for plane 0b001011 we have 00 ^ 10 ^ 11 = 01
-                    // * for plane 0b011011 we have 01 ^ 10 ^ 11 = 00
-                    int ippoint = ((ip & 0b110000) >> 4) ^ ((ip & 0b1100) >> 2) ^ (ip & 0b11);
-
-                    // making sure the P plane's normal points into the Y axis direction
-                    if (Vector3.Y.dot(index2plane.get(ip).normal) < 0) {
-                        index2plane.get(ip).normal.set(Vector3.Y);
-                        index2plane.get(ip).d *= -1f;
-                    }
-
-                    Plane.PlaneSide side = index2plane.get(ip).testPoint(points.get(ippoint));
-                    // now as we found the plane (points triple) parallel to XZ and the protrusive point
-                    // we have the following options:
-                    // 1. The protrusive point is below P - TRRN_CORN_INN
-                    if (TRRN_CORN_INN.ready && side.equals(Plane.PlaneSide.Back)) {
-                        HGModelInstance tmp = new HGModelInstance(TRRN_CORN_INN.model);
-
-                        float factor = gridNoise.yScale * gridNoise.step/tmp.dims.y;
-
-                        //Gdx.app.debug("chunk", "point b00: " + points.get(0b00));
-                        //Gdx.app.debug("chunk", "point b01: " + points.get(0b01));
-                        //Gdx.app.debug("chunk", "point b10: " + points.get(0b10));
-                        //Gdx.app.debug("chunk", "point b11: " + points.get(0b11));
-                        //Gdx.app.debug("chunk", "plain index: " + Integer.toBinaryString(ip));
-                        //Gdx.app.debug("chunk", "leading corner: " + Integer.toBinaryString(TRRN_CORN_INN.leadingCornerI2d));
-                        //Gdx.app.debug("chunk", "protrusive point: "  + Integer.toBinaryString(ippoint));
-                        //Gdx.app.debug("chunk", " ^: " + Integer.toBinaryString(TRRN_CORN_INN.leadingCornerI2d ^ ippoint));
-
-                        // By default the screen camera is looking 111 -> 000 direction
-                        //
-                        //       010 **─────────** 110
-                        //         ** │       ** │
-                        //       **   │     **   │
-                        // 011 **─────────** 111 │
-                        //     │      │    │     │
-                        //     │ 000 **────│────** 100
-                        //     │   **      │  **
-                        //     │ **        │**
-                        // 001 **─────────** 101
-                        //
-                        // created with https://asciiflow.com/
-
-                        // LC - Leading Corner
-                        // PP - Protrusive Point
-                        //                0     1     2     3
-                        // indices2d = {0b00, 0b01, 0b11, 0b10}
-                        //            LC  PP  Steps  Expected Result
-                        // Example 1: 00  01    1    turn 90 degrees counterclockwise (yaw: 90 (or -270) degrees)
-                        // Example 2: 01  00   -1    turn 90 degrees clockwise (yaw: -90 (or 270) degrees)
-                        // Example 3: 00  10    3    turn 90 degrees clockwise (yaw: -90 (or 270) degrees)
-                        // Example 4: 10  00   -3    turn 90 degrees counterclockwise (yaw: 90 (or -270) degrees)
-                        // Example 5: 01  11    1    turn 90 degrees counterclockwise (yaw: 90 (or -270) degrees)
-                        rotation.idt();
-                        float yaw = HGModelInstance.get90DegreeRotationSteps(TRRN_CORN_INN.leadingCornerI2d, ippoint) * 90f;
-                        rotation.setEulerAngles(yaw, 0, 0);
-
-                        translation.set(points.get(0b11));
-                        translation.y = points.get(ippoint).y + gridNoise.step;
-                        translation.scl(1f, gridNoise.yScale, 1f);
-                        translation.sub(tmp.dims.cpy().scl(1, factor, 1).scl(1/2f));
-                        translation.add(gridNoise.getX0(), 0, gridNoise.getZ0());
-                        scaling.set(scale, factor * scale, scale);
-                        tmp.setToTranslationAndScaling(translation.scl(scale), scaling);
-                        tmp.rotate(rotation);
-                        terrain.add(tmp);
-                        continue;
-                    }
-                    // 2. The protrusive point is above P - TRRN_CORN_OUT
-                    if (TRRN_CORN_OUT.ready && side.equals(Plane.PlaneSide.Front)) {
-                        HGModelInstance tmp = new HGModelInstance(TRRN_CORN_OUT.model);
-
-                        float factor = gridNoise.yScale * gridNoise.step/tmp.dims.y;
-
-                        // By default the screen camera is looking 111 -> 000 direction
-                        //
-                        //       010 **─────────** 110
-                        //         ** │       ** │
-                        //       **   │     **   │
-                        // 011 **─────────** 111 │
-                        //     │      │    │     │
-                        //     │ 000 **────│────** 100
-                        //     │   **      │  **
-                        //     │ **        │**
-                        // 001 **─────────** 101
-                        //
-                        // created with https://asciiflow.com/
-                        rotation.idt();
-                        float yaw = HGModelInstance.get90DegreeRotationSteps(TRRN_CORN_OUT.leadingCornerI2d, ippoint) * 90f;
-                        rotation.setEulerAngles(yaw, 0, 0);
-
-                        translation.set(points.get(0b11));
-                        translation.y = points.get(ippoint).y;
-                        translation.scl(1f, gridNoise.yScale, 1f);
-                        translation.sub(tmp.dims.cpy().scl(1, factor, 1).scl(1/2f));
-                        translation.add(gridNoise.getX0(), 0, gridNoise.getZ0());
-                        scaling.set(scale, factor * scale, scale);
-                        tmp.setToTranslationAndScaling(translation.scl(scale), scaling);
-                        tmp.rotate(rotation);
-                        terrain.add(tmp);
-                        continue;
-                    }
+        for (int z = 1; z < height; z++) {
+            int row0 = (z - 1) * width;
+            int row1 = z * width;
+            for (int x = 1; x < width; x++) {
+                // the heights are quantized to the step, so the cell is classified by the table lookup
+                // of the corners' relative heights (see TerrainCellTable.classify for the actual rules)
+                int code = classify ? TerrainCellTable.lookup(
+                        units[row0 + x - 1], units[row1 + x - 1], units[row0 + x], units[row1 + x])
+                        : cells[(z - 1) * cellsWidth + (x - 1)];
+                cells[(z - 1) * cellsWidth + (x - 1)] = code;
+
+                TerrainPartsEnum part = TerrainCellTable.part(code);
+                if (part == null || !part.ready) { continue; }
+
+                ys[0b00] = heights[row0 + x - 1];
+                ys[0b01] = heights[row1 + x - 1];
+                ys[0b10] = heights[row0 + x    ];
+                ys[0b11] = heights[row1 + x    ];
+
+                HGModelInstance tile = placeTerrainPart(part, TerrainCellTable.corner(code),
+                        ys[TerrainCellTable.corner(code)] + TerrainCellTable.yOffsetSteps(code) * step,
+                        x, z, scale, yScale, step, x0, z0, translation, scaling);
+                if (yOffset != 0f) { tile.trn(0f, yOffset, 0f); }
+                tiles[(z - 1) * cellsWidth + (x - 1)] = tile;
+            }
+        }
+        return tiles;
+    }
+
+    // replaces the terrain parts with the ones built by buildTerrainParts (already translated by yOffset)
+    public void setTerrainParts(int[] cells, HGModelInstance[] tiles, float yOffset) {
+        clearTerrain();
+        terrainCells = cells;
+        terrainTiles = tiles;
+        for (HGModelInstance tile: tiles) { if (tile != null) { terrain.add(tile); } }
+        terrainOffset.set(0f, yOffset, 0f);
+        terrainDirty = true;
+    }
+
+    /**
+     * Rebuilds only the region modified since the last rebuild (see HGGrid.markDirty): the vertices of
+     * the lines and triangles meshes are updated in place, the terrain parts are re-placed, the graph nodes
+     * are recalculated and the ground collision shape BVH is refitted partially.
+     * NOTE: the meshes are expected to be built by resetNoiseModelInstances with the same scale.
+     *
+     * @param mid the height the chunk was translated down by (see HGEngine.resetChunk)
+     * @return true if there was anything to update
+     */
+    public boolean updateDirtyRegion(float scale, float mid) {
+        if (!gridNoise.isDirty()) { return false; }
+        if (noiseLinesHgModel == null || noiseTrianglesHgModel == null) { gridNoise.clearDirty(); return false; }
+
+        // the vertices modified
+        int vx0 = gridNoise.getDirtyX0();
+        int vz0 = gridNoise.getDirtyZ0();
+        int vx1 = gridNoise.getDirtyX1();
+        int vz1 = gridNoise.getDirtyZ1();
+        // the cells sharing these vertices
+        int cx0 = Math.max(0, vx0 - 1);
+        int cz0 = Math.max(0, vz0 - 1);
+        int cx1 = Math.min(gridNoise.getWidth(true) - 1, vx1);
+        int cz1 = Math.min(gridNoise.getHeight(true) - 1, vz1);
+
+        float[] heights = gridNoise.getArray(); // row-major, see HGGrid.rowOffset
+        updateLinesRegion(heights, vx0, vz0, vx1, vz1);
+        updateTrianglesRegion(heights, cx0, cz0, cx1, cz1, scale);
+        updateTerrainRegion(heights, cx0, cz0, cx1, cz1, scale);
+
+        if (gridNoise.graphNodes.size > 0) {
+            gridNoise.recalculate(cx0, cz0, cx1, cz1);
+            for (int z = cz0; z <= cz1; z++) {
+                for (int x = cx0; x <= cx1; x++) {
+                    HGGraphNode node = gridNoise.graphNodes.items[gridNoise.getGraphNodeIndex(x, z)];
+                    node.coordinates.y -= mid;
+                    node.coordinates.scl(scale, gridNoise.yScale * scale, scale);
                 }
             }
         }
+
+        gridNoise.clearDirty();
+        clearLod();
+        return true;
+    }
+
+    /**
+     * Picks the level by the (XZ) distance from the position to the chunk's bounds.
+     * @return the level selected (also stored in lod)
+     */
+    public int selectLod(Vector3 position, float scale) {
+        int cells = gridNoise.getWidth(true);
+        float size = cells * scale;
+        float minX = gridNoise.getX0() * scale;
+        float minZ = gridNoise.getZ0() * scale;
+        float dx = Math.max(0f, Math.max(minX - position.x, position.x - (minX + size)));
+        float dz = Math.max(0f, Math.max(minZ - position.z, position.z - (minZ + size)));
+        float distance = (float) Math.sqrt(dx * dx + dz * dz) / size; // in chunk sizes
+
+        int level = 0;
+        for (float d = lodDistance; distance >= d && level < lodLevels - 1; d *= 2f) {
+            // the stride should fit the cells
+            if (cells % (1 << (level + 1)) != 0) { break; }
+            level++;
+        }
+        lod = level;
+        return level;
+    }
+
+    public HGModelInstance getNoiseLinesInstance() { return getNoiseLinesInstance(lod); }
+    public HGModelInstance getNoiseLinesInstance(int level) {
+        if (level <= 0 || noiseLinesHGModelInstance == null) { return noiseLinesHGModelInstance; }
+        if (lodLinesInstances[level] == null) {
+            lodLinesHgModels[level] = new HGModel(createGridModel(
+                    gridNoise, GL20.GL_LINES, 1f, Color.YELLOW, 1 << level, 0f));
+            lodLinesInstances[level] = new HGModelInstance(lodLinesHgModels[level], "grid");
+        }
+        // the transform (including the translation by the mid height) is the full resolution's one
+        lodLinesInstances[level].transform.set(noiseLinesHGModelInstance.transform);
+        return lodLinesInstances[level];
+    }
+
+    public HGModelInstance getNoiseTrianglesInstance(float scale) { return getNoiseTrianglesInstance(lod, scale); }
+    public HGModelInstance getNoiseTrianglesInstance(int level, float scale) {
+        if (level <= 0 || noiseTrianglesPhysModelInstance == null) { return noiseTrianglesPhysModelInstance; }
+        if (lodTrianglesInstances[level] == null) {
+            // the skirts are deep enough to cover any height difference with the neighbours of the same range
+            float skirtDepth = Math.max(gridNoise.getMax() - gridNoise.getMin(), 1f);
+            lodTrianglesHgModels[level] = new HGModel(createGridModel(
+                    gridNoise, GL20.GL_TRIANGLES, scale, Color.GRAY, 1 << level, skirtDepth));
+            lodTrianglesInstances[level] = new HGModelInstance(lodTrianglesHgModels[level], "grid");
+        }
+        lodTrianglesInstances[level].transform.set(noiseTrianglesPhysModelInstance.transform);
+        return lodTrianglesInstances[level];
+    }
+
+    public void clearLod() {
+        for (int level = 1; level < lodLevels; level++) {
+            if (lodLinesInstances[level] != null) { lodLinesInstances[level].dispose(); lodLinesInstances[level] = null; }
+            if (lodTrianglesInstances[level] != null) { lodTrianglesInstances[level].dispose(); lodTrianglesInstances[level] = null; }
+            if (lodLinesHgModels[level] != null) { lodLinesHgModels[level].dispose(); lodLinesHgModels[level] = null; }
+            if (lodTrianglesHgModels[level] != null) { lodTrianglesHgModels[level].dispose(); lodTrianglesHgModels[level] = null; }
+        }
+    }
+
+    // see Models.createGridMeshPart for the vertices layout
+    private void updateLinesRegion(float[] heights, int vx0, int vz0, int vx1, int vz1) {
+        Mesh mesh = noiseLinesHgModel.obj.meshes.first();
+        float[] vertices = noiseLinesHgModel.mesh2data.get(mesh).vertices;
+        // IMPORTANT: vertex size and offset are in bytes, float is 4 bytes long
+        int vs = mesh.getVertexSize() / 4;
+        int py = mesh.getVertexAttribute(VertexAttributes.Usage.Position).offset / 4 + 1;
+        int width = gridNoise.getWidth();
+        int height = gridNoise.getHeight();
+
+        // lines along X - axis: (width - 1) lines (2 vertices each) per row
+        int xa = Math.max(0, vx0 - 1);
+        int xb = Math.min(width - 2, vx1);
+        for (int z = vz0; z <= vz1 && xa <= xb; z++) {
+            int row = gridNoise.rowOffset(z);
+            int first = (z * (width - 1) + xa) * 2;
+            for (int x = xa, v = first * vs + py; x <= xb; x++, v += 2 * vs) {
+                vertices[v     ] = heights[row + x    ];
+                vertices[v + vs] = heights[row + x + 1];
+            }
+            mesh.updateVertices(first * vs, vertices, first * vs, (xb - xa + 1) * 2 * vs);
+        }
+
+        // lines along Z - axis: (height - 1) lines per column, following all lines along X - axis
+        int xLines = height * (width - 1);
+        int za = Math.max(0, vz0 - 1);
+        int zb = Math.min(height - 2, vz1);
+        for (int x = vx0; x <= vx1 && za <= zb; x++) {
+            int first = (xLines + x * (height - 1) + za) * 2;
+            for (int z = za, v = first * vs + py; z <= zb; z++, v += 2 * vs) {
+                vertices[v     ] = heights[gridNoise.rowOffset(z    ) + x];
+                vertices[v + vs] = heights[gridNoise.rowOffset(z + 1) + x];
+            }
+            mesh.updateVertices(first * vs, vertices, first * vs, (zb - za + 1) * 2 * vs);
+        }
     }
 
-    public void clearTerrain() { terrain.clear(); }
+    // see Models.createGridMeshPart for the vertices layout
+    private void updateTrianglesRegion(float[] heights, int cx0, int cz0, int cx1, int cz1, float scale) {
+        Mesh mesh = noiseTrianglesHgModel.obj.meshes.first();
+        float[] vertices = noiseTrianglesHgModel.mesh2data.get(mesh).vertices;
+        int vs = mesh.getVertexSize() / 4;
+        int py = mesh.getVertexAttribute(VertexAttributes.Usage.Position).offset / 4 + 1;
+        int cellsWidth = gridNoise.getWidth(true);
+        float yScale = gridNoise.yScale * scale;
+        float minY = Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+
+        // 2 triangles (6 vertices: p00, p01, p11, p00, p11, p10) per cell
+        for (int z = cz0; z <= cz1; z++) {
+            int row0 = gridNoise.rowOffset(z);
+            int row1 = gridNoise.rowOffset(z + 1);
+            int first = (z * cellsWidth + cx0) * 6;
+            for (int x = cx0, v = first * vs + py; x <= cx1; x++, v += 6 * vs) {
+                float y00 = heights[row0 + x    ] * yScale;
+                float y01 = heights[row1 + x    ] * yScale;
+                float y10 = heights[row0 + x + 1] * yScale;
+                float y11 = heights[row1 + x + 1] * yScale;
+                vertices[v         ] = y00;
+                vertices[v +     vs] = y01;
+                vertices[v + 2 * vs] = y11;
+                vertices[v + 3 * vs] = y00;
+                vertices[v + 4 * vs] = y11;
+                vertices[v + 5 * vs] = y10;
+                minY = Math.min(minY, Math.min(Math.min(y00, y01), Math.min(y10, y11)));
+                maxY = Math.max(maxY, Math.max(Math.max(y00, y01), Math.max(y10, y11)));
+            }
+            // NOTE: (ShapesEnum.MESH) the shape's btIndexedMesh refers to the same (direct) vertex buffer, so bullet sees the update too
+            mesh.updateVertices(first * vs, vertices, first * vs, (cx1 - cx0 + 1) * 6 * vs);
+        }
+
+        if (noiseTrianglesPhysModelInstance == null) { return; }
+        PhysicalModelInstance pmi = noiseTrianglesPhysModelInstance;
+        if (pmi.rbShapeType == ShapesEnum.HEIGHTFIELD) {
+            // bullet reads the heights as is: no tree to refit, the shape is recreated (no copies, no traversal)
+            // only if the heights are out of [min, max] it was created with
+            heightField.copyFrom(gridNoise.getArray(), cx0, cz0, cx1 + 1, cz1 + 1);
+            if (minY/yScale < pmi.rbHeightFieldMin || maxY/yScale > pmi.rbHeightFieldMax) {
+                pmi.rbHeightFieldMin = Math.min(pmi.rbHeightFieldMin, minY/yScale);
+                pmi.rbHeightFieldMax = Math.max(pmi.rbHeightFieldMax, maxY/yScale);
+                pmi.syncRBWithTransform(true);
+            }
+            btDynamicsWorldTypesEnum.selected.dynamicsWorld.updateSingleAabb(pmi.rigidBody);
+            return;
+        }
+        btBvhTriangleMeshShape shape = (btBvhTriangleMeshShape) pmi.rbCollisionShape;
+        Vector3 aabbMin = new Vector3(cx0 * scale, minY, cz0 * scale);
+        Vector3 aabbMax = new Vector3((cx1 + 1) * scale, maxY, (cz1 + 1) * scale);
+        if (collisionBounds.contains(aabbMin) && collisionBounds.contains(aabbMax)) {
+            // the region over the whole height range so the nodes of the lowered triangles overlap it as well
+            aabbMin.y = collisionBounds.min.y;
+            aabbMax.y = collisionBounds.max.y;
+            shape.partialRefitTree(aabbMin, aabbMax);
+        } else {
+            // out of the bounds the BVH is quantized over: refitting the whole tree with the new bounds
+            collisionBounds.ext(aabbMin).ext(aabbMax);
+            shape.refitTree(collisionBounds.min, collisionBounds.max);
+        }
+        btDynamicsWorldTypesEnum.selected.dynamicsWorld.updateSingleAabb(pmi.rigidBody);
+    }
+
+    private void updateTerrainRegion(float[] heights, int cx0, int cz0, int cx1, int cz1, float scale) {
+        if (gridNoise.step < 0 || terrainCells == null) { return; }
+
+        Quantizer quantizer = new Quantizer(gridNoise.step);
+        int cellsWidth = gridNoise.getWidth(true);
+        float[] ys = new float[4];     // 0b00, 0b01, 0b10, 0b11 corners of the cell
+
+        Vector3 translation = new Vector3();
+        Vector3 scaling = new Vector3();
+
+        for (int z = cz0; z <= cz1; z++) {
+            int row0 = gridNoise.rowOffset(z);
+            int row1 = gridNoise.rowOffset(z + 1);
+            for (int x = cx0; x <= cx1; x++) {
+                int cell = z * cellsWidth + x;
+                terrainTiles[cell] = null;
+
+                ys[0b00] = heights[row0 + x    ];
+                ys[0b01] = heights[row1 + x    ];
+                ys[0b10] = heights[row0 + x + 1];
+                ys[0b11] = heights[row1 + x + 1];
+
+                int code = TerrainCellTable.lookup(quantizer.toUnits(ys[0b00]), quantizer.toUnits(ys[0b01]),
+                        quantizer.toUnits(ys[0b10]), quantizer.toUnits(ys[0b11]));
+                terrainCells[cell] = code;
+
+                TerrainPartsEnum part = TerrainCellTable.part(code);
+                if (part == null || !part.ready) { continue; }
+
+                // (x + 1, z + 1) is the far (0b11) corner of the cell
+                HGModelInstance tile = placeTerrainPart(part, TerrainCellTable.corner(code),
+                        ys[TerrainCellTable.corner(code)] + TerrainCellTable.yOffsetSteps(code) * gridNoise.step,
+                        x + 1, z + 1, scale, translation, scaling);
+                tile.trn(terrainOffset);
+                terrainTiles[cell] = tile;
+            }
+        }
+
+        // the parts are re-collected from the tiles (references only), the chunk's cache is rebuilt as a whole anyway
+        terrain.clear();
+        for (HGModelInstance tile: terrainTiles) { if (tile != null) { terrain.add(tile); } }
+        terrainDirty = true;
+    }
+
+    /**
+     * @return the terrain parts merged into the cache (rebuilt only if the terrain was changed since the last call)
+     */
+    public ModelCache getTerrainCache() {
+        if (terrainCache == null) { terrainCache = new ModelCache(); }
+        if (!terrainDirty) { return terrainCache; }
+
+        terrainBounds.inf();
+        terrainCache.begin();
+        for (HGModelInstance mi: terrain) {
+            terrainCache.add(mi);
+            terrainBounds.ext(mi.getBB(true)); // the bounding box is the prototype's one, no vertices traversal
+        }
+        terrainCache.end();
+
+        terrainDirty = false;
+        return terrainCache;
+    }
+
+    // (x, z) is the far (0b11) corner of the cell, y is the height of the part's top
+    public HGModelInstance placeTerrainPart(TerrainPartsEnum part, int corner, float y, int x, int z, float scale,
+                                            Vector3 translation, Vector3 scaling) {
+        return placeTerrainPart(part, corner, y, x, z, scale, gridNoise.yScale, gridNoise.step,
+                gridNoise.getX0(), gridNoise.getZ0(), translation, scaling);
+    }
+
+    // x0, z0: the grid's origin adjusted to the MAP_CENTER (see HGGrid.getX0)
+    public static HGModelInstance placeTerrainPart(TerrainPartsEnum part, int corner, float y, int x, int z, float scale,
+                                                   float yScale, float step, int x0, int z0,
+                                                   Vector3 translation, Vector3 scaling) {
+        // the prototype shares the bounding box, so no vertices are traversed here
+        HGModelInstance tmp = new HGModelInstance(part.sample);
+
+        float factor = part == TRRN_FLAT ? 1f : yScale * step/tmp.dims.y;
+
+        translation.set(x, y, z);
+        translation.scl(1f, yScale, 1f);
+        translation.sub(tmp.dims.x/2f, tmp.dims.y * factor/2f, tmp.dims.z/2f);
+        translation.add(x0, 0, z0);
+        scaling.set(scale, factor * scale, scale);
+        tmp.setToTranslationAndScaling(translation.scl(scale), scaling);
+        if (part != TRRN_FLAT) { tmp.rotate(part.rotations[corner]); }
+        return tmp;
+    }
+
+    public void clearTerrain() {
+        terrain.clear();
+        if (terrainTiles != null) { Arrays.fill(terrainTiles, null); }
+        terrainOffset.setZero();
+        terrainDirty = true;
+    }
+
+    public void dispose() {
+        clearTerrain();
+        clearLod();
+        if (terrainCache != null) { terrainCache.dispose(); terrainCache = null; }
+        // models
+        if (noiseLinesHgModel != null) { noiseLinesHgModel.dispose(); noiseLinesHgModel = null; }
+        if (noiseTrianglesHgModel != null) { noiseTrianglesHgModel.dispose(); noiseTrianglesHgModel = null; }
+        // instances (the physical one also removes the ground rigid body from the dynamics world)
+        if (noiseLinesHGModelInstance != null) { noiseLinesHGModelInstance.dispose(); noiseLinesHGModelInstance = null; }
+        if (noiseTrianglesPhysModelInstance != null) { noiseTrianglesPhysModelInstance.dispose(); noiseTrianglesPhysModelInstance = null; }
+        // released only after the shape referring it is gone
+        heightField = null;
+        // gridHgModel is shared between all chunks and is not disposed here
+        yLinesHGModelInstance = null;
+        // dropping the graph nodes (the connections to the neighbours are removed by HGGraph.removeGraphNodesGrid)
+        for (HGGraphNode node: gridNoise.graphNodes) { node.connections.clear(); }
+        gridNoise.graphNodes.clear();
+    }
+
+    // a rough estimate (in bytes) of the memory held by the chunk: heights, graph and meshes (CPU + GPU copies)
+    public long estimateMemory() {
+        long bytes = (long) gridNoise.getWidth() * gridNoise.getHeight() * Float.BYTES;
+        for (HGGraphNode node: gridNoise.graphNodes) {
+            // node + coordinates + connections array + connections (each ~ 24 bytes)
+            bytes += 64 + node.connections.size * 24L;
+        }
+        bytes += estimateMemory(noiseLinesHgModel);
+        bytes += estimateMemory(noiseTrianglesHgModel);
+        if (heightField != null) { bytes += (long) heightField.width * heightField.height * Float.BYTES; }
+        // terrain parts share the models, only the instances are counted
+        bytes += terrain.size * 256L;
+        return bytes;
+    }
+
+    public static long estimateMemory(HGModel hgModel) {
+        if (hgModel == null || hgModel.obj == null) { return 0; }
+        long bytes = 0;
+        for (Mesh mesh: hgModel.obj.meshes) {
+            bytes += (long) mesh.getNumVertices() * mesh.getVertexSize();
+            bytes += (long) mesh.getNumIndices() * Short.BYTES;
+        }
+        // HGModel also keeps the CPU copy of the vertices and indices (see HGModel.MeshData)
+        return 2 * bytes;
+    }
 
     public void trn(float x, float y, float z) {
         trnNoiseLinesHgModelInstance(x, y, z);
@@ -395,8 +629,10 @@ public class TerrainChunk {
     }
 
     public void trnTerrain(float x, float y, float z) {
+        terrainOffset.add(x, y, z);
         if (terrain.size == 0) { return; }
 
         for (HGModelInstance mi: terrain) { mi.trn(x, y, z); }
+        terrainDirty = true;
     }
 }
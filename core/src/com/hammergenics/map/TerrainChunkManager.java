@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.hammergenics.HGEngine;
+
+import static com.hammergenics.HGEngine.MAP_CENTER;
+import static com.hammergenics.HGEngine.MAP_SIZE;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class TerrainChunkManager {
+    public final HGEngine eng;
+    // chunk coordinates: (x0 - MAP_CENTER) / MAP_SIZE, (z0 - MAP_CENTER) / MAP_SIZE (see HGGrid.getX0())
+    public final LongMap<ChunkEntry> coords2entry = new LongMap<>();
+    // the chunk coordinates' bounds of the chunks registered (see HGEngine.rayTerrain): extended on register,
+    // shrunk on evict/unloadAll only, so these might be wider than needed (the coordinates within are not all loaded anyway)
+    public int minCx = Integer.MAX_VALUE, minCz = Integer.MAX_VALUE;
+    public int maxCx = Integer.MIN_VALUE, maxCz = Integer.MIN_VALUE;
+
+    public int loadRadius = 2;          // rings of chunks loaded around the camera
+    public int keepRadius = 3;          // chunks within this radius are never evicted
+    public int maxLoadsPerFrame = 1;    // generating a chunk is not cheap, spreading it over the frames (meshing is async)
+    public long memoryBudget = 64L * 1024 * 1024; // bytes, see TerrainChunk.estimateMemory
+    public long memoryUsed = 0L;
+
+    private long frame = 0L;
+    private final Array<ChunkEntry> candidates = new Array<>(true, 16, ChunkEntry.class);
+
+    public static class ChunkEntry {
+        public final int cx;
+        public final int cz;
+        public final TerrainChunk chunk;
+        public long lastUsedFrame = 0L;
+        public long memory = 0L;
+
+        public ChunkEntry(int cx, int cz, TerrainChunk chunk) {
+            this.cx = cx;
+            this.cz = cz;
+            this.chunk = chunk;
+        }
+    }
+
+    public TerrainChunkManager(HGEngine eng) {
+        this.eng = eng;
+
+        for (TerrainChunk tc: eng.chunks) { register(tc); }
+    }
+
+    // gridCoord is adjusted to the map center (see HGGrid.getX0(boolean adjCenter))
+    public static int toChunkCoord(int gridCoord) { return Math.floorDiv(gridCoord, MAP_SIZE); }
+    public static long toKey(int cx, int cz) { return ((long) cx << 32) | (cz & 0xFFFFFFFFL); }
+
+    public ChunkEntry register(TerrainChunk tc) {
+        int cx = toChunkCoord(tc.gridNoise.getX0());
+        int cz = toChunkCoord(tc.gridNoise.getZ0());
+        ChunkEntry entry = new ChunkEntry(cx, cz, tc);
+        entry.lastUsedFrame = frame;
+        entry.memory = tc.estimateMemory();
+        coords2entry.put(toKey(cx, cz), entry);
+        memoryUsed += entry.memory;
+        extendBounds(cx, cz);
+        return entry;
+    }
+
+    private void extendBounds(int cx, int cz) {
+        minCx = Math.min(minCx, cx);
+        minCz = Math.min(minCz, cz);
+        maxCx = Math.max(maxCx, cx);
+        maxCz = Math.max(maxCz, cz);
+    }
+
+    private void recalculateBounds() {
+        minCx = minCz = Integer.MAX_VALUE;
+        maxCx = maxCz = Integer.MIN_VALUE;
+        for (ChunkEntry entry: coords2entry.values()) { extendBounds(entry.cx, entry.cz); }
+    }
+
+    public TerrainChunk getChunk(int cx, int cz) {
+        ChunkEntry entry = coords2entry.get(toKey(cx, cz));
+        return entry != null ? entry.chunk : null;
+    }
+
+    /**
+     * Loads the missing chunks in rings around the position (the closest rings first) and evicts
+     * the least recently used chunks outside of the keep radius once the memory budget is exceeded.
+     *
+     * @param position world position (usually the camera's one)
+     * @param scale    the scale the chunks are rendered with (see HGEngine.unitSize)
+     * @return the amount of chunks loaded
+     */
+    public int update(Vector3 position, float scale) {
+        // no unit size yet (no models loaded) or the noise is being generated on the workers
+        if (position == null || scale <= 0f || eng.isNoiseGenerating()) { return 0; }
+        frame++;
+
+        int ccx = toChunkCoord(MathUtils.floor(position.x / scale));
+        int ccz = toChunkCoord(MathUtils.floor(position.z / scale));
+
+        int loaded = 0;
+        for (int r = 0; r <= loadRadius; r++) {
+            for (int dz = -r; dz <= r; dz++) {
+                for (int dx = -r; dx <= r; dx++) {
+                    if (Math.max(Math.abs(dx), Math.abs(dz)) != r) { continue; } // ring r only
+
+                    ChunkEntry entry = coords2entry.get(toKey(ccx + dx, ccz + dz));
+                    if (entry == null) {
+                        if (loaded >= maxLoadsPerFrame) { continue; }
+                        entry = load(ccx + dx, ccz + dz, scale);
+                        loaded++;
+                    }
+                    entry.lastUsedFrame = frame;
+                }
+            }
+        }
+
+        if (loaded > 0) { evict(ccx, ccz); }
+        return loaded;
+    }
+
+    public ChunkEntry load(int cx, int cz, float scale) {
+        // no meshes: built on the workers and uploaded later (see HGEngine.resetChunkAsync)
+        TerrainChunk tc = new TerrainChunk(MAP_SIZE + 1, MAP_CENTER + cx * MAP_SIZE, MAP_CENTER + cz * MAP_SIZE, false);
+
+        // the saved chunks are read as is (see HGEngine.loadChunks), otherwise
+        // same stages (and seeds) the rest of the map was generated with
+        boolean stored = eng.chunkStore != null && eng.chunkStore.read(cx, cz, tc);
+        if (!stored && eng.noiseStages.size > 0) {
+            // the owned samples only: the shared edges of the loaded neighbours are copied (see HGEngine.stitchChunk)
+            tc.generateNoise(eng.yScale, eng.noiseStages, false);
+            eng.generateMissingGhosts(tc);
+            if (eng.step > 0f) { tc.roundNoiseToStep(eng.step); }
+        }
+        // the neighbours' ghosts are updated as well (re-meshed by HGEngine.updateDirtyChunks)
+        eng.stitchChunk(tc);
+
+        eng.chunks.add(tc);
+        eng.pfaGraph.addGraphNodesGrid(tc.gridNoise);
+        // NOTE: the mid of the map is kept as is (see HGEngine.resetChunks), otherwise all the chunks
+        //       already loaded would have to be shifted each time a new one comes in
+        eng.resetChunkAsync(tc, scale, !stored);
+
+        return register(tc);
+    }
+
+    public void evict(int ccx, int ccz) {
+        memoryUsed = 0L;
+        candidates.clear();
+        for (ChunkEntry entry: coords2entry.values()) {
+            entry.memory = entry.chunk.estimateMemory();
+            memoryUsed += entry.memory;
+            if (Math.max(Math.abs(entry.cx - ccx), Math.abs(entry.cz - ccz)) > keepRadius) { candidates.add(entry); }
+        }
+        if (memoryUsed <= memoryBudget || candidates.size == 0) { return; }
+
+        // least recently used first, the farthest first among the ones used in the same frame
+        candidates.sort((e1, e2) -> {
+            if (e1.lastUsedFrame != e2.lastUsedFrame) { return Long.compare(e1.lastUsedFrame, e2.lastUsedFrame); }
+            return Integer.compare(
+                    Math.max(Math.abs(e2.cx - ccx), Math.abs(e2.cz - ccz)),
+                    Math.max(Math.abs(e1.cx - ccx), Math.abs(e1.cz - ccz)));
+        });
+
+        for (ChunkEntry entry: candidates) {
+            if (memoryUsed <= memoryBudget) { break; }
+            unload(entry);
+        }
+        candidates.clear();
+        recalculateBounds();
+    }
+
+    public void unloadAll() {
+        candidates.clear();
+        for (ChunkEntry entry: coords2entry.values()) { candidates.add(entry); }
+        for (ChunkEntry entry: candidates) { unload(entry); }
+        candidates.clear();
+        // the chunks never registered (if any)
+        for (TerrainChunk tc: eng.chunks) { eng.pfaGraph.removeGraphNodesGrid(tc.gridNoise); tc.dispose(); }
+        eng.chunks.clear();
+        eng.meshBuilder.cancelAll();
+        memoryUsed = 0L;
+        recalculateBounds();
+    }
+
+    public void unload(ChunkEntry entry) {
+        if (entry == null || coords2entry.remove(toKey(entry.cx, entry.cz)) == null) { return; }
+
+        eng.chunks.removeValue(entry.chunk, true);
+        eng.meshBuilder.cancel(entry.chunk);
+        // the graph should be updated before the chunk drops its nodes
+        eng.pfaGraph.removeGraphNodesGrid(entry.chunk.gridNoise);
+        entry.chunk.dispose();
+        memoryUsed -= entry.memory;
+    }
+}
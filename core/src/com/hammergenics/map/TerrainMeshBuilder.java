@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.hammergenics.ai.pfa.HGGraphNodesGrid;
+import com.hammergenics.core.graphics.g3d.HGModel;
+import com.hammergenics.core.graphics.g3d.HGModelInstance;
+import com.hammergenics.core.utils.HGWorkers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.hammergenics.core.graphics.g3d.utils.Models.createGridMeshData;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class TerrainMeshBuilder {
+    // the time (per frame) the render thread is allowed to spend on the uploads: the next upload is started
+    // only if it's expected (see uploadNanos) to fit in, the first one is always done (otherwise a single
+    // upload longer than the budget would never be done)
+    public float uploadBudgetMillis = 4f;
+    // the running average of the time spent on the render thread per chunk (the upload and the listener)
+    public long uploadNanos = 0;
+
+    public interface Listener {
+        // called on the render thread right after the chunk's meshes are uploaded (see TerrainChunk.resetNoiseModelInstances)
+        void uploaded(Job job);
+
+        class ListenerAdapter implements Listener {
+            @Override public void uploaded(Job job) { }
+        }
+    }
+
+    public final Listener listener;
+    // render thread only: the latest job per chunk, the results of the older ones are dropped
+    private final ObjectMap<TerrainChunk, Job> chunk2job = new ObjectMap<>();
+    // the jobs done by the workers, waiting for the upload
+    private final ConcurrentLinkedQueue<Job> built = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Everything the render thread is not needed for: the vertices and indices of the meshes, the cells
+     * classification, the terrain parts (see TerrainChunk.buildTerrainParts) and the graph nodes' coordinates
+     * (see HGGraphNodesGrid.coordinates). Only the upload and the rigid body are left for the render thread.
+     */
+    public static class Job implements Runnable {
+        public final TerrainChunk tc;
+        public final float scale;
+        public final boolean classify;
+        // the height the chunk is translated down by (see HGEngine.mid)
+        public final float mid;
+        // the snapshot taken on the render thread, the worker doesn't touch the grid itself
+        final float[] heights;
+        final int width;
+        final int height;
+        final float yScale;
+        final float step;
+        final int x0;
+        final int z0;
+        final int modCount;
+        // false: the codes already in place are copied (e.g. loaded by ChunkStore), the chunk keeps using its own
+        final boolean classifyCells;
+        final ConcurrentLinkedQueue<Job> built;
+        public HGModel.MeshData lines;
+        public HGModel.MeshData triangles;
+        // null if the parts are not placed (the step is not set, see HGGrid.step)
+        public int[] cells;
+        public HGModelInstance[] tiles;
+        public float[] nodeCoordinates;
+        Throwable error;
+
+        Job(TerrainChunk tc, float scale, float mid, boolean classify, ConcurrentLinkedQueue<Job> built) {
+            HGGrid grid = tc.gridNoise;
+            this.tc = tc;
+            this.scale = scale;
+            this.mid = mid;
+            this.heights = grid.getArray().clone();
+            this.width = grid.getWidth();
+            this.height = grid.getHeight();
+            this.yScale = grid.yScale;
+            this.step = grid.step;
+            this.x0 = grid.getX0();
+            this.z0 = grid.getZ0();
+            this.modCount = grid.modCount;
+            this.classify = classify;
+            this.built = built;
+            int cellsCount = (width - 1) * (height - 1);
+            this.classifyCells = classify || tc.terrainCells == null || tc.terrainCells.length != cellsCount;
+            this.cells = classifyCells ? new int[cellsCount] : tc.terrainCells.clone();
+        }
+
+        @Override
+        public void run() {
+            try {
+                lines = createGridMeshData(heights, width, height, yScale, GL20.GL_LINES, scale, 1, 0f);
+                triangles = createGridMeshData(heights, width, height, yScale, GL20.GL_TRIANGLES, scale, 1, 0f);
+                if (step >= 0) {
+                    tiles = TerrainChunk.buildTerrainParts(heights, width, height, yScale, step, x0, z0,
+                            scale, -mid * yScale * scale, cells, classifyCells);
+                } else {
+                    cells = null;
+                }
+                nodeCoordinates = HGGraphNodesGrid.coordinates(heights, width, height, x0, z0, mid, yScale, scale);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                built.add(this);
+            }
+        }
+    }
+
+    public TerrainMeshBuilder(Listener listener) { this.listener = listener; }
+
+    /**
+     * Render thread only. Snapshots the chunk's heights and builds the vertices and indices of its meshes,
+     * the terrain parts and the graph nodes' coordinates on the workers (see HGWorkers.pool), the meshes
+     * are uploaded later by update. The previous job for the same chunk (if any) is superseded.
+     *
+     * @param mid the height the chunk is translated down by (see HGEngine.resetChunk)
+     * @param classify false - the cells classification already in place is used (see HGEngine.resetChunk)
+     */
+    public void submit(TerrainChunk tc, float scale, float mid, boolean classify) {
+        Job job = new Job(tc, scale, mid, classify, built);
+        chunk2job.put(tc, job);
+        HGWorkers.pool.execute(job);
+    }
+
+    // the chunk is gone (e.g. disposed), the results for it are dropped
+    public void cancel(TerrainChunk tc) { chunk2job.remove(tc); }
+    public void cancelAll() { chunk2job.clear(); }
+
+    public boolean isPending(TerrainChunk tc) { return chunk2job.containsKey(tc); }
+    public boolean isBusy() { return chunk2job.size > 0; }
+
+    /**
+     * Render thread only. Uploads the meshes built so far while the time budget (see uploadBudgetMillis) allows.
+     * The chunks modified since the snapshot (see HGGrid.modCount) are re-submitted instead.
+     *
+     * @return the amount of chunks uploaded
+     */
+    public int update() {
+        long start = TimeUtils.nanoTime();
+        long budget = (long) (uploadBudgetMillis * 1000000L);
+        int uploaded = 0;
+
+        Job job;
+        while ((uploaded == 0 || TimeUtils.timeSinceNanos(start) + uploadNanos <= budget) && (job = built.poll()) != null) {
+            if (chunk2job.get(job.tc) != job) { continue; } // superseded or cancelled
+
+            if (job.error != null) {
+                chunk2job.remove(job.tc);
+                Gdx.app.error("mesh", "ERROR: building the chunk's meshes failed: " + job.error);
+                continue;
+            }
+            if (job.modCount != job.tc.gridNoise.modCount) { submit(job.tc, job.scale, job.mid, job.classify); continue; }
+
+            long uploadStart = TimeUtils.nanoTime();
+            chunk2job.remove(job.tc);
+            job.tc.resetNoiseModelInstances(job.scale, job.lines, job.triangles);
+            if (listener != null) { listener.uploaded(job); }
+            uploaded++;
+            long spent = TimeUtils.timeSinceNanos(uploadStart);
+            uploadNanos = uploadNanos == 0 ? spent : (uploadNanos * 7 + spent) / 8;
+        }
+        return uploaded;
+    }
+}
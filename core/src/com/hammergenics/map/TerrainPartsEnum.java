@@ -19,6 +19,7 @@ package com.hammergenics.map;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ArrayMap;
@@ -174,6 +175,8 @@ public enum TerrainPartsEnum {
     public int leadingCornerI2d = -1;
     public int leadingCornerI3d = -1;
     public boolean ready = false;
+    // the rotation of the part for each reference corner (2d index) of a cell, see TerrainCellTable
+    public final Quaternion[] rotations = new Quaternion[]{ new Quaternion(), new Quaternion(), new Quaternion(), new Quaternion() };
 
     protected final ArrayMap<Integer, Float> index2distance = new ArrayMap<>(Integer.class, Float.class);
 
@@ -205,6 +208,7 @@ public enum TerrainPartsEnum {
         this.leadingCornerI2d = -1;
         this.leadingCornerI3d = -1;
         this.ready = false;
+        updateRotations();
     }
 
     public static void clearAll() {
@@ -227,6 +231,37 @@ public enum TerrainPartsEnum {
         leadingCornerV.set(sample.getBBCorner(index, false, cornerVs.get(index)));
         leadingCornerI2d = ((index & 0b100) >> 1) | (index & 0b001);
         leadingCornerI3d = index;
+        updateRotations();
+    }
+
+    public void updateRotations() {
+        for (int corner = 0; corner < rotations.length; corner++) {
+            Quaternion rotation = rotations[corner].idt();
+            if (leadingCornerI2d < 0) { continue; }
+            switch (this) {
+                case TRRN_SIDE:
+                    switch (leadingCornerI2d ^ corner) {
+                        case 0b01: rotation.setEulerAngles(90, 0, 0); break;
+                        case 0b10: rotation.setEulerAngles(-90, 0, 0); break;
+                        case 0b11: rotation.setEulerAngles(180, 0, 0); break;
+                    }
+                    break;
+                case TRRN_CORN_INN:
+                case TRRN_CORN_OUT:
+                    // LC - Leading Corner
+                    // PP - Protrusive Point (the reference corner)
+                    //                0     1     2     3
+                    // indices2d = {0b00, 0b01, 0b11, 0b10}
+                    //            LC  PP  Steps  Expected Result
+                    // Example 1: 00  01    1    turn 90 degrees counterclockwise (yaw: 90 (or -270) degrees)
+                    // Example 2: 01  00   -1    turn 90 degrees clockwise (yaw: -90 (or 270) degrees)
+                    // Example 3: 00  10    3    turn 90 degrees clockwise (yaw: -90 (or 270) degrees)
+                    // Example 4: 10  00   -3    turn 90 degrees counterclockwise (yaw: 90 (or -270) degrees)
+                    // Example 5: 01  11    1    turn 90 degrees counterclockwise (yaw: 90 (or -270) degrees)
+                    rotation.setEulerAngles(HGModelInstance.get90DegreeRotationSteps(leadingCornerI2d, corner) * 90f, 0, 0);
+                    break;
+            }
+        }
     }
 
     public abstract boolean parseMesh(HGModel model, HGModelInstance sample);
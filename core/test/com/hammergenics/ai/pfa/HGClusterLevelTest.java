@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.DefaultGraphPath;
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGClusterLevelTest {
+    private static final int GRIDS = 8;
+    private static final int SIZE = 64;
+    // HPA* trades the optimality for the speed: the paths go through the entrances' middle cells
+    private static final float COST_BOUND = 1.15f;
+    // admissible for the squared distance costs (see HGCsrGraph.costs): a straight step costs 1 at least,
+    // a diagonal one 2. NOTE: HGGraphNode.heuristic (the squared distance) overestimates, so the flat search
+    // with it is greedy (few expansions, not optimal): the optimal flat A* is the baseline here
+    private static final Heuristic<HGGraphNode> MANHATTAN = (node, endNode) ->
+            Math.abs(node.coordinates.x - endNode.coordinates.x) + Math.abs(node.coordinates.z - endNode.coordinates.z);
+
+    private final HGGraph graph = new HGGraph();
+    private final HGGraphNodesGrid[] grids = new HGGraphNodesGrid[GRIDS * GRIDS];
+    private HGIndexedAStarPathFinder<HGGraphNode> flat;
+
+    private void createMap() {
+        Random random = new Random(3);
+        for (int i = 0; i < grids.length; i++) {
+            HGGraphNodesGrid grid = new HGGraphNodesGrid(SIZE + 1, (i % GRIDS) * SIZE, (i / GRIDS) * SIZE);
+            float[] values = grid.getArray();
+            for (int v = 0; v < values.length; v++) { values[v] = random.nextFloat() * 0.5f; }
+            grid.recalculate();
+            grids[i] = grid;
+            graph.addGraphNodesGrid(grid);
+        }
+        graph.hierarchical = true;
+        graph.csrBackend = true;
+        flat = new HGIndexedAStarPathFinder<>(graph.getCsr().search, true);
+    }
+
+    private HGGraphNode node(Random random, int grid) {
+        return grids[grid].getGraphNode(random.nextInt(SIZE), random.nextInt(SIZE));
+    }
+
+    @Test
+    public void validPathsWithinBoundAndFewerExpansions() {
+        createMap();
+        Random random = new Random(11);
+        long flatExpanded = 0, hpaExpanded = 0;
+        for (int i = 0; i < 10; i++) {
+            // opposite corners of the map: the long queries HPA* is for
+            HGGraphNode start = node(random, random.nextInt(2) * (GRIDS - 1));
+            HGGraphNode end = node(random, grids.length - 1 - random.nextInt(2) * (GRIDS - 1));
+
+            DefaultGraphPath<Connection<HGGraphNode>> path = new DefaultGraphPath<>();
+            assertTrue(graph.searchConnectionPath(start, end, path));
+            float hpaCost = cost(start, end, path);
+            hpaExpanded += graph.expandedNodes;
+
+            path.clear();
+            assertTrue(flat.searchConnectionPath(start, end, MANHATTAN, path));
+            float flatCost = cost(start, end, path);
+            flatExpanded += flat.metrics.visitedNodes;
+
+            assertTrue("hpa: " + hpaCost + " flat: " + flatCost, hpaCost <= flatCost * COST_BOUND);
+        }
+        assertTrue("hpa: " + hpaExpanded + " flat: " + flatExpanded, hpaExpanded * 10 < flatExpanded);
+    }
+
+    // S -> E1, then S -> E2: E2 must not take the slot of S (the same abstract node for both ends otherwise)
+    @Test
+    public void endpointsKeepTheirSlots() {
+        createMap();
+        HGClusterLevel level = graph.clusterLevel;
+        level.update();
+        Random random = new Random(5);
+        HGGraphNode start = node(random, 0);
+        HGGraphNode end1 = node(random, 1);
+        HGGraphNode end2 = node(random, 2);
+
+        level.pin(start, end1);
+        HGGraphNode abstractStart = level.toAbstract(start);
+        assertNotSame(abstractStart, level.toAbstract(end1));
+
+        level.pin(start, end2);
+        assertSame(abstractStart, level.toAbstract(start));
+        HGGraphNode abstractEnd2 = level.toAbstract(end2);
+        assertNotSame(abstractStart, abstractEnd2);
+        assertSame(start, level.toBase(abstractStart));
+        assertSame(end2, level.toBase(abstractEnd2));
+        level.pin(null, null);
+    }
+
+    @Test
+    public void replanningFromSameStart() {
+        createMap();
+        Random random = new Random(5);
+        HGGraphNode start = node(random, 0);
+        for (int i = 0; i < 5; i++) {
+            HGGraphNode end = node(random, grids.length - 1 - random.nextInt(GRIDS));
+            DefaultGraphPath<Connection<HGGraphNode>> path = new DefaultGraphPath<>();
+            assertTrue(graph.searchConnectionPath(start, end, path));
+            cost(start, end, path);
+            int hpaExpanded = graph.expandedNodes;
+
+            path.clear();
+            assertTrue(flat.searchConnectionPath(start, end, MANHATTAN, path));
+            assertTrue("hpa: " + hpaExpanded + " flat: " + flat.metrics.visitedNodes, hpaExpanded * 10 < flat.metrics.visitedNodes);
+        }
+    }
+
+    // the path's cost, each of the moves should be an edge of the snapshot
+    private float cost(HGGraphNode start, HGGraphNode end, DefaultGraphPath<Connection<HGGraphNode>> path) {
+        HGCsrGraph csr = graph.getCsr();
+        HGGraphNode current = start;
+        float cost = 0f;
+        for (Connection<HGGraphNode> connection: path) {
+            assertTrue(connection.getFromNode() == current);
+            int edge = -1;
+            for (int e = csr.offsets[current.index]; e < csr.offsets[current.index + 1]; e++) {
+                if (csr.nodes[csr.targets[e]] == connection.getToNode()) { edge = e; }
+            }
+            assertTrue(edge >= 0);
+            cost += csr.costs[edge];
+            current = connection.getToNode();
+        }
+        assertTrue(current == end);
+        return cost;
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.ai.pfa;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.DefaultGraphPath;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HGJumpPointSearchTest {
+    private static final int GRIDS = 5;
+    private static final int SIZE = 64;
+
+    // the nodes expanded by A* (see astar)
+    private long astarExpanded = 0;
+
+    @Test
+    public void sameCostsAndFewerExpansionsThanAStar() {
+        Random random = new Random(7);
+        HGGraph graph = new HGGraph();
+        HGGraphNodesGrid[] grids = new HGGraphNodesGrid[GRIDS * GRIDS];
+        for (int i = 0; i < grids.length; i++) {
+            // a few grids missing: the borders inside of the map
+            if (i == 7 || i == 12 || i == 18) { continue; }
+            grids[i] = new HGGraphNodesGrid(SIZE + 1, (i % GRIDS) * SIZE - 96, (i / GRIDS) * SIZE - 96);
+            graph.addGraphNodesGrid(grids[i]);
+        }
+
+        long jpsExpanded = 0;
+        int found = 0;
+        for (int i = 0; i < 150; i++) {
+            HGGraphNodesGrid from = grids[random.nextInt(grids.length)], to = grids[random.nextInt(grids.length)];
+            if (from == null || to == null) { continue; }
+            HGGraphNode start = from.getGraphNode(random.nextInt(SIZE), random.nextInt(SIZE));
+            HGGraphNode end = to.getGraphNode(random.nextInt(SIZE), random.nextInt(SIZE));
+            if (start == end) { continue; }
+
+            DefaultGraphPath<Connection<HGGraphNode>> path = new DefaultGraphPath<>();
+            boolean jps = graph.jumpPointSearcher.searchConnectionPath(start, end, path);
+            double optimal = astar(graph.getCsr(), start, end);
+            jpsExpanded += graph.jumpPointSearcher.expandedNodes;
+
+            assertEquals(optimal < Double.MAX_VALUE, jps);
+            if (!jps) { continue; }
+            assertEquals(optimal, cost(graph.getCsr(), start, end, path), 1e-3);
+            found++;
+        }
+        assertTrue(found > 100);
+        assertTrue("jps: " + jpsExpanded + " astar: " + astarExpanded, jpsExpanded * 10 < astarExpanded);
+    }
+
+    @Test
+    public void unevenGridsGoThroughAStar() {
+        HGGraph graph = new HGGraph();
+        HGGraphNodesGrid grid = new HGGraphNodesGrid(SIZE + 1, 0, 0);
+        graph.addGraphNodesGrid(grid);
+        graph.jumpPointSearch = true;
+        HGGraphNode start = grid.getGraphNode(0, 0), end = grid.getGraphNode(SIZE - 1, SIZE / 2);
+
+        DefaultGraphPath<Connection<HGGraphNode>> path = new DefaultGraphPath<>();
+        assertTrue(graph.getCsr().flat);
+        assertTrue(graph.searchConnectionPath(start, end, path));
+        assertTrue(graph.jumpPointSearcher.expandedNodes > 0);
+
+        // the octile costs know nothing of the heights
+        grid.getArray()[grid.rowOffset(SIZE / 2) + SIZE / 2] = 10f;
+        grid.recalculate();
+        graph.jumpPointSearcher.expandedNodes = 0;
+        path.clear();
+        assertFalse(graph.getCsr().flat);
+        assertTrue(graph.searchConnectionPath(start, end, path));
+        assertEquals(0, graph.jumpPointSearcher.expandedNodes);
+    }
+
+    private static double octile(HGGraphNode from, HGGraphNode to) {
+        int dx = Math.abs(from.grid.getCellX(from) - to.grid.getCellX(to));
+        int dz = Math.abs(from.grid.getCellZ(from) - to.grid.getCellZ(to));
+        return Math.max(dx, dz) + (Math.sqrt(2) - 1) * Math.min(dx, dz);
+    }
+
+    // the path's cost, each of the moves should be an edge of the snapshot
+    private static double cost(HGCsrGraph csr, HGGraphNode start, HGGraphNode end, DefaultGraphPath<Connection<HGGraphNode>> path) {
+        HGGraphNode current = start;
+        double cost = 0;
+        for (Connection<HGGraphNode> connection: path) {
+            assertTrue(connection.getFromNode() == current);
+            boolean edge = false;
+            int index = current.index;
+            for (int e = csr.offsets[index]; e < csr.offsets[index + 1]; e++) {
+                if (csr.nodes[csr.targets[e]] == connection.getToNode()) { edge = true; }
+            }
+            assertTrue(edge);
+            cost += octile(current, connection.getToNode());
+            current = connection.getToNode();
+        }
+        assertTrue(current == end);
+        return cost;
+    }
+
+    // the plain A* over the snapshot's edges with the octile costs: the optimal cost, MAX_VALUE if unreachable
+    private double astar(HGCsrGraph csr, HGGraphNode start, HGGraphNode end) {
+        double[] costs = new double[csr.nodeCount];
+        boolean[] closed = new boolean[csr.nodeCount];
+        Arrays.fill(costs, Double.MAX_VALUE);
+        PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        costs[start.index] = 0;
+        open.add(new double[]{ octile(start, end), start.index });
+        while (!open.isEmpty()) {
+            int index = (int) open.poll()[1];
+            if (closed[index]) { continue; }
+            closed[index] = true;
+            if (index == end.index) { return costs[index]; }
+            astarExpanded++;
+            for (int e = csr.offsets[index]; e < csr.offsets[index + 1]; e++) {
+                int target = csr.targets[e];
+                double cost = costs[index] + octile(csr.nodes[index], csr.nodes[target]);
+                if (cost >= costs[target]) { continue; }
+                costs[target] = cost;
+                open.add(new double[]{ cost + octile(csr.nodes[target], end), target });
+            }
+        }
+        return Double.MAX_VALUE;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.hammergenics.map.GridGenerationJob.Dungeon;
+import com.hammergenics.map.GridGenerationJob.GeneratorsEnum;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class GridGenerationJobTest {
+    // odd: the dungeon's lattice (see Dungeon.placeRooms) fits the grid
+    private static final int SIZE = 129;
+
+    // on the calling thread (no listener: nothing is posted)
+    private static float[] generate(GeneratorsEnum generator, long seed) {
+        GridGenerationJob job = new GridGenerationJob(generator, SIZE, seed, null);
+        generator.generate(job);
+        return job.grid.getArray().clone();
+    }
+
+    @Test
+    public void sameSeedSameGrid() {
+        for (GeneratorsEnum generator: GeneratorsEnum.values()) {
+            for (long seed = 1; seed <= 5; seed++) {
+                assertArrayEquals(generator + " seed " + seed, generate(generator, seed), generate(generator, seed), 0f);
+            }
+            assertFalse(generator.toString(), Arrays.equals(generate(generator, 1), generate(generator, 2)));
+        }
+    }
+
+    @Test
+    public void dungeonConnectedWithNoDeadEnds() {
+        for (long seed = 1; seed <= 20; seed++) {
+            float[] cells = generate(GeneratorsEnum.DUNGEON, seed);
+            int carved = 0, start = -1;
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] == Dungeon.WALL) { continue; }
+                carved++;
+                start = i;
+                int x = i % SIZE, z = i / SIZE;
+                assertTrue("seed " + seed + " border " + x + ", " + z, x > 0 && z > 0 && x < SIZE - 1 && z < SIZE - 1);
+                assertTrue("seed " + seed + " dead end " + x + ", " + z, exits(cells, i) > 1);
+            }
+            assertTrue("seed " + seed, carved > SIZE * SIZE / 4);
+            assertEquals("seed " + seed, carved, reachable(cells, start));
+        }
+    }
+
+    @Test
+    public void cancelledJobFinishesWithFalse() throws InterruptedException {
+        for (GeneratorsEnum generator: GeneratorsEnum.values()) {
+            CountDownLatch finished = new CountDownLatch(1);
+            AtomicInteger result = new AtomicInteger(-1);
+            // no Gdx.app: the listener is called on the worker (see HGWorkers.postToRenderThread)
+            GridGenerationJob job = new GridGenerationJob(generator, SIZE, 1, new GridGenerationJob.Listener() {
+                @Override
+                public void progress(GridGenerationJob job, int done, int total) { if (done == 1) { job.cancel(); } }
+
+                @Override
+                public void finished(GridGenerationJob job, boolean success) {
+                    result.set(success ? 1 : 0);
+                    finished.countDown();
+                }
+            });
+            assertTrue(job.submit());
+            assertTrue(generator.toString(), finished.await(30, TimeUnit.SECONDS));
+            assertEquals(generator.toString(), 0, result.get());
+            assertTrue(generator.toString(), job.done.get() < job.total);
+        }
+    }
+
+    private static int exits(float[] cells, int i) {
+        int exits = 0;
+        for (int next: new int[]{ i - 1, i + 1, i - SIZE, i + SIZE }) { if (cells[next] != Dungeon.WALL) { exits++; } }
+        return exits;
+    }
+
+    // the cells carved reachable from the start (4 - connected)
+    private static int reachable(float[] cells, int start) {
+        boolean[] visited = new boolean[cells.length];
+        IntArray stack = new IntArray();
+        stack.add(start);
+        visited[start] = true;
+        int count = 0;
+        while (stack.size > 0) {
+            int i = stack.pop();
+            count++;
+            for (int next: new int[]{ i - 1, i + 1, i - SIZE, i + SIZE }) {
+                if (visited[next] || cells[next] == Dungeon.WALL) { continue; }
+                visited[next] = true;
+                stack.add(next);
+            }
+        }
+        return count;
+    }
+}
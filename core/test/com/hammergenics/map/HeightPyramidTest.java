@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class HeightPyramidTest {
+    // not a power of 2: the last nodes of the levels are partial
+    private static final int SIZE = 50;
+    private static final float AMPLITUDE = 8f;
+    private static final double TOLERANCE = 1e-3;
+
+    private int hits = 0;
+
+    private static HGGrid randomGrid(Random random) {
+        HGGrid grid = new HGGrid(SIZE + 1);
+        float[] values = grid.getArray();
+        for (int i = 0; i < values.length; i++) { values[i] = random.nextFloat() * AMPLITUDE; }
+        grid.markDirty();
+        return grid;
+    }
+
+    @Test
+    public void randomRaysMatchTriangleScan() {
+        Random random = new Random(11);
+        for (int g = 0; g < 5; g++) {
+            HGGrid grid = randomGrid(random);
+            for (int i = 0; i < 2000; i++) { check(grid, randomRay(random)); }
+        }
+        assertTrue("hits: " + hits, hits > 1000);
+    }
+
+    @Test
+    public void editsAreSeenByTheNextQuery() {
+        Random random = new Random(12);
+        HGGrid grid = randomGrid(random);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) { check(grid, randomRay(random)); }
+
+            // a few single vertices (see HGGrid.set) and a region written directly (see HGGrid.markDirty)
+            for (int i = 0; i < 5; i++) {
+                grid.set(random.nextInt(SIZE + 1), random.nextInt(SIZE + 1), random.nextFloat() * AMPLITUDE * 2f - AMPLITUDE / 2f);
+            }
+            int x0 = random.nextInt(SIZE), z0 = random.nextInt(SIZE);
+            int x1 = Math.min(SIZE, x0 + random.nextInt(10)), z1 = Math.min(SIZE, z0 + random.nextInt(10));
+            float[] values = grid.getArray();
+            float height = random.nextFloat() * AMPLITUDE * 2f;
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) { values[grid.rowOffset(z) + x] = height; }
+            }
+            grid.markDirty(x0, z0, x1, z1);
+
+            // the peaks and the pits raised/lowered right under the rays
+            for (int i = 0; i < 20; i++) {
+                int x = random.nextInt(SIZE + 1), z = random.nextInt(SIZE + 1);
+                grid.set(x, z, AMPLITUDE * 3f);
+                check(grid, new float[]{ x, AMPLITUDE * 4f, z, 0f, -1f, 0f, Float.MAX_VALUE });
+                grid.set(x, z, -AMPLITUDE);
+                check(grid, new float[]{ x, AMPLITUDE * 4f, z, 0f, -1f, 0f, Float.MAX_VALUE });
+            }
+        }
+    }
+
+    @Test
+    public void axisAlignedRaysMatchTriangleScan() {
+        Random random = new Random(13);
+        HGGrid grid = randomGrid(random);
+        for (int i = 0; i < 2000; i++) {
+            // down (both on the cells' borders and within), along +x/-x/+z/-z between the heights
+            float x = random.nextBoolean() ? random.nextInt(SIZE + 1) : random.nextFloat() * SIZE;
+            float z = random.nextBoolean() ? random.nextInt(SIZE + 1) : random.nextFloat() * SIZE;
+            float y = random.nextFloat() * AMPLITUDE;
+            float sign = random.nextBoolean() ? 1f : -1f;
+            check(grid, new float[]{ x, AMPLITUDE * 2f, z, 0f, -1f, 0f, Float.MAX_VALUE });
+            check(grid, new float[]{ sign > 0 ? -1f : SIZE + 1f, y, z, sign, 0f, 0f, Float.MAX_VALUE });
+            check(grid, new float[]{ x, y, sign > 0 ? -1f : SIZE + 1f, 0f, 0f, sign, Float.MAX_VALUE });
+            // up from below the grid
+            check(grid, new float[]{ x, -AMPLITUDE, z, 0f, 1f, 0f, Float.MAX_VALUE });
+        }
+        assertTrue("hits: " + hits, hits > 4000);
+    }
+
+    // origin, direction, maxT: from anywhere around the grid, the segments (the finite maxT) included
+    private static float[] randomRay(Random random) {
+        float ox = random.nextFloat() * (SIZE + 20) - 10, oz = random.nextFloat() * (SIZE + 20) - 10;
+        float oy = random.nextFloat() * AMPLITUDE * 3f - AMPLITUDE;
+        float tx = random.nextFloat() * SIZE, tz = random.nextFloat() * SIZE, ty = random.nextFloat() * AMPLITUDE;
+        float maxT = random.nextInt(4) == 0 ? random.nextFloat() * 1.5f : Float.MAX_VALUE;
+        return new float[]{ ox, oy, oz, tx - ox, ty - oy, tz - oz, maxT };
+    }
+
+    private void check(HGGrid grid, float[] ray) {
+        float t = grid.getPyramid().intersect(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], ray[6]);
+        double expected = scan(grid, ray);
+        String message = String.format("ray (%f, %f, %f) -> (%f, %f, %f) maxT %f", ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], ray[6]);
+        if (expected < 0) { assertEquals(message, -1f, t, 0f); return; }
+        double length = Math.sqrt(ray[3] * ray[3] + ray[4] * ray[4] + ray[5] * ray[5]);
+        assertEquals(message, expected, t, TOLERANCE / length);
+        hits++;
+    }
+
+    // every triangle of the grid, the same 2 per cell as rendered (see Models.createGridMeshPart)
+    private static double scan(HGGrid grid, float[] ray) {
+        double best = -1;
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                double y00 = grid.get(x, z), y10 = grid.get(x + 1, z), y01 = grid.get(x, z + 1), y11 = grid.get(x + 1, z + 1);
+                double t1 = triangle(ray, x, y00, z, x, y01, z + 1, x + 1, y11, z + 1);
+                double t2 = triangle(ray, x, y00, z, x + 1, y11, z + 1, x + 1, y10, z);
+                for (double t: new double[]{ t1, t2 }) {
+                    if (t >= 0 && t <= ray[6] && (best < 0 || t < best)) { best = t; }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Moller-Trumbore in double precision (both sides), -1 if missed
+    private static double triangle(float[] ray, double ax, double ay, double az, double bx, double by, double bz,
+                                   double cx, double cy, double cz) {
+        double dx = ray[3], dy = ray[4], dz = ray[5];
+        double e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        double e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12) { return -1; }
+        double sx = ray[0] - ax, sy = ray[1] - ay, sz = ray[2] - az;
+        double u = (sx * px + sy * py + sz * pz) / det;
+        if (u < 0 || u > 1) { return -1; }
+        double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) / det;
+        if (v < 0 || u + v > 1) { return -1; }
+        double t = (e2x * qx + e2y * qy + e2z * qz) / det;
+        return t >= 0 ? t : -1;
+    }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2021 Nail Sharipov (sharipovn@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.hammergenics.map;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static java.math.BigDecimal.ROUND_HALF_UP;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Add description here
+ *
+ * @author nrsharip
+ */
+public class QuantizerTest {
+    // the values with the decimal ties (the float closest to x.xx5 might be either side of it)
+    private static final float[] TIES = {
+            0.5f, 1.5f, 2.5f, -0.5f, -2.5f, 0.05f, 0.15f, 0.25f, 0.35f, -0.45f,
+            1.005f, 1.015f, 1.025f, 2.675f, -1.005f, 0.125f, 0.375f, -0.625f, 1.0005f, 8.345f,
+            15f, 25f, 150f, 250f, -350f, 1250f, 0f, -0f, 0.001f, 1e-7f
+    };
+    private static final float[] STEPS = { 0.5f, 0.25f, 0.2f, 0.1f, 0.05f, 0.02f, 0.01f, 0.005f, 0.001f, 0.125f, 0.3f };
+
+    // the code Quantizer replaced (see HGGrid.roundToStep, HGGrid.calculateMinMaxMid)
+    private static float bigDecimalRoundHalfUp(float value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, ROUND_HALF_UP).floatValue();
+    }
+
+    private static int bigDecimalScaleOf(float value) {
+        return new BigDecimal(Float.toString(value)).scale();
+    }
+
+    private static float bigDecimalRound(float value, float step) {
+        int scale = bigDecimalScaleOf(step);
+        float mod = value % step;
+        value -= mod;
+        if (mod > step/2f) { value += step; }
+        return bigDecimalRoundHalfUp(value, scale);
+    }
+
+    @Test
+    public void scaleOfMatchesBigDecimal() {
+        for (float value: TIES) { assertEquals(Float.toString(value), bigDecimalScaleOf(value), Quantizer.scaleOf(value)); }
+        for (float value: STEPS) { assertEquals(Float.toString(value), bigDecimalScaleOf(value), Quantizer.scaleOf(value)); }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // both the plain ("ddd.ddd") and the scientific ("d.dddE-n") notation of Float.toString
+            float value = (random.nextFloat() - 0.5f) * (float) Math.pow(10d, random.nextInt(16) - 8);
+            assertEquals(Float.toString(value), bigDecimalScaleOf(value), Quantizer.scaleOf(value));
+        }
+    }
+
+    @Test
+    public void roundHalfUpMatchesBigDecimal() {
+        for (int scale = -3; scale <= 6; scale++) {
+            for (float value: TIES) {
+                assertEquals(value + " scale " + scale, bigDecimalRoundHalfUp(value, scale), Quantizer.roundHalfUp(value, scale), 0f);
+            }
+        }
+
+        Random random = new Random(2);
+        for (int i = 0; i < 200000; i++) {
+            int scale = random.nextInt(10) - 3;
+            float value = (random.nextFloat() - 0.5f) * 2000f;
+            assertEquals(value + " scale " + scale, bigDecimalRoundHalfUp(value, scale), Quantizer.roundHalfUp(value, scale), 0f);
+            // the exact ties at this scale (k + 0.5) / 10^scale
+            float tie = (float) ((random.nextInt(20001) - 10000 + 0.5d) / Quantizer.pow10(scale));
+            assertEquals(tie + " scale " + scale, bigDecimalRoundHalfUp(tie, scale), Quantizer.roundHalfUp(tie, scale), 0f);
+        }
+    }
+
+    @Test
+    public void roundMatchesBigDecimal() {
+        Random random = new Random(3);
+        for (float step: STEPS) {
+            Quantizer quantizer = new Quantizer(step);
+            for (float value: TIES) {
+                assertEquals(value + " step " + step, bigDecimalRound(value, step), quantizer.round(value), 0f);
+            }
+            for (int i = 0; i < 50000; i++) {
+                float value = (random.nextFloat() - 0.5f) * 200f;
+                assertEquals(value + " step " + step, bigDecimalRound(value, step), quantizer.round(value), 0f);
+                // half a step off the multiples of the step
+                float half = (random.nextInt(2001) - 1000 + 0.5f) * step;
+                assertEquals(half + " step " + step, bigDecimalRound(half, step), quantizer.round(half), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void unitsRoundTrip() {
+        Random random = new Random(4);
+        for (float step: STEPS) {
+            Quantizer quantizer = new Quantizer(step);
+            for (int i = 0; i < 10000; i++) {
+                float value = quantizer.round((random.nextFloat() - 0.5f) * 200f);
+                assertEquals(value + " step " + step, value, quantizer.fromUnits(quantizer.toUnits(value)), 0f);
+            }
+        }
+    }
+}